@@ -13,7 +13,7 @@ echo "[INFO] Compiling all Java source files..."
 mkdir -p bin
 
 # Compile all Java files from src to bin, preserving packages
-javac -d bin $(find src -name "*.java")
+javac -encoding UTF-8 --add-modules jdk.incubator.vector -d bin $(find src -name "*.java")
 
 echo "[INFO] Compilation complete."
 echo "Run with: java -cp bin ascii_art.Shell <path_to_your_image>"
@@ -1,186 +1,734 @@
 package ascii_art;
 
+import ascii_output.AsciiRowOutput;
+import image.BrightnessGrid;
+import image.BrightnessPrecision;
+import image.BrightnessPyramid;
+import image.DecodedImageCache;
 import image.Image;
 import image.ImagePadder;
+import image.IntegralImage;
 import image.SubImageHandler;
+import image_char_matching.CharSet;
+import image_char_matching.ShapeCharMatcher;
 import image_char_matching.SubImgCharMatcher;
+import utils.BufferPool;
+import utils.MathUtils;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Responsible for a single ASCII-ART algorithm run.
  */
 public class AsciiArtAlgorithm {
 
+    private static final int RESOLUTION_CHANGE_FACTOR = 2;
+    private static final String SPECULATION_THREAD_NAME = "ascii-art-speculation";
+    private static final double SQUARE_ASPECT_RATIO = 1;
+
     // Static fields to store the current values for the next run.
-    private static HashSet<Character> prevCharSet;
+    private static CharSet prevCharSet;
     private static SubImgCharMatcher prevCharMatcher;
-    private static double[][] imageBrightnessValue;
+    private static BrightnessGrid imageBrightnessValue;
     private static String prevImagePath;
     private static int prevResolution;
+    private static Image prevImage;
     private static Image prevPaddedImage;
+    private static BrightnessPyramid prevPyramid;
+    private static IntegralImage prevIntegralImage;
+    private static boolean prevExactTiles;
+    private static float[] greyLookupTable;
+    private static int[][] imageColorValue;
+    private static ShapeCharMatcher prevShapeMatcher;
+    private static long prevImageModifiedTime;
+    // The settings the values above were computed with.
+    private static RenderSettings settings = RenderSettings.DEFAULT;
+
+    // Static fields for speculative computation of adjacent resolutions.
+    private static final HashMap<Integer, Future<BrightnessGrid>> speculativeGrids = new HashMap<>();
+    private static GridInputs speculativeGridInputs;
+    private static ExecutorService speculationExecutor;
+
+    /**
+     * The inputs a brightness grid is computed from, besides the padded image and the resolution.
+     * The pyramid and the lookup table are compared by identity, since they are created again whenever
+     * their own inputs change.
+     * @param pyramid The brightness pyramid, or <code>null</code> if it is not used.
+     * @param fixedPoint Whether fixed-point arithmetic is used.
+     * @param greyLookupTable The grey lookup table of the luma filters, or <code>null</code> if there are none.
+     * @param precision The precision the brightness values are kept in.
+     */
+    private record GridInputs(BrightnessPyramid pyramid, boolean fixedPoint, float[] greyLookupTable,
+                              BrightnessPrecision precision) {
+    }
 
     // Instance final fields.
     private final String imagePath;
     private final int resolution;
-    private final RoundMethod roundMethod;
 
     // Instance fields.
     private SubImgCharMatcher charMatcher;
 
     /**
      * Creates a new AsciiArtAlgorithm instance.
+     * The values kept from the previous run are only dropped if the settings they depend on have changed.
      *
      * @param imagePath  The imagePath to create art from.
      * @param charSet    The set of characters to create the art with.
      * @param resolution The resolution of the output ASCII art imagePath.
-     * @param roundMethod The method to round the brightness values.
+     * @param settings   The settings to render the image with.
      */
     public AsciiArtAlgorithm(
-            String imagePath, HashSet<Character> charSet,int resolution, RoundMethod roundMethod
+            String imagePath, CharSet charSet, int resolution, RenderSettings settings
     ) {
-        char[] charSetArray = toCharArray(charSet);
-        if (!Arrays.equals(charSetArray, toCharArray(prevCharSet))) { // If the character set has changed.
-            updateCharMatcherAndSet(charSet, charSetArray);
+        applySettings(settings);
+        if (!charSet.equals(prevCharSet)) { // If the character set has changed.
+            cancelSpeculation();
+            updateCharMatcherAndSet(charSet);
         } else { // If the character set has not changed.
             this.charMatcher = prevCharMatcher;
         }
 
         this.imagePath = imagePath;
         this.resolution = resolution;
-        this.roundMethod = roundMethod;
+    }
+
+    /**
+     * Makes the given settings the current ones, and drops the values computed for the previous run that
+     * the changed settings invalidate.
+     * @param newSettings The settings of the next run.
+     */
+    private static void applySettings(RenderSettings newSettings) {
+        RenderSettings oldSettings = settings;
+        settings = newSettings;
+        if (newSettings.pixelFormat() != oldSettings.pixelFormat() ||
+            newSettings.offHeapEnabled() != oldSettings.offHeapEnabled()) {
+            // The image is reloaded in the new format or storage on the next run.
+            cancelSpeculation();
+            prevImagePath = null;
+            imageBrightnessValue = null;
+            imageColorValue = null;
+        }
+        if (!newSettings.lumaFilters().equals(oldSettings.lumaFilters())) {
+            resetFilteredValues();
+        }
+        if (newSettings.pyramidEnabled() != oldSettings.pyramidEnabled() ||
+            newSettings.fixedPointEnabled() != oldSettings.fixedPointEnabled() ||
+            newSettings.brightnessPrecision() != oldSettings.brightnessPrecision()) {
+            // Pyramid grids are kept in double precision, and the other grids are not shared with the pyramid.
+            // Brightness values computed with the other arithmetic or kept in the other precision should not be
+            // reused either.
+            cancelSpeculation();
+            imageBrightnessValue = null;
+        }
+        boolean wasBraille = oldSettings.matchMethod() == MatchMethod.BRAILLE;
+        if ((newSettings.matchMethod() == MatchMethod.BRAILLE) != wasBraille ||
+            newSettings.charAspectRatio() != oldSettings.charAspectRatio()) {
+            // The braille grid always has exact tiles, and tiles of another aspect ratio have other brightness
+            // values, so the previous values may have other dimensions.
+            cancelSpeculation();
+            imageBrightnessValue = null;
+            imageColorValue = null;
+        }
+        if (!newSettings.glyphRaster().equals(oldSettings.glyphRaster())) {
+            prevCharSet = null; // The next run creates the matcher of the new raster.
+        }
+        if (!newSettings.speculationEnabled()) {
+            cancelSpeculation();
+        }
+    }
+
+    /**
+     * Drops all the values computed with the previous filters.
+     */
+    private static void resetFilteredValues() {
+        cancelSpeculation();
+        imageBrightnessValue = null;
+        greyLookupTable = null;
+        prevIntegralImage = null;
+    }
+
+    /**
+     * Computes all the levels of the brightness pyramid in the background.
+     * @param imagePath The path of the image to compute the pyramid for.
+     * @param newSettings The settings of the next runs, with the brightness pyramid enabled.
+     * @throws IOException In case the image path is invalid.
+     */
+    public static void warmUpPyramid(String imagePath, RenderSettings newSettings) throws IOException {
+        applySettings(newSettings);
+        if (isNewImage(imagePath)) {
+            loadImage(imagePath);
+        }
+        getPyramid().warmUpInBackground();
+    }
+
+    /**
+     * Cancels all pending speculative work and drops all speculatively computed brightness grids.
+     */
+    private static void cancelSpeculation() {
+        for (Future<BrightnessGrid> speculativeGrid : speculativeGrids.values()) {
+            speculativeGrid.cancel(false);
+        }
+        speculativeGrids.clear();
+        speculativeGridInputs = null;
+    }
+
+    /**
+     * Returns the inputs the brightness grids of the loaded image are currently computed from.
+     * @return The current grid inputs.
+     */
+    private static GridInputs getGridInputs() {
+        return new GridInputs(settings.pyramidEnabled() ? getPyramid() : null, settings.fixedPointEnabled(),
+                              getGreyLookupTable(), settings.brightnessPrecision());
+    }
+
+    /**
+     * Adds a speculative brightness grid computed from the given inputs. Speculative grids computed from
+     * other inputs are cancelled first, so all the speculative grids share the same inputs.
+     * @param resolution The resolution of the grid.
+     * @param inputs The inputs the grid is computed from.
+     * @param speculativeGrid The pending or computed grid.
+     */
+    private static void addSpeculativeGrid(int resolution, GridInputs inputs,
+                                           Future<BrightnessGrid> speculativeGrid) {
+        if (!inputs.equals(speculativeGridInputs)) {
+            cancelSpeculation();
+            speculativeGridInputs = inputs;
+        }
+        speculativeGrids.put(resolution, speculativeGrid);
+    }
+
+    /**
+     * Returns the executor that computes speculative brightness grids, creating it if needed.
+     * The executor runs a single low-priority daemon thread, so it never competes with the shell
+     * and never prevents the program from exiting.
+     * @return The speculation executor.
+     */
+    private static ExecutorService getSpeculationExecutor() {
+        if (speculationExecutor == null) {
+            speculationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, SPECULATION_THREAD_NAME);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        return speculationExecutor;
+    }
+
+    /**
+     * Checks whether the given image differs from the previously loaded one.
+     * @param imagePath The path of the image.
+     * @return <code>true</code> if this is the first image, its path has changed,
+     * or its file was modified in delta mode. <code>false</code> otherwise.
+     */
+    private static boolean isNewImage(String imagePath) {
+        if (prevImagePath == null || !prevImagePath.equals(imagePath)) {
+            return true;
+        }
+        return settings.deltaEnabled() && new File(imagePath).lastModified() != prevImageModifiedTime;
+    }
+
+    /**
+     * Loads and pads the given image, and resets all the values computed for the previous image.
+     * @param imagePath The path of the image to load.
+     * @throws IOException In case the image path is invalid.
+     */
+    private static void loadImage(String imagePath) throws IOException {
+        cancelSpeculation();
+        prevImageModifiedTime = new File(imagePath).lastModified();
+        DecodedImageCache imageCache = settings.imageCache();
+        prevImage = (imageCache == null) ?
+                    new Image(imagePath, settings.pixelFormat(), settings.offHeapEnabled()) :
+                    imageCache.load(imagePath, settings.pixelFormat(), settings.offHeapEnabled());
+        // The padded image, its pyramid and the integral image are only created when they are first needed.
+        prevPaddedImage = null;
+        prevPyramid = null;
+        prevIntegralImage = null;
+        greyLookupTable = null;
+        imageBrightnessValue = null;
+        imageColorValue = null;
+        prevImagePath = imagePath;
+    }
+
+    /**
+     * Loads the given image, and updates the brightness values of the previous image to it
+     * by recomputing only the sub-images whose pixels changed.
+     * Falls back to computing all the brightness values if the previous ones can not be updated.
+     * @param imagePath The path of the image to load.
+     * @throws IOException In case the image path is invalid.
+     */
+    private void loadImageDelta(String imagePath) throws IOException {
+        Image previousImage = prevPaddedImage;
+        BrightnessGrid previousBrightnessValue = imageBrightnessValue;
+        loadImage(imagePath);
+        if (previousBrightnessValue != null && previousImage != null && prevResolution == resolution &&
+            !settings.fixedPointEnabled() && settings.lumaFilters().isEmpty() && !usesExactTiles() &&
+            previousImage.getWidth() == getPaddedImage().getWidth() &&
+            previousImage.getHeight() == getPaddedImage().getHeight()) {
+            // Grids that are not pooled are shared with the pyramid of the previous image, whose levels may
+            // still be read by its background warm-up, so they are patched on a copy.
+            BrightnessGrid patchedValue = previousBrightnessValue.isPooled() ? previousBrightnessValue :
+                                          previousBrightnessValue.leaseCopy();
+            SubImageHandler.updateBrightnessGrid(getPaddedImage(), previousImage, resolution, patchedValue);
+            if (patchedValue.getPrecision() != BrightnessPrecision.DOUBLE) {
+                patchedValue.setExactSource(SubImageHandler.getBrightnessSource(getPaddedImage(), resolution,
+                                                                                null));
+            }
+            imageBrightnessValue = patchedValue;
+        } else if (previousBrightnessValue != null) {
+            previousBrightnessValue.release();
+        }
+    }
+
+    /**
+     * Returns the loaded image padded to power-of-two dimensions, padding it if needed.
+     * @return The padded image.
+     */
+    private static Image getPaddedImage() {
+        if (prevPaddedImage == null) {
+            prevPaddedImage = ImagePadder.padImage(prevImage);
+        }
+        return prevPaddedImage;
+    }
+
+    /**
+     * Returns the brightness pyramid of the padded image, creating it if needed.
+     * @return The brightness pyramid.
+     */
+    private static BrightnessPyramid getPyramid() {
+        if (prevPyramid == null) {
+            prevPyramid = new BrightnessPyramid(getPaddedImage());
+        }
+        return prevPyramid;
+    }
+
+    /**
+     * Returns the integral image of the unpadded image, computing it if needed.
+     * @return The integral image.
+     */
+    private static IntegralImage getIntegralImage() {
+        if (prevIntegralImage == null) {
+            prevIntegralImage = new IntegralImage(prevImage, getGreyLookupTable());
+        }
+        return prevIntegralImage;
+    }
+
+    /**
+     * Returns the grey lookup table of the luma filters for the loaded image, creating it if needed.
+     * The histogram filters use is that of the unpadded image.
+     * @return The grey lookup table, or <code>null</code> if there are no filters.
+     */
+    private static float[] getGreyLookupTable() {
+        if (greyLookupTable == null) {
+            greyLookupTable = settings.lumaFilters().createLookupTable(prevImage);
+        }
+        return greyLookupTable;
+    }
+
+    /**
+     * Checks whether this run divides the unpadded image into tiles of any size and aspect ratio,
+     * rather than dividing the padded image into square sub-images.
+     * @return <code>true</code> if braille patterns are rendered, the characters are not square, or the
+     * resolution does not divide the padded image into square sub-images. <code>false</code> otherwise.
+     */
+    private boolean usesExactTiles() {
+        return rendersBraille() || usesExactTiles(prevImage, resolution, settings.charAspectRatio());
+    }
+
+    /**
+     * Checks whether the image is rendered as braille patterns instead of the character set.
+     * @return <code>true</code> if braille patterns are rendered, <code>false</code> otherwise.
+     */
+    private static boolean rendersBraille() {
+        return settings.matchMethod() == MatchMethod.BRAILLE;
+    }
+
+    /**
+     * Checks whether an image is divided into tiles of any size and aspect ratio, rather than padded and
+     * divided into square sub-images.
+     * @param image The unpadded image.
+     * @param resolution The number of tiles in a row.
+     * @param aspectRatio The aspect ratio of the characters.
+     * @return <code>true</code> if the characters are not square, or the resolution does not divide the
+     * padded image into square sub-images. <code>false</code> otherwise.
+     */
+    static boolean usesExactTiles(Image image, int resolution, double aspectRatio) {
+        if (aspectRatio != SQUARE_ASPECT_RATIO) {
+            return true;
+        }
+        // Computed from the image dimensions, so the image does not have to be padded.
+        int paddedWidth = MathUtils.closestPowerOfTwo(image.getWidth());
+        int paddedHeight = MathUtils.closestPowerOfTwo(image.getHeight());
+        return paddedWidth % resolution != 0 || paddedWidth / resolution > paddedHeight;
     }
 
     /**
      * Updates the character matcher and the character set.
      * @param charSet The new character set.
-     * @param charSetArray The new character set as an array.
      */
-    private void updateCharMatcherAndSet(HashSet<Character> charSet, char[] charSetArray) {
-        if (prevCharMatcher == null) { // First instantiation.
-            this.charMatcher = new SubImgCharMatcher(charSetArray);
-            prevCharMatcher = this.charMatcher;
-        } else { // Not the first instantiation.
-            this.charMatcher = prevCharMatcher;
-            /*
-             We will first add all the new characters to the character matcher,
-             and then remove all the characters that are not in the new character set.
-             We do this because otherwise, the map in SubImgCharMatcher could have less than two
-             characters, which would cause the algorithm to fail.
-             */
-            for (char c : charSet) { // Add all the new characters to the character matcher.
-                if (!prevCharSet.contains(c)) {
-                    this.charMatcher.addChar(c);
-                }
-            }
-            for (char c : prevCharSet) { // Remove all the characters that are not in the new character set.
-                if (!charSet.contains(c)) {
-                    this.charMatcher.removeChar(c);
-                }
-            }
+    private void updateCharMatcherAndSet(CharSet charSet) {
+        // Matchers are immutable and shared by character set, so switching back to a set reuses its matcher.
+        this.charMatcher = SubImgCharMatcher.of(charSet, settings.glyphRaster());
+        prevCharMatcher = this.charMatcher;
+        // Keep a copy, since the shell keeps modifying its character set.
+        prevCharSet = new CharSet(charSet);
+        prevShapeMatcher = null; // Will be created again for the new character set when needed.
+    }
+
+    /**
+     * Computes the brightness grid of the given image in the given resolution.
+     * Only reads its arguments, so it can safely run in the background.
+     * @param paddedImage The padded image.
+     * @param pyramid The brightness pyramid of the padded image, or <code>null</code> to compute
+     *                the brightness values directly from the image.
+     * @param fixedPoint Whether to compute the brightness values with fixed-point arithmetic.
+     * @param greyLookupTable The grey lookup table of the luma filters, or <code>null</code> if there are none.
+     *                        Filtered brightness values are always computed directly from the image.
+     * @param precision The precision to keep the brightness values in, unless the grid is shared with the
+     *                  pyramid.
+     * @param resolution The resolution of the grid.
+     * @return A grid of the brightness values of the sub-images. Leased from the pool, unless it is shared
+     * with the pyramid.
+     */
+    private static BrightnessGrid computeBrightnessGrid(Image paddedImage, BrightnessPyramid pyramid,
+                                                        boolean fixedPoint, float[] greyLookupTable,
+                                                        BrightnessPrecision precision, int resolution) {
+        if (greyLookupTable == null && pyramid != null) {
+            return pyramid.getBrightnessGrid(resolution);
         }
-        /*
-         We need to update the previous character set to the new character set.
-         We use new HashSet<>(charSet) to create a new HashSet with the same elements as charSet,
-         but with a different reference.
-         */
-        prevCharSet = new HashSet<>(charSet);
+        if (greyLookupTable == null && fixedPoint) {
+            return SubImageHandler.getFixedPointBrightnessGrid(paddedImage, resolution, precision);
+        }
+        return SubImageHandler.getBrightnessGrid(paddedImage, resolution, null, greyLookupTable, precision);
     }
 
     /**
-     * Converts a HashSet of characters to a character array.
-     * @param charSet The HashSet of characters to convert.
-     * @return The character array representation of the HashSet.
+     * Takes the speculatively computed brightness grid of the given resolution, if there is one.
+     * Waits for the speculative work if it is still pending. All the speculative work is cancelled if an input
+     * of the grids has changed since it was started.
+     * @param resolution The resolution of the grid.
+     * @return The brightness grid, or <code>null</code> if it was not speculatively computed from the
+     * current inputs.
      */
-    private char[] toCharArray(HashSet<Character> charSet) {
-        if (charSet == null) {
+    private static BrightnessGrid takeSpeculativeGrid(int resolution) {
+        if (speculativeGridInputs != null && !speculativeGridInputs.equals(getGridInputs())) {
+            cancelSpeculation();
+        }
+        Future<BrightnessGrid> speculativeGrid = speculativeGrids.remove(resolution);
+        if (speculativeGrid == null || speculativeGrid.isCancelled()) {
+            return null;
+        }
+        try {
+            return speculativeGrid.get();
+        } catch (ExecutionException e) { // The speculative work failed, compute the grid directly.
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return null;
         }
-        char[] arr = new char[charSet.size()];
-        int i = 0;
-        for (Character c : charSet) {
-            arr[i] = c;
-            i++;
+    }
+
+    /**
+     * Speculatively computes the brightness grids of the resolutions adjacent to this run's resolution
+     * (twice and half of it) in the background, so the next "res up" or "res down" is served from memory.
+     * Does nothing if the speculation is disabled.
+     * @param minResolution The minimal valid resolution.
+     * @param maxResolution The maximal valid resolution.
+     */
+    public void speculateAdjacentResolutions(int minResolution, int maxResolution) {
+        if (!settings.speculationEnabled() || prevImage == null || usesExactTiles()) {
+            return;
+        }
+        int higherResolution = resolution * RESOLUTION_CHANGE_FACTOR;
+        int lowerResolution = resolution / RESOLUTION_CHANGE_FACTOR;
+        // Drop the speculative work of resolutions that are no longer adjacent.
+        speculativeGrids.entrySet().removeIf(entry -> {
+            boolean isAdjacent = entry.getKey() == higherResolution || entry.getKey() == lowerResolution;
+            if (!isAdjacent) {
+                entry.getValue().cancel(false);
+            }
+            return !isAdjacent;
+        });
+        Image paddedImage = getPaddedImage();
+        GridInputs inputs = getGridInputs();
+        if (!inputs.equals(speculativeGridInputs)) {
+            cancelSpeculation();
+        }
+        for (int adjacentResolution : new int[]{higherResolution, lowerResolution}) {
+            if (adjacentResolution >= minResolution && adjacentResolution <= maxResolution &&
+                !speculativeGrids.containsKey(adjacentResolution)) {
+                addSpeculativeGrid(adjacentResolution, inputs, getSpeculationExecutor().submit(() ->
+                        computeBrightnessGrid(paddedImage, inputs.pyramid(), inputs.fixedPoint(),
+                                              inputs.greyLookupTable(), inputs.precision(), adjacentResolution)
+                ));
+            }
         }
-        return arr;
     }
 
     /**
-     * Creates the ASCII output from scratch.
+     * Computes the brightness values from scratch.
      * This method is called when the imagePath has changed or the resolution has changed.
-     * @return A 2D <code>char</code> array
-     * where each entry represents a character
-     * that matches the brightness value of the entry in the original imagePath.
      */
-    private char[][] createAsciiOutputFromScratch() {
-        Image[][] subImages = SubImageHandler.divideImage(prevPaddedImage, resolution);
-        int numRows = subImages.length;
-        int numCols = subImages[0].length;
-        char[][] asciiOutput = new char[numRows][numCols];
+    private void computeBrightnessValuesFromScratch() {
+        if (settings.speculationEnabled() && imageBrightnessValue != null && !prevExactTiles &&
+            !usesExactTiles()) {
+            // Keep the previous grid, since it is likely to be requested again by the next resolution change.
+            addSpeculativeGrid(prevResolution, getGridInputs(),
+                               CompletableFuture.completedFuture(imageBrightnessValue));
+        } else if (imageBrightnessValue != null) {
+            // Nothing else refers to the previous grid, so the next grid can reuse its array.
+            imageBrightnessValue.release();
+        }
+        if (usesExactTiles()) {
+            computeBrightnessValuesFromExactTiles();
+            return;
+        }
+        // Since we changed the sub images, we need new grids for the brightness and color values.
+        imageColorValue = null;
+        imageBrightnessValue = takeSpeculativeGrid(resolution);
+        if (imageBrightnessValue == null && settings.colorEnabled() && !settings.pyramidEnabled() &&
+            !settings.fixedPointEnabled()) {
+            int[][] colorGrid = createColorGrid();
+            imageBrightnessValue = SubImageHandler.getBrightnessGrid(getPaddedImage(), resolution, colorGrid,
+                    getGreyLookupTable(), settings.brightnessPrecision());
+            imageColorValue = colorGrid;
+        } else if (imageBrightnessValue == null) {
+            imageBrightnessValue = computeBrightnessGrid(getPaddedImage(),
+                    settings.pyramidEnabled() ? getPyramid() : null, settings.fixedPointEnabled(),
+                    getGreyLookupTable(), settings.brightnessPrecision(), resolution);
+        }
+    }
 
-        // Since we changed the sub images, we need to create a new 2D array for the brightness values.
-        imageBrightnessValue = new double[numRows][numCols];
+    /**
+     * Computes the brightness values by dividing the unpadded image into exactly <code>resolution</code>
+     * columns of tiles with the characters' aspect ratio.
+     */
+    private void computeBrightnessValuesFromExactTiles() {
+        IntegralImage integralImage = getIntegralImage();
+        int numRows = integralImage.getNumRows(resolution, settings.charAspectRatio());
+        imageBrightnessValue = integralImage.getBrightnessGrid(numRows, resolution,
+                                                               settings.brightnessPrecision());
+        imageColorValue = settings.colorEnabled() ? integralImage.getColorGrid(numRows, resolution) : null;
+    }
 
-        // For each sub-image, get the brightness value and the corresponding character.
-        for (int row = 0; row < numRows; row++) {
-            for (int col = 0; col < numCols; col++) {
-                double subImageBrightness = SubImageHandler.getImageBrightness(subImages[row][col]);
-                imageBrightnessValue[row][col] = subImageBrightness; // Save for future algorithm runs.
-                asciiOutput[row][col] = charMatcher.getCharByImageBrightness(subImageBrightness, roundMethod);
-            }
-        }
-        return asciiOutput;
+    /**
+     * Checks whether each character is matched by the brightness of its own sub-image alone,
+     * so the characters of a row do not depend on any other row.
+     * @return <code>false</code> if the characters are rendered as braille, matched by shape or dithered.
+     */
+    private boolean matchesBrightnessOnly() {
+        return !rendersBraille() && !usesShapeMatching() && settings.ditherMethod() == DitherMethod.NONE;
+    }
+
+    /**
+     * Checks whether the characters are matched by shape, which needs sub-images of at least
+     * {@link ShapeCharMatcher#DESCRIPTOR_SIDE} pixels.
+     * @return <code>true</code> if the characters are matched by shape, <code>false</code> otherwise.
+     */
+    private boolean usesShapeMatching() {
+        return settings.matchMethod() == MatchMethod.SHAPE && !usesExactTiles() &&
+               resolution * ShapeCharMatcher.DESCRIPTOR_SIDE <= getPaddedImage().getWidth();
     }
 
     /**
      * Creates the ASCII output from existing brightness values.
-     * This method is called when the imagePath and resolution have not changed.
-     * @return A 2D <code>char</code> array
-     * where each entry represents a character
+     * This method is called when the imagePath and resolution have not changed,
+     * or after the brightness values of a new resolution were computed.
+     * <p>The characters are matched straight into the rows of the returned array, so no row is copied.</p>
+     * @return A 2D <code>char</code> array where each entry represents a character
      * that matches the brightness value of the entry in the original imagePath.
      */
     private char[][] createAsciiOutputFromExistingBrightnessValues() {
-        int numRows = imageBrightnessValue.length;
-        int numCols = imageBrightnessValue[0].length;
+        int numRows = imageBrightnessValue.getNumRows();
+        int numCols = imageBrightnessValue.getNumCols();
         char[][] asciiOutput = new char[numRows][numCols];
+        if (rendersBraille()) {
+            createAsciiOutputByBraille(asciiOutput);
+        } else if (usesShapeMatching()) {
+            createAsciiOutputByShape(asciiOutput);
+        } else if (settings.ditherMethod() != DitherMethod.NONE) {
+            // The diffused errors depend on every digit of the values, so narrowed values are dithered exactly.
+            boolean narrowed = imageBrightnessValue.getPrecision() != BrightnessPrecision.DOUBLE;
+            BrightnessGrid ditheredValues = narrowed ? imageBrightnessValue.leaseCopy() : imageBrightnessValue;
+            BrightnessDitherer.dither(ditheredValues, charMatcher, settings.roundMethod(), settings.ditherMethod(),
+                                      asciiOutput);
+            if (narrowed) {
+                ditheredValues.release();
+            }
+        } else {
+            for (int row = 0; row < numRows; row++) {
+                matchRow(row, asciiOutput[row]);
+            }
+        }
+        return asciiOutput;
+    }
 
-        // For each sub-image, get the brightness value and the corresponding character.
+    /**
+     * Matches a character to the brightness value of each sub-image in a row.
+     * The values of a narrowed grid are matched by their quantized values, and only recomputed exactly when
+     * the quantized value is ambiguous.
+     * @param row The row of the sub-images.
+     * @param rowChars The array to write the characters of the row to, from its start.
+     */
+    private void matchRow(int row, char[] rowChars) {
+        int numCols = imageBrightnessValue.getNumCols();
+        RoundMethod roundMethod = settings.roundMethod();
+        if (imageBrightnessValue.getPrecision() == BrightnessPrecision.DOUBLE) {
+            double[] values = imageBrightnessValue.getValues();
+            for (int col = 0; col < numCols; col++) {
+                rowChars[col] = charMatcher.getCharByImageBrightness(values[row * numCols + col], roundMethod);
+            }
+            return;
+        }
+        for (int col = 0; col < numCols; col++) {
+            int match = charMatcher.getCharByQuantizedBrightness(imageBrightnessValue.getQuantized(row, col),
+                                                                 roundMethod);
+            rowChars[col] = (match != SubImgCharMatcher.AMBIGUOUS_MATCH) ? (char) match :
+                    charMatcher.getCharByImageBrightness(imageBrightnessValue.getExact(row, col), roundMethod);
+        }
+    }
+
+    /**
+     * Creates the ASCII output by matching the brightness and the shape of each sub-image to a character.
+     * The shape of the sub-images is taken from the brightness grid of a finer resolution, in which each
+     * sub-image is divided into {@link ShapeCharMatcher#DESCRIPTOR_SIDE}² cells.
+     * @param asciiOutput The rows to write the characters to,
+     *                    where each entry matches the brightness and shape of the entry in the original imagePath.
+     */
+    private void createAsciiOutputByShape(char[][] asciiOutput) {
+        if (prevShapeMatcher == null) {
+            prevShapeMatcher = new ShapeCharMatcher(prevCharSet.toCharArray());
+        }
+        BrightnessGrid cellBrightness = computeBrightnessGrid(getPaddedImage(),
+                settings.pyramidEnabled() ? getPyramid() : null, settings.fixedPointEnabled(),
+                getGreyLookupTable(), BrightnessPrecision.DOUBLE, resolution * ShapeCharMatcher.DESCRIPTOR_SIDE);
+        int numRows = imageBrightnessValue.getNumRows();
+        int numCols = imageBrightnessValue.getNumCols();
         for (int row = 0; row < numRows; row++) {
             for (int col = 0; col < numCols; col++) {
-                asciiOutput[row][col] = charMatcher.getCharByImageBrightness(
-                        imageBrightnessValue[row][col], roundMethod
-                );
+                asciiOutput[row][col] = prevShapeMatcher.getCharBySubImageCells(cellBrightness,
+                        row * ShapeCharMatcher.DESCRIPTOR_SIDE, col * ShapeCharMatcher.DESCRIPTOR_SIDE);
             }
         }
-        return asciiOutput;
+        cellBrightness.release();
+    }
+
+    /**
+     * Creates the ASCII output by rendering each sub-image as a braille pattern of its dot tiles.
+     * @param asciiOutput The rows to write the characters to,
+     *                    where each entry is the braille pattern of the entry in the original imagePath.
+     */
+    private void createAsciiOutputByBraille(char[][] asciiOutput) {
+        BrightnessGrid dotBrightness = getIntegralImage().getBrightnessGrid(
+                imageBrightnessValue.getNumRows() * BrailleRenderer.DOTS_PER_COLUMN,
+                resolution * BrailleRenderer.DOTS_PER_ROW);
+        BrailleRenderer.render(dotBrightness, settings.ditherMethod(), asciiOutput);
+        dotBrightness.release();
+    }
+
+    /**
+     * Returns the mean color of each sub-image of the last run, computing them if they were not computed
+     * along with the brightness values.
+     * @return A 2D array of the same dimensions as the last run's output,
+     * holding the mean color of each sub-image as a packed RGB value.
+     */
+    public int[][] getColorGrid() {
+        if (imageColorValue == null && usesExactTiles()) {
+            imageColorValue = getIntegralImage().getColorGrid(imageBrightnessValue.getNumRows(), resolution);
+        } else if (imageColorValue == null) {
+            int[][] colorGrid = createColorGrid();
+            SubImageHandler.getBrightnessGrid(getPaddedImage(), resolution, colorGrid).release();
+            imageColorValue = colorGrid;
+        }
+        return imageColorValue;
+    }
+
+    /**
+     * Creates an empty color grid of this run's dimensions.
+     * @return An empty 2D array for the colors of the sub-images.
+     */
+    private int[][] createColorGrid() {
+        int subImageDims = getPaddedImage().getWidth() / resolution;
+        return new int[getPaddedImage().getHeight() / subImageDims][resolution];
     }
 
     /**
      * Runs the ASCII-ART algorithm.
+     * The characters are matched straight into the rows of the returned array. It is not pooled, since it is
+     * kept by the caller.
      * @return A 2D <code>char</code> array where each entry represents
      * a character that matches the brightness value of the entry in the original imagePath.
      * @throws IOException In case the image path is invalid.
      */
     public char[][] run() throws IOException {
-        char[][] asciiOutput;
-        // If this is the first run (prevImagePath is null) or the imagePath has changed.
-        if (prevImagePath == null || !prevImagePath.equals(imagePath)) {
-            prevPaddedImage = ImagePadder.padImage(new Image(imagePath));
-            asciiOutput =  createAsciiOutputFromScratch();
-        } else {
-            if (prevResolution != resolution) { // Resolution has changed, but the same image.
-                asciiOutput = createAsciiOutputFromScratch();
-            } else { // Same image and resolution.
-                asciiOutput = createAsciiOutputFromExistingBrightnessValues();
+        prepareBrightnessValues();
+        char[][] asciiOutput = createAsciiOutputFromExistingBrightnessValues();
+
+        // Update the previous resolution to the current resolution.
+        prevResolution = resolution;
+        prevExactTiles = usesExactTiles();
+        return asciiOutput;
+    }
+
+    /**
+     * Runs the ASCII-ART algorithm, and streams the rows of the output as they are matched.
+     * <p>When each character is matched by brightness alone, every row is matched into a single buffer leased
+     * from the pool, and given to the output right away. Otherwise, the whole output is created first, and then
+     * its rows are given to the output. Given to an {@link ascii_output.AsyncAsciiOutput}, each row is copied
+     * and written on its writer thread while the next rows are matched.</p>
+     * @param output The output to stream the rows to.
+     * @throws IOException In case the image path is invalid.
+     */
+    public void run(AsciiRowOutput output) throws IOException {
+        prepareBrightnessValues();
+        int numRows = imageBrightnessValue.getNumRows();
+        int numCols = imageBrightnessValue.getNumCols();
+        char[][] asciiOutput = matchesBrightnessOnly() ? null : createAsciiOutputFromExistingBrightnessValues();
+        char[] rowBuffer = (asciiOutput == null) ? BufferPool.leaseChars(numCols) : null;
+        output.begin(numRows, numCols);
+        for (int row = 0; row < numRows; row++) {
+            if (asciiOutput != null) {
+                output.row(row, asciiOutput[row], numCols);
+            } else {
+                matchRow(row, rowBuffer);
+                output.row(row, rowBuffer, numCols);
             }
         }
+        output.end();
+        if (rowBuffer != null) {
+            BufferPool.release(rowBuffer);
+        }
 
-        // Update the previous values to the current values.
-        prevImagePath = imagePath;
         prevResolution = resolution;
-        return asciiOutput;
+        prevExactTiles = usesExactTiles();
+    }
+
+    /**
+     * Loads the image if it has changed, and computes the brightness values if they were not computed for
+     * this image and resolution.
+     * @throws IOException In case the image path is invalid.
+     */
+    private void prepareBrightnessValues() throws IOException {
+        // If this is the first run (prevImagePath is null) or the image has changed.
+        if (isNewImage(imagePath)) {
+            if (settings.deltaEnabled() && prevImage != null) {
+                loadImageDelta(imagePath);
+            } else {
+                loadImage(imagePath);
+            }
+        }
+        // No brightness values were computed for this image yet, or the resolution has changed.
+        if (imageBrightnessValue == null || prevResolution != resolution) {
+            computeBrightnessValuesFromScratch();
+        }
     }
 
 }
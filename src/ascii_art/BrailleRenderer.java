@@ -0,0 +1,128 @@
+package ascii_art;
+
+import image.BrightnessGrid;
+
+/**
+ * Responsible for rendering a brightness grid with Unicode braille patterns, whose 2x4 dots give each
+ * character eight pixels of its own.
+ * <p>Each dot is raised when the brightness of its tile reaches a threshold, and its bit is set in the
+ * pattern, so a character takes eight comparisons and no glyph search. The threshold is either fixed,
+ * offset by a 4x4 Bayer threshold, or Floyd–Steinberg dithered across the tiles of the whole grid.</p>
+ */
+class BrailleRenderer {
+
+    /**
+     * The number of dots in a row of a braille pattern.
+     */
+    static final int DOTS_PER_ROW = 2;
+
+    /**
+     * The number of dots in a column of a braille pattern.
+     */
+    static final int DOTS_PER_COLUMN = 4;
+
+    private static final char BLANK_PATTERN = '\u2800';
+    // The bit of each dot in the pattern's offset from the blank pattern, by the dot's row and column.
+    private static final int[][] DOT_BITS = {
+            {0x01, 0x08},
+            {0x02, 0x10},
+            {0x04, 0x20},
+            {0x40, 0x80}
+    };
+    private static final double FIXED_THRESHOLD = 0.5;
+
+    private BrailleRenderer() {
+    }
+
+    /**
+     * Renders a grid of dot tiles as braille patterns.
+     * @param dotBrightness The brightness values of the dot tiles, with {@link #DOTS_PER_COLUMN} tile rows
+     *                      and {@link #DOTS_PER_ROW} tile columns for each character. Not modified.
+     * @param ditherMethod The method to choose the threshold of each dot.
+     * @param asciiOutput The rows to write the braille patterns to.
+     */
+    static void render(BrightnessGrid dotBrightness, DitherMethod ditherMethod, char[][] asciiOutput) {
+        int numRows = dotBrightness.getNumRows() / DOTS_PER_COLUMN;
+        int numCols = dotBrightness.getNumCols() / DOTS_PER_ROW;
+        int numTileCols = dotBrightness.getNumCols();
+        double[] tiles = dotBrightness.getValues();
+        boolean[] raisedDots = (ditherMethod == DitherMethod.FLOYD_STEINBERG) ? diffuseDots(dotBrightness) : null;
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                int pattern = 0;
+                for (int dotRow = 0; dotRow < DOTS_PER_COLUMN; dotRow++) {
+                    int tileRow = row * DOTS_PER_COLUMN + dotRow;
+                    for (int dotCol = 0; dotCol < DOTS_PER_ROW; dotCol++) {
+                        int tileCol = col * DOTS_PER_ROW + dotCol;
+                        int tile = tileRow * numTileCols + tileCol;
+                        boolean raised = (raisedDots != null) ? raisedDots[tile] :
+                                         tiles[tile] >= getThreshold(tileRow, tileCol, ditherMethod);
+                        if (raised) {
+                            pattern |= DOT_BITS[dotRow][dotCol];
+                        }
+                    }
+                }
+                asciiOutput[row][col] = (char) (BLANK_PATTERN + pattern);
+            }
+        }
+    }
+
+    /**
+     * Returns the threshold of a single dot tile.
+     * @param tileRow The row of the tile.
+     * @param tileCol The column of the tile.
+     * @param ditherMethod {@link DitherMethod#NONE} or {@link DitherMethod#ORDERED}.
+     * @return The brightness value at which the dot is raised.
+     */
+    private static double getThreshold(int tileRow, int tileCol, DitherMethod ditherMethod) {
+        if (ditherMethod == DitherMethod.ORDERED) {
+            return DitherMethod.bayerThreshold(tileRow, tileCol);
+        }
+        return FIXED_THRESHOLD;
+    }
+
+    /**
+     * Chooses the raised dots with Floyd–Steinberg error diffusion, where a raised dot has a brightness of 1
+     * and a lowered dot has a brightness of 0.
+     * @param dotBrightness The brightness values of the dot tiles. Not modified.
+     * @return Whether each dot is raised, row by row.
+     */
+    private static boolean[] diffuseDots(BrightnessGrid dotBrightness) {
+        int numRows = dotBrightness.getNumRows();
+        int numCols = dotBrightness.getNumCols();
+        double[] tiles = dotBrightness.getValues();
+        boolean[] raisedDots = new boolean[numRows * numCols];
+        // The error of the current and next rows, so nothing is allocated per row.
+        double[] values = new double[numCols];
+        double[] nextValues = new double[numCols];
+        System.arraycopy(tiles, 0, values, 0, numCols);
+        for (int row = 0; row < numRows; row++) {
+            boolean hasNextRow = row + 1 < numRows;
+            if (hasNextRow) {
+                System.arraycopy(tiles, (row + 1) * numCols, nextValues, 0, numCols);
+            }
+            for (int col = 0; col < numCols; col++) {
+                boolean raised = values[col] >= FIXED_THRESHOLD;
+                raisedDots[row * numCols + col] = raised;
+                double error = values[col] - (raised ? 1 : 0);
+                if (col + 1 < numCols) {
+                    values[col + 1] += error * DitherMethod.RIGHT_WEIGHT;
+                }
+                if (hasNextRow) {
+                    if (col > 0) {
+                        nextValues[col - 1] += error * DitherMethod.BELOW_LEFT_WEIGHT;
+                    }
+                    nextValues[col] += error * DitherMethod.BELOW_WEIGHT;
+                    if (col + 1 < numCols) {
+                        nextValues[col + 1] += error * DitherMethod.BELOW_RIGHT_WEIGHT;
+                    }
+                }
+            }
+            double[] finishedValues = values;
+            values = nextValues;
+            nextValues = finishedValues;
+        }
+        return raisedDots;
+    }
+
+}
@@ -0,0 +1,208 @@
+package ascii_art;
+
+import image.BrightnessGrid;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Responsible for matching characters to a brightness grid while dithering its values,
+ * so that small character sets do not band.
+ * <p>Floyd–Steinberg dithering diffuses the error of each matched character to the sub-images to its right
+ * and below it. The rows are processed as a pipeline: each worker thread handles every n-th row, and a
+ * sub-image is matched as soon as the row above it has matched all the sub-images it receives error from.
+ * Ordered dithering offsets each value by a 4x4 Bayer threshold, so its rows do not depend on each other.</p>
+ * <p>The diffused error is accumulated in a single copy of the grid, leased from the pool, so nothing is
+ * allocated per sub-image.</p>
+ */
+class BrightnessDitherer {
+
+    // Grids with fewer sub-images than this are dithered on the calling thread.
+    private static final int MIN_PARALLEL_SUB_IMAGES = 1 << 14;
+    private static final int NUM_OF_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final String WORKER_THREAD_NAME = "ascii-art-dither";
+    private static final String DITHER_FAILED = "Dithering the brightness values failed.";
+
+    private static ExecutorService workers;
+
+    private BrightnessDitherer() {
+    }
+
+    /**
+     * Matches a character to each dithered brightness value.
+     * @param brightnessGrid The brightness values of the sub-images. Not modified.
+     * @param charMatcher The character matcher.
+     * @param roundMethod The method to round the dithered brightness values.
+     * @param ditherMethod The dithering method. Must not be {@link DitherMethod#NONE}.
+     * @param asciiOutput The rows to write the matched characters to.
+     */
+    static synchronized void dither(BrightnessGrid brightnessGrid, SubImgCharMatcher charMatcher,
+                                    RoundMethod roundMethod, DitherMethod ditherMethod, char[][] asciiOutput) {
+        // Every row must be copied before any error is diffused into it.
+        BrightnessGrid errorGrid = (ditherMethod == DitherMethod.FLOYD_STEINBERG) ?
+                                   brightnessGrid.leaseCopy() : null;
+        try {
+            ditherInParallel(brightnessGrid, errorGrid, asciiOutput, charMatcher, roundMethod);
+        } finally {
+            if (errorGrid != null) {
+                errorGrid.release();
+            }
+        }
+    }
+
+    /**
+     * Dithers the rows of the grid, on the worker threads if the grid is large enough.
+     * @param brightnessGrid The brightness values of the sub-images.
+     * @param errorGrid A copy of the brightness values to diffuse the error into,
+     *                  or <code>null</code> for ordered dithering.
+     * @param asciiOutput The rows to write the matched characters to.
+     * @param charMatcher The character matcher.
+     * @param roundMethod The method to round the dithered brightness values.
+     */
+    private static void ditherInParallel(BrightnessGrid brightnessGrid, BrightnessGrid errorGrid,
+                                         char[][] asciiOutput, SubImgCharMatcher charMatcher,
+                                         RoundMethod roundMethod) {
+        int numRows = brightnessGrid.getNumRows();
+        int numCols = brightnessGrid.getNumCols();
+        AtomicIntegerArray rowProgress = (errorGrid == null) ? null : new AtomicIntegerArray(numRows);
+        int numOfWorkers = (numRows * numCols < MIN_PARALLEL_SUB_IMAGES) ? 1 : Math.min(NUM_OF_WORKERS, numRows);
+        if (numOfWorkers == 1) {
+            ditherRows(0, 1, brightnessGrid, errorGrid, rowProgress, asciiOutput, charMatcher, roundMethod);
+            return;
+        }
+
+        /*
+         All the workers must run at the same time, since a row waits for the row above it,
+         which is handled by another worker. The pool has a thread for each worker,
+         and this method is synchronized so the pool is never shared by two grids.
+         */
+        Future<?>[] tasks = new Future<?>[numOfWorkers];
+        for (int worker = 0; worker < numOfWorkers; worker++) {
+            int firstRow = worker;
+            tasks[worker] = getWorkers().submit(() -> ditherRows(firstRow, numOfWorkers, brightnessGrid,
+                    errorGrid, rowProgress, asciiOutput, charMatcher, roundMethod));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(DITHER_FAILED, e.getCause());
+        } catch (InterruptedException e) { // The workers still finish, since none of them waits on this thread.
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(DITHER_FAILED, e);
+        }
+    }
+
+    /**
+     * Dithers every n-th row of the grid, starting from the given row.
+     * @param firstRow The first row to dither.
+     * @param rowStep The number of rows between two consecutive rows of this worker.
+     * @param brightnessGrid The brightness values of the sub-images.
+     * @param errorGrid A copy of the brightness values to diffuse the error into,
+     *                  or <code>null</code> for ordered dithering.
+     * @param rowProgress The number of matched sub-images in each row, or <code>null</code> for ordered dithering.
+     * @param asciiOutput The rows to write the matched characters to.
+     * @param charMatcher The character matcher.
+     * @param roundMethod The method to round the dithered brightness values.
+     */
+    private static void ditherRows(int firstRow, int rowStep, BrightnessGrid brightnessGrid,
+                                   BrightnessGrid errorGrid, AtomicIntegerArray rowProgress, char[][] asciiOutput,
+                                   SubImgCharMatcher charMatcher, RoundMethod roundMethod) {
+        for (int row = firstRow; row < brightnessGrid.getNumRows(); row += rowStep) {
+            if (errorGrid == null) {
+                ditherRowOrdered(row, brightnessGrid, asciiOutput, charMatcher, roundMethod);
+            } else {
+                ditherRowFloydSteinberg(row, errorGrid, rowProgress, asciiOutput, charMatcher, roundMethod);
+            }
+        }
+    }
+
+    /**
+     * Dithers a single row with Floyd–Steinberg error diffusion, waiting for the row above it as needed.
+     * @param row The row to dither.
+     * @param errorGrid The brightness values, with the error diffused so far.
+     * @param rowProgress The number of matched sub-images in each row.
+     * @param asciiOutput The rows to write the matched characters to.
+     * @param charMatcher The character matcher.
+     * @param roundMethod The method to round the dithered brightness values.
+     */
+    private static void ditherRowFloydSteinberg(int row, BrightnessGrid errorGrid, AtomicIntegerArray rowProgress,
+                                                char[][] asciiOutput, SubImgCharMatcher charMatcher,
+                                                RoundMethod roundMethod) {
+        double[] values = errorGrid.getValues();
+        int numCols = errorGrid.getNumCols();
+        int rowOffset = row * numCols;
+        boolean hasNextRow = row + 1 < errorGrid.getNumRows();
+        int nextRowOffset = rowOffset + numCols;
+        int progressAbove = (row == 0) ? numCols : 0;
+        // The error diffused to the right stays in this worker, so only the row above writes to this row.
+        double rightError = 0;
+        for (int col = 0; col < numCols; col++) {
+            // The row above diffuses error into this sub-image until it matches the sub-image to the right.
+            int requiredProgress = Math.min(col + 2, numCols);
+            while (progressAbove < requiredProgress) {
+                Thread.onSpinWait();
+                progressAbove = rowProgress.get(row - 1);
+            }
+            double value = values[rowOffset + col] + rightError;
+            char matchedChar = charMatcher.getCharByImageBrightness(value, roundMethod);
+            asciiOutput[row][col] = matchedChar;
+            double error = value - charMatcher.getCharBrightness(matchedChar);
+            rightError = error * DitherMethod.RIGHT_WEIGHT;
+            if (hasNextRow) {
+                if (col > 0) {
+                    values[nextRowOffset + col - 1] += error * DitherMethod.BELOW_LEFT_WEIGHT;
+                }
+                values[nextRowOffset + col] += error * DitherMethod.BELOW_WEIGHT;
+                if (col + 1 < numCols) {
+                    values[nextRowOffset + col + 1] += error * DitherMethod.BELOW_RIGHT_WEIGHT;
+                }
+            }
+            rowProgress.set(row, col + 1);
+        }
+    }
+
+    /**
+     * Dithers a single row by offsetting each brightness value with a Bayer threshold.
+     * The offsets span the mean distance between the brightness values of two characters.
+     * @param row The row to dither.
+     * @param brightnessGrid The brightness values of the sub-images.
+     * @param asciiOutput The rows to write the matched characters to.
+     * @param charMatcher The character matcher.
+     * @param roundMethod The method to round the dithered brightness values.
+     */
+    private static void ditherRowOrdered(int row, BrightnessGrid brightnessGrid, char[][] asciiOutput,
+                                         SubImgCharMatcher charMatcher, RoundMethod roundMethod) {
+        double[] values = brightnessGrid.getValues();
+        int numCols = brightnessGrid.getNumCols();
+        int rowOffset = row * numCols;
+        double levelDistance = 1.0 / (charMatcher.getCharCount() - 1);
+        for (int col = 0; col < numCols; col++) {
+            double offset = (DitherMethod.bayerThreshold(row, col) - 0.5) * levelDistance;
+            asciiOutput[row][col] = charMatcher.getCharByImageBrightness(values[rowOffset + col] + offset,
+                                                                         roundMethod);
+        }
+    }
+
+    /**
+     * Returns the pool of dithering worker threads, creating it if needed.
+     * The pool has a daemon thread for each available processor.
+     * @return The worker pool.
+     */
+    private static ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(NUM_OF_WORKERS, runnable -> {
+                Thread thread = new Thread(runnable, WORKER_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+
+}
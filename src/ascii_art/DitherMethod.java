@@ -0,0 +1,38 @@
+package ascii_art;
+
+/**
+ * An enum that represents the dithering method applied to the brightness values before matching characters.
+ */
+public enum DitherMethod {
+    /** No dithering */
+    NONE,
+    /** Floyd–Steinberg error diffusion */
+    FLOYD_STEINBERG,
+    /** Ordered dithering with a 4x4 Bayer matrix */
+    ORDERED;
+
+    // Floyd–Steinberg error weights, in sixteenths, shared by the character and braille renderers.
+    static final double RIGHT_WEIGHT = 7 / 16.0;
+    static final double BELOW_LEFT_WEIGHT = 3 / 16.0;
+    static final double BELOW_WEIGHT = 5 / 16.0;
+    static final double BELOW_RIGHT_WEIGHT = 1 / 16.0;
+
+    private static final int[][] BAYER_MATRIX = {
+            {0, 8, 2, 10},
+            {12, 4, 14, 6},
+            {3, 11, 1, 9},
+            {15, 7, 13, 5}
+    };
+    private static final int BAYER_SIDE = BAYER_MATRIX.length;
+    private static final double BAYER_LEVELS = BAYER_SIDE * BAYER_SIDE;
+
+    /**
+     * Returns the ordered dithering threshold of a cell, which tiles the grid with the 4x4 Bayer matrix.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The threshold, in the range (0, 1).
+     */
+    static double bayerThreshold(int row, int col) {
+        return (BAYER_MATRIX[row % BAYER_SIDE][col % BAYER_SIDE] + 0.5) / BAYER_LEVELS;
+    }
+}
@@ -0,0 +1,173 @@
+package ascii_art;
+
+import ascii_output.AsciiOutput;
+import image.BrightnessGrid;
+import image.FrameSequence;
+import image.Image;
+import image.ImagePadder;
+import image.IntegralImage;
+import image.SubImageHandler;
+import image_char_matching.CharSet;
+import image_char_matching.SubImgCharMatcher;
+import utils.MathUtils;
+
+import java.io.IOException;
+
+/**
+ * Responsible for rendering a sequence of frames, such as an animated GIF, to ASCII-ART.
+ * <p>All the frames are matched with the same character matcher. Frames that the resolution divides into
+ * square sub-images are padded, and the brightness grid of each frame is updated from the previous one, so
+ * only the sub-images whose pixels changed are recomputed. Other frames, and all frames when the characters
+ * are not square, are divided into exactly <code>resolution</code> columns of tiles with the characters'
+ * aspect ratio, like single images, and each of their grids is computed in full.</p>
+ * <p>Frames are rendered with the character set, the resolution, the rounding method, the glyph raster and
+ * the aspect ratio of the characters only. The other settings of single images, such as the luma arithmetic
+ * and filters, dithering, braille, shape matching and the brightness precision, do not apply to frames.</p>
+ */
+public class FrameSequenceRenderer {
+
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final String RESOLUTION_OUT_OF_BOUNDS = "Resolution %d is out of bounds for frames of " +
+                                                           "size %dx%d.";
+
+    private final SubImgCharMatcher charMatcher;
+    private final int resolution;
+    private final RoundMethod roundMethod;
+    private final double charAspectRatio;
+
+    private int renderedFrames;
+    private int recomputedSubImages;
+    private long renderNanos;
+
+    /**
+     * Creates a new FrameSequenceRenderer instance.
+     * @param charSet The set of characters to create the art with.
+     * @param resolution The resolution of the output ASCII art frames.
+     * @param settings The settings to render the frames with, of which only the rounding method, the glyph
+     *                 raster and the aspect ratio of the characters apply.
+     */
+    public FrameSequenceRenderer(CharSet charSet, int resolution, RenderSettings settings) {
+        this.charMatcher = SubImgCharMatcher.of(charSet, settings.glyphRaster());
+        this.resolution = resolution;
+        this.roundMethod = settings.roundMethod();
+        this.charAspectRatio = settings.charAspectRatio();
+    }
+
+    /**
+     * Renders all the frames at the given path, and outputs each of them as soon as it is rendered.
+     * @param path The path of an animated image file, or of a directory of numbered frames.
+     * @param output The output to send the frames to.
+     * @return The number of rendered frames.
+     * @throws IOException If the frames can not be read.
+     * @throws IllegalArgumentException If the resolution is out of bounds for the frames' size.
+     */
+    public int render(String path, AsciiOutput output) throws IOException {
+        int firstFrame = renderedFrames;
+        BrightnessGrid brightnessGrid = null;
+        try (FrameSequence frames = new FrameSequence(path)) {
+            Image previousFrame = null;
+            while (frames.hasNextFrame()) {
+                Image frame = frames.nextFrame();
+                boolean exactTiles = AsciiArtAlgorithm.usesExactTiles(frame, resolution, charAspectRatio);
+                Image paddedFrame = exactTiles ? null : ImagePadder.padImage(frame);
+                long startTime = System.nanoTime();
+                if (exactTiles || previousFrame == null || !hasSameDimensions(paddedFrame, previousFrame)) {
+                    checkResolutionBounds(frame);
+                    if (brightnessGrid != null) {
+                        brightnessGrid.release();
+                    }
+                    brightnessGrid = exactTiles ? computeExactTileGrid(frame) :
+                                     SubImageHandler.getBrightnessGrid(paddedFrame, resolution);
+                    recomputedSubImages += brightnessGrid.getNumRows() * resolution;
+                } else {
+                    recomputedSubImages += SubImageHandler.updateBrightnessGrid(
+                            paddedFrame, previousFrame, resolution, brightnessGrid
+                    );
+                }
+                char[][] asciiFrame = matchCharacters(brightnessGrid);
+                renderNanos += System.nanoTime() - startTime;
+                renderedFrames++;
+                output.out(asciiFrame);
+                // Tiles of any size can not be updated from the previous frame.
+                previousFrame = paddedFrame;
+            }
+        } finally {
+            if (brightnessGrid != null) {
+                brightnessGrid.release();
+            }
+        }
+        return renderedFrames - firstFrame;
+    }
+
+    /**
+     * Returns the rendering throughput of all the frames rendered so far, not including reading and output.
+     * @return The number of frames rendered per second.
+     */
+    public double getFramesPerSecond() {
+        return (renderNanos == 0) ? 0 : renderedFrames * NANOS_IN_SECOND / renderNanos;
+    }
+
+    /**
+     * Returns the number of sub-images whose brightness was computed, over all the frames rendered so far.
+     * @return The number of recomputed sub-images.
+     */
+    public int getRecomputedSubImages() {
+        return recomputedSubImages;
+    }
+
+    /**
+     * Matches a character to each brightness value.
+     * @param brightnessGrid The brightness grid of a frame.
+     * @return A 2D <code>char</code> array of the frame.
+     */
+    private char[][] matchCharacters(BrightnessGrid brightnessGrid) {
+        double[] values = brightnessGrid.getValues();
+        char[][] asciiFrame = new char[brightnessGrid.getNumRows()][resolution];
+        for (int row = 0; row < asciiFrame.length; row++) {
+            for (int col = 0; col < resolution; col++) {
+                asciiFrame[row][col] = charMatcher.getCharByImageBrightness(values[row * resolution + col],
+                                                                            roundMethod);
+            }
+        }
+        return asciiFrame;
+    }
+
+    /**
+     * Computes the brightness grid of a frame divided into exactly <code>resolution</code> columns of tiles
+     * with the characters' aspect ratio.
+     * @param frame The unpadded frame.
+     * @return A grid of the normalized brightness values of the tiles, leased from the pool.
+     */
+    private BrightnessGrid computeExactTileGrid(Image frame) {
+        IntegralImage integralImage = new IntegralImage(frame);
+        return integralImage.getBrightnessGrid(integralImage.getNumRows(resolution, charAspectRatio), resolution);
+    }
+
+    /**
+     * Checks that the resolution is valid for a frame, with the same bounds the shell uses, which are those
+     * of the padded frame.
+     * @param frame The unpadded frame.
+     * @throws IllegalArgumentException If the resolution is out of bounds.
+     */
+    private void checkResolutionBounds(Image frame) {
+        int paddedWidth = MathUtils.closestPowerOfTwo(frame.getWidth());
+        int paddedHeight = MathUtils.closestPowerOfTwo(frame.getHeight());
+        int minCharsInRow = Math.max(1, paddedWidth / paddedHeight);
+        if (resolution > paddedWidth || resolution < minCharsInRow) {
+            throw new IllegalArgumentException(String.format(
+                    RESOLUTION_OUT_OF_BOUNDS, resolution, paddedWidth, paddedHeight
+            ));
+        }
+    }
+
+    /**
+     * Checks whether two images have the same dimensions.
+     * @param image The first image.
+     * @param other The second image.
+     * @return <code>true</code> if the dimensions are equal, <code>false</code> otherwise.
+     */
+    private static boolean hasSameDimensions(Image image, Image other) {
+        return image.getWidth() == other.getWidth() && image.getHeight() == other.getHeight();
+    }
+
+}
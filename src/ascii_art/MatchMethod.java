@@ -0,0 +1,13 @@
+package ascii_art;
+
+/**
+ * An enum that represents the method characters are matched to the sub-images with.
+ */
+public enum MatchMethod {
+    /** Match the character of the nearest brightness */
+    BRIGHTNESS,
+    /** Match the character of the nearest brightness and shape */
+    SHAPE,
+    /** Render each sub-image as a braille pattern of its dots */
+    BRAILLE
+}
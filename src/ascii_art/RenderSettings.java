@@ -0,0 +1,277 @@
+package ascii_art;
+
+import image.BrightnessPrecision;
+import image.DecodedImageCache;
+import image.LumaFilter;
+import image.LumaFilterChain;
+import image.PixelFormat;
+import image.SubImageHandler;
+import image_char_matching.GlyphRaster;
+import image_char_matching.ShapeCharMatcher;
+
+/**
+ * The settings an image is rendered with, apart from the character set and the resolution.
+ * <p>Settings are immutable, and each <code>with</code> method returns a copy with a single setting changed.
+ * {@link AsciiArtAlgorithm} compares the settings of each run with those of the previous run, and only
+ * drops the values that the changed settings invalidate.</p>
+ * @param roundMethod The method to round the brightness values.
+ * @param matchMethod The method characters are matched to the sub-images with.
+ * @param ditherMethod The dithering method applied to the brightness values before matching.
+ * @param charAspectRatio The height of a character divided by its width.
+ * @param lumaFilters The filters applied to the grey values of the image.
+ * @param glyphRaster The raster the glyphs of the character set are rendered in.
+ * @param brightnessPrecision The precision the brightness values are kept in between runs.
+ * @param fixedPointEnabled Whether the brightness values are computed with fixed-point arithmetic.
+ * @param pyramidEnabled Whether brightness grids are served from the brightness pyramid.
+ * @param speculationEnabled Whether the grids of adjacent resolutions are computed in the background.
+ * @param deltaEnabled Whether only the changed sub-images of a modified image are recomputed.
+ * @param colorEnabled Whether colors are computed along with the brightness values.
+ * @param pixelFormat The format the pixels of loaded images are stored in.
+ * @param offHeapEnabled Whether the pixels of loaded images are stored off the heap.
+ * @param imageCache The on-disk cache images are read from, or <code>null</code> to decode every image.
+ */
+public record RenderSettings(RoundMethod roundMethod, MatchMethod matchMethod, DitherMethod ditherMethod,
+                             double charAspectRatio, LumaFilterChain lumaFilters, GlyphRaster glyphRaster,
+                             BrightnessPrecision brightnessPrecision, boolean fixedPointEnabled,
+                             boolean pyramidEnabled, boolean speculationEnabled, boolean deltaEnabled,
+                             boolean colorEnabled, PixelFormat pixelFormat, boolean offHeapEnabled,
+                             DecodedImageCache imageCache) {
+
+    private static final double SQUARE_ASPECT_RATIO = 1;
+
+    /**
+     * The default settings: square characters matched by brightness, rounded by absolute value, with no
+     * dithering, filters or caching, and all the values computed in double precision.
+     */
+    public static final RenderSettings DEFAULT = new RenderSettings(RoundMethod.ABSOLUTE, MatchMethod.BRIGHTNESS,
+            DitherMethod.NONE, SQUARE_ASPECT_RATIO, LumaFilterChain.EMPTY, GlyphRaster.DEFAULT,
+            BrightnessPrecision.DOUBLE, false, false, false, false, false, PixelFormat.RGB, false, null);
+
+    /**
+     * Returns these settings with another rounding method.
+     * @param method The method to round the brightness values.
+     * @return The new settings.
+     */
+    public RenderSettings withRoundMethod(RoundMethod method) {
+        return new RenderSettings(method, matchMethod, ditherMethod, charAspectRatio, lumaFilters, glyphRaster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another match method.
+     * <p>Shape matching ignores the rounding method, and only applies to resolutions whose sub-images are at
+     * least {@link ShapeCharMatcher#DESCRIPTOR_SIDE} pixels wide. Braille divides each character into 2x4
+     * dot tiles, whose brightness values are computed from an integral image of the unpadded image, so the
+     * output has eight times the detail at the same size. The dots are thresholded according to the dithering
+     * method, and the character set and the rounding method are ignored.</p>
+     * @param method The method characters are matched to the sub-images with.
+     * @return The new settings.
+     */
+    public RenderSettings withMatchMethod(MatchMethod method) {
+        return new RenderSettings(roundMethod, method, ditherMethod, charAspectRatio, lumaFilters, glyphRaster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another dithering method. Dithering does not apply to shape matching.
+     * @param method The dithering method applied to the brightness values before matching characters to them.
+     * @return The new settings.
+     */
+    public RenderSettings withDitherMethod(DitherMethod method) {
+        return new RenderSettings(roundMethod, matchMethod, method, charAspectRatio, lumaFilters, glyphRaster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another aspect ratio of the output characters.
+     * <p>With square characters and a resolution that divides the padded image into square power-of-two
+     * sub-images, the image is padded as before. Otherwise, the unpadded image is divided into exactly
+     * <code>resolution</code> columns of tiles with the given aspect ratio, whose brightness values are
+     * area-weighted means computed from an integral image. The brightness pyramid, the delta mode,
+     * fixed-point arithmetic and shape matching only apply to padded images.</p>
+     * @param aspectRatio The height of a character divided by its width, such as 2 for most terminals.
+     * @return The new settings.
+     */
+    public RenderSettings withCharAspectRatio(double aspectRatio) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, aspectRatio, lumaFilters, glyphRaster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with a filter added to the end of the chain of filters applied to the grey values
+     * of the image before it is divided into sub-images. The filters are folded into a lookup table that is
+     * applied while the brightness values are summed, so they take no additional pass over the image, apart
+     * from a single histogram pass for filters that use the histogram.
+     * <p>Filtered brightness values are not served from the brightness pyramid, nor computed with
+     * fixed-point arithmetic or updated in delta mode.</p>
+     * @param filter The filter to add.
+     * @return The new settings.
+     */
+    public RenderSettings withLumaFilter(LumaFilter filter) {
+        return withLumaFilters(lumaFilters.withFilter(filter));
+    }
+
+    /**
+     * Returns these settings without any filters of the grey values of the image.
+     * @return The new settings.
+     */
+    public RenderSettings withoutLumaFilters() {
+        return withLumaFilters(LumaFilterChain.EMPTY);
+    }
+
+    /**
+     * Returns these settings with another chain of filters applied to the grey values of the image.
+     * @param filters The filters.
+     * @return The new settings.
+     */
+    private RenderSettings withLumaFilters(LumaFilterChain filters) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, filters, glyphRaster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another raster the glyphs of the character set are rendered in to measure
+     * their brightness. Matchers are cached by their raster, so switching back to a raster does not render its
+     * glyphs again. Shape matching always uses the default raster.
+     * @param raster The font, resolution and antialiasing of the glyphs.
+     * @return The new settings.
+     */
+    public RenderSettings withGlyphRaster(GlyphRaster raster) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters, raster,
+                brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another precision the brightness values of a run are kept in between runs.
+     * <p>Narrower values halve or quarter the memory of the kept grid and the bytes matching reads. The
+     * characters are identical to those of <code>double</code> values: a value whose narrowed storage may
+     * match another character is recomputed from the image. Grids served from the brightness pyramid are
+     * shared with it, so they stay <code>double</code>.</p>
+     * @param precision The precision of the brightness values.
+     * @return The new settings.
+     */
+    public RenderSettings withBrightnessPrecision(BrightnessPrecision precision) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, precision, fixedPointEnabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with the brightness values computed with integer fixed-point arithmetic instead of
+     * floating-point arithmetic, or the other way around. The results differ by at most
+     * {@link SubImageHandler#FIXED_POINT_TOLERANCE}. Has no effect on brightness grids served from the
+     * brightness pyramid.
+     * @param enabled Whether to use fixed-point arithmetic.
+     * @return The new settings.
+     */
+    public RenderSettings withFixedPointEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, enabled, pyramidEnabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with brightness grids served from the brightness pyramid of the image, or not.
+     * When enabled, every power-of-two resolution of the same image is computed from memory without reading
+     * the image pixels again.
+     * @param enabled Whether to use the brightness pyramid.
+     * @return The new settings.
+     */
+    public RenderSettings withPyramidEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, enabled, speculationEnabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with the speculative computation of the brightness grids of the resolutions
+     * adjacent to the last run's resolution enabled or disabled. Disabling the speculation cancels all pending
+     * speculative work on the next run.
+     * @param enabled Whether to speculatively compute adjacent resolutions.
+     * @return The new settings.
+     */
+    public RenderSettings withSpeculationEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, enabled, deltaEnabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with the delta mode, for sequences of nearly identical images, enabled or disabled.
+     * <p>In delta mode, an image is reloaded whenever its file is modified, even if its path has not changed,
+     * and when a new image has the same dimensions as the previous one, only the brightness values of
+     * the sub-images whose pixels changed are recomputed.</p>
+     * <p>The delta mode does not apply to fixed-point brightness values.</p>
+     * @param enabled Whether to use the delta mode.
+     * @return The new settings.
+     */
+    public RenderSettings withDeltaEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled, enabled,
+                colorEnabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with the mean color of each sub-image computed along with its brightness value,
+     * in the same pass over the image, or not. Colors can be requested with
+     * {@link AsciiArtAlgorithm#getColorGrid()} either way, this only saves a second pass.
+     * @param enabled Whether to compute colors along with brightness values.
+     * @return The new settings.
+     */
+    public RenderSettings withColorEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled,
+                deltaEnabled, enabled, pixelFormat, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another format the pixels of loaded images are stored in.
+     * <p>Grey formats store a single grey value per pixel, converted while the image is decoded, which takes
+     * a quarter (8-bit) or half (16-bit) of the memory of packed RGB values. The brightness values of
+     * 8-bit grey images are rounded to whole grey levels, and those of 16-bit grey images are within
+     * 1/514 of a grey level of the RGB ones. Colors of grey images are grey.</p>
+     * <p>Changing the format reloads the image on the next run.</p>
+     * @param format The pixel format.
+     * @return The new settings.
+     */
+    public RenderSettings withPixelFormat(PixelFormat format) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled,
+                deltaEnabled, colorEnabled, format, offHeapEnabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with the pixels of loaded images stored off the heap, in a memory-mapped
+     * temporary file, instead of in an array, or the other way around.
+     * <p>Off-heap images are decoded a strip of rows at a time, and their brightness values are computed
+     * straight from the mapped pixels, so images larger than the heap can be converted. Their colors, and
+     * fixed-point and delta computations, still need all their pixels in an array.</p>
+     * <p>Changing the storage reloads the image on the next run.</p>
+     * @param enabled Whether to store the pixels off the heap.
+     * @return The new settings.
+     */
+    public RenderSettings withOffHeapEnabled(boolean enabled) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled,
+                deltaEnabled, colorEnabled, pixelFormat, enabled, imageCache);
+    }
+
+    /**
+     * Returns these settings with another on-disk cache loaded images are read from, so images that were
+     * already decoded are mapped from their cached files instead of decoded again.
+     * @param cache The cache, or <code>null</code> to decode every image.
+     * @return The new settings.
+     */
+    public RenderSettings withImageCache(DecodedImageCache cache) {
+        return new RenderSettings(roundMethod, matchMethod, ditherMethod, charAspectRatio, lumaFilters,
+                glyphRaster, brightnessPrecision, fixedPointEnabled, pyramidEnabled, speculationEnabled,
+                deltaEnabled, colorEnabled, pixelFormat, offHeapEnabled, cache);
+    }
+
+}
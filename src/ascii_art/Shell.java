@@ -1,31 +1,39 @@
 package ascii_art;
 
 import utils.MathUtils;
+import ascii_output.AnsiConsoleAsciiOutput;
 import ascii_output.AsciiOutput;
+import ascii_output.AsyncAsciiOutput;
+import ascii_output.ColoredAsciiOutput;
+import ascii_output.ColoredHtmlAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
+import ascii_output.DiffAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import exceptions.CustomShellException;
+import image.AutoLevelsFilter;
+import image.BrightnessPrecision;
+import image.DecodedImageCache;
+import image.GammaFilter;
+import image.HistogramEqualizationFilter;
 import image.Image;
+import image.PixelFormat;
+import image_char_matching.CharConverter;
+import image_char_matching.CharSet;
+import image_char_matching.GlyphRaster;
 
+import java.awt.Dimension;
 import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * The Shell class is responsible for the user interface of the ASCII Art algorithm.
  * It is a command line interface that allows the user to control the algorithm's parameters.
- * <p>Valid commands:</p>
- * <ul>
- *      <li>exit - Exit the shell.</li>
- *      <li>chars - View the current character set.</li>
- *      <li>add - Add characters to the current character set.</li>
- *      <li>remove - Remove characters to the current character set.</li>
- *      <li>res - Control the picture's resolution.</li>
- *      <li>round - Change rounding method when matching an ASCII character.</li>
- *      <li>output - Choose output format: .html file or console.</li>
- *      <li>asciiArt - Run the algorithm with the current parameters.</li>
- * </ul>
+ * <p>All the commands are listed in a single table, built by {@link #createCommands()}, with their arguments
+ * and descriptions. The welcome message prints the usage of the shell from this table.</p>
  */
 public class Shell {
 
@@ -33,6 +41,12 @@ public class Shell {
     private static final String SHELL_WELCOME_MSG_PATH = "src/utils/Welcome";
     private static final String READ_ERROR_MSG = "Error reading welcome message: %s.\n" +
             "Please open an issue on GitHub to report this error.";
+    // The line of the welcome message that the usage of the commands is printed instead of.
+    private static final String USAGE_PLACEHOLDER = "<usage>";
+    private static final String USAGE_FORMAT = "  %-14s - ";
+    private static final int USAGE_INDENT = 19;
+    private static final int USAGE_LINE_LENGTH = 113;
+    private static final String WORD_SEPARATOR = " ";
 
     // Constants for user input
     private static final String NO_IMAGE_ERROR = "No image path provided. " +
@@ -46,16 +60,32 @@ public class Shell {
     private static final String ROUND_METHOD = "round";
     private static final String OUTPUT_FORMAT = "output";
     private static final String RUN_ALGORITHM = "asciiArt";
+    private static final String BRIGHTNESS_PYRAMID = "pyramid";
+    private static final String PREFETCH_RESOLUTIONS = "prefetch";
+    private static final String LUMA_ARITHMETIC = "luma";
+    private static final String RENDER_FRAMES = "frames";
+    private static final String DELTA_MODE = "delta";
+    private static final String MATCH_METHOD = "match";
+    private static final String DITHER_METHOD = "dither";
+    private static final String CHAR_ASPECT_RATIO = "aspect";
+    private static final String LUMA_FILTER = "filter";
+    private static final String PIXEL_FORMAT = "load";
+    private static final String PIXEL_STORAGE = "store";
+    private static final String IMAGE_CACHE = "cache";
+    private static final String GLYPH_RASTER = "glyph";
+    private static final String BRIGHTNESS_PRECISION = "precision";
     private static final String INSUFFICIENT_CHARACTER_SET_SIZE = "Did not execute. Charset is too small." +
             " Minimum size is 2 characters.";
 
     // Default values constants
     private static final String HTML_OUTPUT_FONT = "Courier New";
     private static final int DEFAULT_RESOLUTION_VALUE = 2;
-    private static final Character[] DEFAULT_CHARACTER_SET = {
+    private static final char[] DEFAULT_CHARACTER_SET = {
             '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'
     };
     private static final int TWO_ARGUMENTS = 2;
+    // The number of outputs that may wait to be written while the next ones are computed.
+    private static final int OUTPUT_QUEUE_CAPACITY = 2;
 
     // ASCII values
     private static final char SPACE_ASCII_CODE = 32;
@@ -70,6 +100,15 @@ public class Shell {
     private static final int ADD_REMOVE_RANGE_LENGTH = 3;
     private static final int FROM_CHAR_INDEX = 0;
     private static final int TO_CHAR_INDEX = 2;
+    private static final String BLOCK_ELEMENTS_REQUEST = "blocks";
+    private static final char FIRST_BLOCK_ELEMENT = '\u2580';
+    private static final char LAST_BLOCK_ELEMENT = '\u259F';
+    private static final String BOX_DRAWING_REQUEST = "box";
+    private static final char FIRST_BOX_DRAWING = '\u2500';
+    private static final char LAST_BOX_DRAWING = '\u257F';
+    private static final String BRAILLE_REQUEST = "braille";
+    private static final char FIRST_BRAILLE_PATTERN = '\u2800';
+    private static final char LAST_BRAILLE_PATTERN = '\u28FF';
 
     // "res" shell command constants
     private static final String REQUESTED_RESOLUTION_CHANGE = "change resolution";
@@ -78,6 +117,93 @@ public class Shell {
     private static final String INCREASE_RES_REQUEST = "up";
     private static final String DECREASE_RES_REQUEST = "down";
     private static final String RESOLUTION_SET_MESSAGE = "Resolution set to %d.";
+    private static final String RESOLUTION_NUMBER_REGEX = "\\d{1,9}";
+    private static final int MIN_EXACT_RESOLUTION = 1;
+
+    // Values shared by several shell commands
+    private static final String ON_REQUEST = "on";
+    private static final String OFF_REQUEST = "off";
+    private static final String CLEAR_REQUEST = "clear";
+
+    // "pyramid" shell command constants
+    private static final String CHANGE_PYRAMID_MODE = "change pyramid mode";
+    private static final String PYRAMID_WARM_UP_REQUEST = "warm";
+
+    // "prefetch" shell command constants
+    private static final String CHANGE_PREFETCH_MODE = "change prefetch mode";
+
+    // "luma" shell command constants
+    private static final String CHANGE_LUMA_ARITHMETIC = "change luma arithmetic";
+    private static final String FLOAT_LUMA_REQUEST = "float";
+    private static final String FIXED_POINT_LUMA_REQUEST = "fixed";
+
+    // "frames" shell command constants
+    private static final String RENDER_FRAMES_REQUEST = "render frames";
+    private static final String INVALID_FRAMES = "invalid frame sequence";
+    private static final String FRAMES_RENDERED_MESSAGE = "Rendered %d frames at %.2f frames per second " +
+            "(%d sub-images computed).";
+
+    // "delta" shell command constants
+    private static final String CHANGE_DELTA_MODE = "change delta mode";
+
+    // "match" shell command constants
+    private static final String CHANGE_MATCH_METHOD = "change match method";
+    private static final String MATCH_BY_BRIGHTNESS_REQUEST = "brightness";
+    private static final String MATCH_BY_SHAPE_REQUEST = "shape";
+    private static final String MATCH_BY_BRAILLE_REQUEST = "braille";
+
+    // "dither" shell command constants
+    private static final String CHANGE_DITHER_METHOD = "change dither method";
+    private static final String NO_DITHER_REQUEST = "none";
+    private static final String FLOYD_STEINBERG_DITHER_REQUEST = "fs";
+    private static final String ORDERED_DITHER_REQUEST = "ordered";
+
+    // "aspect" shell command constants
+    private static final String CHANGE_CHAR_ASPECT_RATIO = "change character aspect ratio";
+    private static final String ASPECT_RATIO_SET_MESSAGE = "Character aspect ratio set to %s.";
+
+    // "filter" shell command constants
+    private static final String CHANGE_LUMA_FILTERS = "change filters";
+    private static final String GAMMA_FILTER_REQUEST = "gamma";
+    private static final String EQUALIZE_FILTER_REQUEST = "equalize";
+    private static final String LEVELS_FILTER_REQUEST = "levels";
+    private static final int FILTER_PARAMETER_INDEX = 2;
+    private static final double DEFAULT_LEVELS_CLIP_PERCENT = 0.1;
+    private static final double PERCENT = 100;
+
+    // "load" shell command constants
+    private static final String CHANGE_PIXEL_FORMAT = "change load format";
+    private static final String RGB_FORMAT_REQUEST = "rgb";
+    private static final String LUMA_8_FORMAT_REQUEST = "luma8";
+    private static final String LUMA_16_FORMAT_REQUEST = "luma16";
+
+    // "store" shell command constants
+    private static final String CHANGE_PIXEL_STORAGE = "change pixel storage";
+    private static final String HEAP_STORAGE_REQUEST = "heap";
+    private static final String MAPPED_STORAGE_REQUEST = "mapped";
+
+    // "cache" shell command constants
+    private static final String CHANGE_IMAGE_CACHE = "change image cache";
+    private static final String CACHE_CLEAR_FAILED = "a cached file that could not be deleted";
+    private static final int CACHE_SIZE_INDEX = 2;
+    private static final long DEFAULT_CACHE_MEGABYTES = 1024;
+    private static final long BYTES_IN_MEGABYTE = 1 << 20;
+
+    // "glyph" shell command constants
+    private static final String CHANGE_GLYPH_RASTER = "change glyph raster";
+    private static final String GLYPH_DEFAULT_REQUEST = "default";
+    private static final String GLYPH_BINARY_REQUEST = "binary";
+    private static final String GLYPH_ANTIALIASED_REQUEST = "aa";
+    private static final int GLYPH_MODE_INDEX = 2;
+    private static final int GLYPH_FONT_INDEX = 3;
+    private static final String FONT_NAME_SEPARATOR = " ";
+    private static final String FONT_NOT_INSTALLED = "a font that is not installed";
+
+    // "precision" shell command constants
+    private static final String CHANGE_BRIGHTNESS_PRECISION = "change brightness precision";
+    private static final String DOUBLE_PRECISION_REQUEST = "double";
+    private static final String FLOAT_PRECISION_REQUEST = "float";
+    private static final String SHORT_PRECISION_REQUEST = "short";
 
     // "output" shell command constants
     private static final String CHANGE_OUTPUT_METHOD = "change output method";
@@ -97,27 +223,78 @@ public class Shell {
     // Enum constants
     private static final String CONSOLE_FORMAT = "console";
     private static final String HTML_FORMAT = "html";
+    private static final String DIFF_FORMAT = "diff";
+    private static final String COLORED_HTML_FORMAT = "chtml";
+    private static final String ANSI_FORMAT = "ansi";
+    private static final String ANSI_256_FORMAT = "ansi256";
 
     // Separators
     private static final String HYPHEN_SEPARATOR = "-";
 
 
     // private fields
-    private final HashSet<Character> characterSet;
+    private final CharSet characterSet;
+    private final Map<String, Command> commands;
     private int resolution;
+    private RenderSettings settings;
     private AsciiOutput userOutput;
-    private RoundMethod roundMethod;
+    private AsyncAsciiOutput outputWriter;
     private int minCharsInRow;
     private int imageWidth;
+    private DecodedImageCache imageCache;
+    private String imagePath;
     private String imageName;
 
+    /**
+     * Executes a shell command.
+     */
+    @FunctionalInterface
+    private interface CommandHandler {
+
+        /**
+         * Executes the command.
+         * @param args The arguments given by the user. The first argument is the command.
+         * @throws CustomShellException In case of invalid input.
+         * @throws IOException In case of invalid image path.
+         */
+        void handle(String[] args) throws CustomShellException, IOException;
+    }
+
+    /**
+     * Changes the settings of the algorithm to a value chosen by the user.
+     */
+    @FunctionalInterface
+    private interface SettingsUpdate {
+
+        /**
+         * Changes the settings.
+         * @param settings The current settings.
+         * @return The changed settings.
+         * @throws IOException In case of invalid image path.
+         */
+        RenderSettings apply(RenderSettings settings) throws IOException;
+    }
+
+    /**
+     * A shell command, as listed in the usage.
+     * @param arguments The arguments of the command as shown in the usage, or an empty string if it has none.
+     * @param description The description of the command as shown in the usage.
+     * @param handler The handler that executes the command.
+     */
+    private record Command(String arguments, String description, CommandHandler handler) {
+    }
+
     /**
      * An enum to represent the output method of the algorithm.
      */
     private enum OutputMethod {
 
         CONSOLE(CONSOLE_FORMAT),
-        HTML(HTML_FORMAT);
+        HTML(HTML_FORMAT),
+        DIFF(DIFF_FORMAT),
+        COLORED_HTML(COLORED_HTML_FORMAT),
+        ANSI(ANSI_FORMAT),
+        ANSI_256(ANSI_256_FORMAT);
 
         private final String value;
 
@@ -142,15 +319,18 @@ public class Shell {
      * <p>Constructor for the Shell class.</p>
      * <p>Initializes the character set with the default values.</p>
      * <p>Initializes the resolution with the default value.</p>
-     * <p>Initializes the rounding method with the default value.</p>
+     * <p>Initializes the settings of the algorithm with the default values.</p>
      * <p>Initializes the output method with the default value.</p>
+     * <p>Creates the table of the shell commands.</p>
      */
     private Shell() {
         // set up default values for the algorithm
-        this.characterSet = new HashSet<>(Arrays.asList(DEFAULT_CHARACTER_SET));
+        this.characterSet = new CharSet(DEFAULT_CHARACTER_SET);
         this.resolution = DEFAULT_RESOLUTION_VALUE;
-        this.roundMethod = RoundMethod.ABSOLUTE;
+        this.settings = RenderSettings.DEFAULT;
+        this.commands = createCommands();
         this.userOutput = new ConsoleAsciiOutput();
+        this.outputWriter = new AsyncAsciiOutput(this.userOutput, OUTPUT_QUEUE_CAPACITY);
     }
 
     /**
@@ -158,18 +338,19 @@ public class Shell {
      * separated by commas and spaces.
      */
     private void printCharList() {
-        // turn the character set to a tree set to efficiently sort it
-        TreeSet<Character> sortedCharacterSet = new TreeSet<>(this.characterSet);
-        System.out.println(sortedCharacterSet); // print the characters with ", " separator
+        System.out.println(this.characterSet); // print the sorted characters with ", " separator
     }
 
     /**
      * Adds characters to the character list.
      * Valid argument options:
      * <ul>
-     *      <li>single character - A single character to add to the list.</li>
+     *      <li>single character - A single printable character to add to the list,
+     *          which may be any character that fits in a <code>char</code>.</li>
      *      <li>all - Adds all ASCII characters from 32 to 126 to the list.</li>
      *      <li>space - Adds the character space ' ' to the list.</li>
+     *      <li>blocks, box, braille - Adds the Unicode block elements, box drawing characters or braille
+     *          patterns to the list.</li>
      *      <li>character range - Adds characters from start to finish of the given range.
      *          <ul>
      *              <li>Examples: a-g or g-a</li>
@@ -192,14 +373,16 @@ public class Shell {
             if (operation.equals(SPACE_ADDITION_REQUEST)) { // Add space to the character set
                 this.characterSet.add(SPACE_ASCII_CODE);
             } else if (operation.equals(ADD_ALL_ASCII_REQUEST)) { // Add all ASCII characters to the set
-                operateOnAsciiCharactersInRange(FIRST_ASCII_CHARACTER, LAST_ASCII_CHARACTER,
+                operateOnCharactersInRange(FIRST_ASCII_CHARACTER, LAST_ASCII_CHARACTER,
                         ADD_CHARS_TO_LIST);
+            } else if (operateOnNamedBlock(operation, ADD_CHARS_TO_LIST)) {
+                // Unicode block added to the set.
             } else if (operation.length() == 1) { // Add a single character to the set
-                char characterValue = operation.toCharArray()[0];
-                // Add the character iff it is in the ASCII table range.
-                if (isInAsciiTable(characterValue)) {
+                char characterValue = operation.charAt(0);
+                // Add the character iff it is printable. Surrogates are halves of characters that do not fit.
+                if (isPrintableChar(characterValue)) {
                     this.characterSet.add(characterValue);
-                } else { // Character is not in the ASCII table, throw exception.
+                } else { // Character can not be printed, throw exception.
                     throw characterSetException;
                 }
             } else if (operation.contains(HYPHEN_SEPARATOR) && args[1].length() == ADD_REMOVE_RANGE_LENGTH) {
@@ -220,6 +403,8 @@ public class Shell {
      *      <li>single character - A single character to remove from the list.</li>
      *      <li>all - Removes all ASCII characters from 32 to 126 from the list.</li>
      *      <li>space - Removes the character space ' ' from the list.</li>
+     *      <li>blocks, box, braille - Removes the Unicode block elements, box drawing characters or braille
+     *          patterns from the list.</li>
      *      <li>character range - Removes characters from start to finish of the given range.
      *      <p>Examples: a-g or g-a</p></li>
      * </ul>
@@ -240,11 +425,13 @@ public class Shell {
                 this.characterSet.remove(SPACE_ASCII_CODE);
             } else if (operation.equals(REMOVE_ALL_ASCII_REQUEST)) {
                 // Remove all ASCII characters from the set
-                operateOnAsciiCharactersInRange(
+                operateOnCharactersInRange(
                         FIRST_ASCII_CHARACTER, LAST_ASCII_CHARACTER, REMOVE_CHARS_FROM_LIST
                 );
+            } else if (operateOnNamedBlock(operation, REMOVE_CHARS_FROM_LIST)) {
+                // Unicode block removed from the set.
             } else if (operation.length() == 1) { // Remove a single character from the set
-                this.characterSet.remove(operation.toCharArray()[0]);
+                this.characterSet.remove(operation.charAt(0));
             } else if (operation.contains(HYPHEN_SEPARATOR) && args[1].length() == ADD_REMOVE_RANGE_LENGTH) {
                 // Given range of characters to add to the set.
                 commandCharactersInRange(operation.split(""), REMOVE_CHARS_FROM_LIST);
@@ -269,41 +456,70 @@ public class Shell {
         } else {
             char param1 = stringArray[FROM_CHAR_INDEX].charAt(0);
             char param2 = stringArray[TO_CHAR_INDEX].charAt(0);
-            if (!isInAsciiTable(param1) || !isInAsciiTable(param2)) {
+            if (!isPrintableChar(param1) || !isPrintableChar(param2)) {
                 throw characterSetException;
             }
             char fromChar = (char) Math.min(param1, param2);
             char toChar = (char) Math.max(param1, param2);
             //
-            operateOnAsciiCharactersInRange(fromChar, toChar, command);
+            operateOnCharactersInRange(fromChar, toChar, command);
         }
     }
 
     /**
-     * Checks if a given character is in the range of the ASCII table.
+     * Checks if a given character can be printed: the printable ASCII characters,
+     * and any other assigned character that is not a control character or half of a surrogate pair.
      *
      * @param c The value of the character to check.
-     * @return <code>true</code> if the character is in ASCII range, <code>false</code> otherwise.
+     * @return <code>true</code> if the character is printable, <code>false</code> otherwise.
      */
-    private static boolean isInAsciiTable(char c) {
-        return c >= FIRST_ASCII_CHARACTER && c <= LAST_ASCII_CHARACTER;
+    private static boolean isPrintableChar(char c) {
+        if (c <= LAST_ASCII_CHARACTER) {
+            return c >= FIRST_ASCII_CHARACTER;
+        }
+        return Character.isDefined(c) && !Character.isISOControl(c) && !Character.isSurrogate(c);
+    }
+
+    /**
+     * Implements the given command on a named block of Unicode characters.
+     * @param name The name of the block: "blocks", "box" or "braille".
+     * @param command "add" or "remove" command to operate on the set. Assumes valid command.
+     * @return <code>true</code> if the name is of a block, <code>false</code> otherwise.
+     */
+    private boolean operateOnNamedBlock(String name, String command) {
+        switch (name) {
+            case BLOCK_ELEMENTS_REQUEST -> operateOnCharactersInRange(FIRST_BLOCK_ELEMENT, LAST_BLOCK_ELEMENT,
+                                                                       command);
+            case BOX_DRAWING_REQUEST -> operateOnCharactersInRange(FIRST_BOX_DRAWING, LAST_BOX_DRAWING, command);
+            case BRAILLE_REQUEST -> operateOnCharactersInRange(FIRST_BRAILLE_PATTERN, LAST_BRAILLE_PATTERN,
+                                                                command);
+            default -> {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Implements the given command on all ASCII characters in range (fromChar)-(toChar) to the
+     * Implements the given command on all printable characters in range (fromChar)-(toChar) to the
      * characterSet (inclusive).
      * @param fromChar <code>char</code> to command chars from.
      * @param toChar <code>char</code> to command chars up to.
      * @param command "add" or "remove" command to operate on the set. Assumes valid command.
      */
-    private void operateOnAsciiCharactersInRange(char fromChar, char toChar, String command) {
-        // Since all characters are treated as integers, iterate from space = 32, to '~' = 126
-        for (char c = fromChar; c <= toChar; c++) {
-            if (command.equals(ADD_CHARS_TO_LIST)) {
-                this.characterSet.add(c); // Since this is a HashSet, will not add an existing character.
-            } else {
-                this.characterSet.remove(c); // Will not remove a character that is not in the set.
+    private void operateOnCharactersInRange(char fromChar, char toChar, String command) {
+        // The whole range is set or cleared a word of the bitset at a time.
+        if (command.equals(ADD_CHARS_TO_LIST)) {
+            this.characterSet.addRange(fromChar, toChar); // Will not add an existing character.
+            if (toChar > LAST_ASCII_CHARACTER) { // Ranges beyond ASCII may span unprintable characters.
+                for (int c = Math.max(fromChar, LAST_ASCII_CHARACTER + 1); c <= toChar; c++) {
+                    if (!isPrintableChar((char) c)) {
+                        this.characterSet.remove(c);
+                    }
+                }
             }
+        } else {
+            this.characterSet.removeRange(fromChar, toChar); // Will not remove a character that is not in the set.
         }
     }
 
@@ -313,6 +529,7 @@ public class Shell {
      * <ul>
      *      <li>res up: Multiply the current resolution by 2.</li>
      *      <li>res down: Divide the current resolution by 2.</li>
+     *      <li>res &lt;number&gt;: Set the resolution to the given number of characters in a row.</li>
      * </ul>
      * <pre>The default resolution is set to 2, cannot exceed certain boundaries.</pre>
      * @param args The arguments given by the user. The second argument is the operation to perform.
@@ -338,6 +555,15 @@ public class Shell {
                 } else {
                     throw resolutionBoundException;
                 }
+            } else if (operation.matches(RESOLUTION_NUMBER_REGEX)) {
+                // Any number of characters in a row, from a single character up to the doubling bound.
+                int requestedResolution = Integer.parseInt(operation);
+                if (requestedResolution >= MIN_EXACT_RESOLUTION && requestedResolution <= this.imageWidth) {
+                    this.resolution = requestedResolution;
+                    System.out.printf((RESOLUTION_SET_MESSAGE) + "%n", this.resolution);
+                } else {
+                    throw resolutionBoundException;
+                }
             } else {
                 throw new CustomShellException(REQUESTED_RESOLUTION_CHANGE, INCORRECT_FORMAT);
             }
@@ -352,6 +578,10 @@ public class Shell {
      * <ul>
      *      <li>console - Prints the ASCII-Art to the standard output.</li>
      *      <li>HTML - Creates an HTML file with the ASCII-Art.</li>
+     *      <li>diff - Prints only the cells that changed since the previous output.</li>
+     *      <li>chtml - Creates an HTML file with the ASCII-Art, colored like the image.</li>
+     *      <li>ansi - Prints the ASCII-Art colored with 24-bit ANSI colors.</li>
+     *      <li>ansi256 - Prints the ASCII-Art colored with the 256-color ANSI palette.</li>
      * </ul>
      * @param args The arguments given by the user. The second argument is the output format.
      * @throws CustomShellException In case of invalid output format.
@@ -365,137 +595,397 @@ public class Shell {
                 this.userOutput = new ConsoleAsciiOutput();
             } else if (outputFormat.equals(OutputMethod.HTML.getValue())) {
                 this.userOutput = new HtmlAsciiOutput(this.imageName + "." + HTML_FORMAT, HTML_OUTPUT_FONT);
+            } else if (outputFormat.equals(OutputMethod.DIFF.getValue())) {
+                this.userOutput = new DiffAsciiOutput();
+            } else if (outputFormat.equals(OutputMethod.COLORED_HTML.getValue())) {
+                this.userOutput = new ColoredHtmlAsciiOutput(this.imageName + "." + HTML_FORMAT,
+                        HTML_OUTPUT_FONT);
+            } else if (outputFormat.equals(OutputMethod.ANSI.getValue())) {
+                this.userOutput = new AnsiConsoleAsciiOutput(true);
+            } else if (outputFormat.equals(OutputMethod.ANSI_256.getValue())) {
+                this.userOutput = new AnsiConsoleAsciiOutput(false);
             } else {
                 throw formatException;
             }
+            // Colored outputs need the colors of the sub-images, computed along with their brightness.
+            this.settings = this.settings.withColorEnabled(this.userOutput instanceof ColoredAsciiOutput);
+            // The previous outputs are written in the previous format before any output in the new one.
+            this.outputWriter.close();
+            this.outputWriter = new AsyncAsciiOutput(this.userOutput, OUTPUT_QUEUE_CAPACITY);
         } else {
             throw formatException;
         }
     }
 
     /**
-     * Runs the ASCII Art algorithm on the given image.
-     * @param imageName The path to the image to run the algorithm on.
+     * Runs the ASCII Art algorithm on the image with the current parameters.
      * @throws IOException In case of invalid image path.
-     * @throws CustomShellException In case of invalid input.
+     * @throws CustomShellException In case of invalid input, or an image too large for the current settings.
      */
-    private void runAsciiArtAlgorithm(String imageName) throws IOException, CustomShellException {
+    private void runAsciiArtAlgorithm() throws IOException, CustomShellException {
         if (this.characterSet.size() >= SUFFICIENT_CHAR_SET_SIZE){
-            AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(imageName, this.characterSet,
-                    this.resolution, this.roundMethod);
-            char[][] output = asciiArtAlgorithm.run(); // Run the algorithm.
-            this.userOutput.out(output); //  Display output according to current format.
+            try {
+                AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(this.imagePath, this.characterSet,
+                        this.resolution, this.settings);
+                if (!(this.userOutput instanceof ColoredAsciiOutput)) {
+                    // Each row is written on the writer thread while the next rows are matched.
+                    asciiArtAlgorithm.run(this.outputWriter);
+                    asciiArtAlgorithm.speculateAdjacentResolutions(this.minCharsInRow, this.imageWidth);
+                    return;
+                }
+                char[][] output = asciiArtAlgorithm.run(); // Run the algorithm.
+                // Prepare the next resolution change while the output is displayed.
+                asciiArtAlgorithm.speculateAdjacentResolutions(this.minCharsInRow, this.imageWidth);
+                // Display output according to current format, on the writer thread.
+                this.outputWriter.outAsync(output, asciiArtAlgorithm.getColorGrid());
+            } catch (UnsupportedOperationException e) { // The image is too large for an array the run needs.
+                throw new CustomShellException(e.getMessage());
+            }
         } else {
             throw new CustomShellException(INSUFFICIENT_CHARACTER_SET_SIZE);
         }
     }
 
     /**
-     * Changes the rounding method when matching an ASCII character.
+     * Runs the ASCII Art algorithm on every frame of an animated image or a directory of numbered frames,
+     * with the current parameters, and reports the rendering throughput.
+     * @param args The arguments given by the user. The second argument is the path of the frames.
+     * @throws CustomShellException In case of invalid input or an unreadable frame sequence.
+     */
+    private void renderFrames(String[] args) throws CustomShellException {
+        if (args.length < TWO_ARGUMENTS) {
+            throw new CustomShellException(RENDER_FRAMES_REQUEST, INCORRECT_FORMAT);
+        }
+        if (this.characterSet.size() < SUFFICIENT_CHAR_SET_SIZE) {
+            throw new CustomShellException(INSUFFICIENT_CHARACTER_SET_SIZE);
+        }
+        FrameSequenceRenderer renderer = new FrameSequenceRenderer(this.characterSet, this.resolution,
+                this.settings);
+        try {
+            // Each frame is written while the next one is rendered.
+            int frameCount = renderer.render(args[1], this.outputWriter);
+            this.outputWriter.flush();
+            System.out.printf((FRAMES_RENDERED_MESSAGE) + "%n", frameCount, renderer.getFramesPerSecond(),
+                    renderer.getRecomputedSubImages());
+        } catch (IOException e) {
+            throw new CustomShellException(RENDER_FRAMES_REQUEST, INVALID_FRAMES);
+        } catch (IllegalArgumentException e) {
+            throw new CustomShellException(RENDER_FRAMES_REQUEST, OUT_OF_BOUNDS);
+        }
+    }
+
+    /**
+     * Enables the brightness pyramid, and computes all of its levels in the background.
+     * @param settings The current settings.
+     * @return The settings with the brightness pyramid enabled.
+     * @throws IOException In case of invalid image path.
+     */
+    private RenderSettings warmUpPyramid(RenderSettings settings) throws IOException {
+        RenderSettings pyramidSettings = settings.withPyramidEnabled(true);
+        AsciiArtAlgorithm.warmUpPyramid(this.imagePath, pyramidSettings);
+        return pyramidSettings;
+    }
+
+    /**
+     * Sets the aspect ratio of the output characters, as their height divided by their width.
+     * <p>Characters that are not square are matched with tiles of the same aspect ratio, and any resolution
+     * can be used without padding the image. Most terminal characters are about twice as high as they are
+     * wide.</p>
+     * @param args The arguments given by the user. The second argument is a positive aspect ratio.
+     * @throws CustomShellException In case of an invalid aspect ratio.
+     */
+    private void changeCharAspectRatio(String[] args) throws CustomShellException {
+        CustomShellException aspectRatioException = new CustomShellException(CHANGE_CHAR_ASPECT_RATIO,
+                INCORRECT_FORMAT);
+        if (args.length < TWO_ARGUMENTS) {
+            throw aspectRatioException;
+        }
+        double aspectRatio;
+        try {
+            aspectRatio = Double.parseDouble(args[1]);
+        } catch (NumberFormatException e) {
+            throw aspectRatioException;
+        }
+        if (!(aspectRatio > 0) || Double.isInfinite(aspectRatio)) {
+            throw aspectRatioException;
+        }
+        this.settings = this.settings.withCharAspectRatio(aspectRatio);
+        System.out.printf((ASPECT_RATIO_SET_MESSAGE) + "%n", args[1]);
+    }
+
+    /**
+     * Adds a filter to the chain of filters applied to the image's grey values, or clears the chain.
+     * The filters are applied in the order they were added.
      * <p>Has the following commands:</p>
      * <ul>
-     *      <li>up - Round up to the nearest character.</li>
-     *      <li>down - Round down to the nearest character.</li>
-     *      <li>abs - Round to the nearest character by absolute value.</li>
+     *      <li>gamma &lt;value&gt; - Apply a gamma curve, where values above 1 brighten the mid-tones.</li>
+     *      <li>equalize - Equalize the histogram of the image.</li>
+     *      <li>levels [percent] - Stretch the grey levels to the full range, clipping the given percent of
+     *          the darkest and brightest pixels (default is 0.1).</li>
+     *      <li>clear - Remove all the filters.</li>
      * </ul>
-     * @param args The arguments given by the user. The second argument is the rounding method.
-     * @throws CustomShellException In case of invalid rounding method.
+     * @param args The arguments given by the user. The second argument is the filter,
+     *             and the third argument is its parameter, if any.
+     * @throws CustomShellException In case of an invalid filter or parameter.
      */
-    private void changeRoundMethod(String[] args) throws CustomShellException {
-        CustomShellException roundMethodException = new CustomShellException(ROUND_ERROR, INCORRECT_FORMAT);
-        if (args.length >= TWO_ARGUMENTS) {
+    private void changeLumaFilters(String[] args) throws CustomShellException {
+        CustomShellException filterException = new CustomShellException(CHANGE_LUMA_FILTERS, INCORRECT_FORMAT);
+        if (args.length < TWO_ARGUMENTS) {
+            throw filterException;
+        }
+        try {
             switch (args[1]) {
-                case ROUND_UP_FORMAT -> this.roundMethod = RoundMethod.UP;
-                case ROUND_DOWN_FORMAT -> this.roundMethod = RoundMethod.DOWN;
-                case ROUND_ABS_VALUE_FORMAT -> this.roundMethod = RoundMethod.ABSOLUTE;
-                default -> throw roundMethodException;
+                case GAMMA_FILTER_REQUEST -> {
+                    if (args.length <= FILTER_PARAMETER_INDEX) {
+                        throw filterException;
+                    }
+                    double gamma = Double.parseDouble(args[FILTER_PARAMETER_INDEX]);
+                    this.settings = this.settings.withLumaFilter(new GammaFilter(gamma));
+                }
+                case EQUALIZE_FILTER_REQUEST ->
+                        this.settings = this.settings.withLumaFilter(new HistogramEqualizationFilter());
+                case LEVELS_FILTER_REQUEST -> {
+                    double clipPercent = (args.length > FILTER_PARAMETER_INDEX) ?
+                            Double.parseDouble(args[FILTER_PARAMETER_INDEX]) : DEFAULT_LEVELS_CLIP_PERCENT;
+                    this.settings = this.settings.withLumaFilter(new AutoLevelsFilter(clipPercent / PERCENT));
+                }
+                case CLEAR_REQUEST -> this.settings = this.settings.withoutLumaFilters();
+                default -> throw filterException;
             }
-        } else {
-            throw roundMethodException;
+        } catch (IllegalArgumentException e) { // Also thrown for parameters that are not numbers.
+            throw filterException;
         }
     }
 
     /**
-     * Handles the user's input and executes the requested commands.
-     * <p>Valid commands:</p>
+     * Controls the on-disk cache of decoded images, which maps images that were already decoded
+     * instead of decoding them again.
+     * <p>Has the following commands:</p>
+     * <ul>
+     *      <li>on [megabytes] - Cache the decoded images, up to the given total size (default is 1024).</li>
+     *      <li>off - Decode every image.</li>
+     *      <li>clear - Delete all the cached images.</li>
+     * </ul>
+     * @param args The arguments given by the user. The second argument is the cache command.
+     * @throws CustomShellException In case of an invalid cache command or size, or a failure to clear the cache.
+     */
+    private void changeImageCache(String[] args) throws CustomShellException {
+        CustomShellException imageCacheException = new CustomShellException(CHANGE_IMAGE_CACHE,
+                INCORRECT_FORMAT);
+        if (args.length < TWO_ARGUMENTS) {
+            throw imageCacheException;
+        }
+        try {
+            switch (args[1]) {
+                case ON_REQUEST -> {
+                    long megabytes = (args.length > CACHE_SIZE_INDEX) ?
+                            Long.parseLong(args[CACHE_SIZE_INDEX]) : DEFAULT_CACHE_MEGABYTES;
+                    this.imageCache = new DecodedImageCache(megabytes * BYTES_IN_MEGABYTE);
+                    this.settings = this.settings.withImageCache(this.imageCache);
+                }
+                case OFF_REQUEST -> this.settings = this.settings.withImageCache(null);
+                case CLEAR_REQUEST -> {
+                    if (this.imageCache == null) { // The cached files of previous sessions are still cleared.
+                        this.imageCache = new DecodedImageCache(DEFAULT_CACHE_MEGABYTES * BYTES_IN_MEGABYTE);
+                    }
+                    this.imageCache.clear();
+                }
+                default -> throw imageCacheException;
+            }
+        } catch (IllegalArgumentException e) { // Also thrown for sizes that are not numbers.
+            throw imageCacheException;
+        } catch (IOException e) {
+            throw new CustomShellException(CHANGE_IMAGE_CACHE, CACHE_CLEAR_FAILED);
+        }
+    }
+
+    /**
+     * Changes the raster the glyphs of the character set are rendered in to measure their brightness.
+     * <p>Has the following commands:</p>
      * <ul>
-     *      <li>chars - View the current character set.</li>
-     *      <li>add - Add characters to the current character set.</li>
-     *      <li>remove - Remove characters to the current character set.</li>
-     *      <li>res - Control the picture's resolution.</li>
-     *      <li>round - Change rounding method when matching an ASCII character.</li>
-     *      <li>output - Choose output format: .html file or console.</li>
-     *      <li>asciiArt - Run the algorithm with the current parameters.</li>
+     *      <li>glyph default - Render 16 pixel glyphs in Courier New, with binary pixels.</li>
+     *      <li>glyph &lt;pixels&gt; &lt;binary|aa&gt; [font] - Render glyphs of the given size, measured by
+     *          binary pixels or by antialiased coverage, in the given font or in the current one.</li>
      * </ul>
-     * @param args The arguments given by the user.
-     * @param imageName The path to the image to run the algorithm on.
+     * @param args The arguments given by the user. The font name may span several arguments.
+     * @throws CustomShellException In case of invalid arguments, or a font that is not installed.
+     */
+    private void changeGlyphRaster(String[] args) throws CustomShellException {
+        CustomShellException glyphRasterException = new CustomShellException(CHANGE_GLYPH_RASTER,
+                INCORRECT_FORMAT);
+        if (args.length == TWO_ARGUMENTS && args[1].equals(GLYPH_DEFAULT_REQUEST)) {
+            this.settings = this.settings.withGlyphRaster(GlyphRaster.DEFAULT);
+            return;
+        }
+        if (args.length <= GLYPH_MODE_INDEX) {
+            throw glyphRasterException;
+        }
+        boolean antialiased;
+        switch (args[GLYPH_MODE_INDEX]) {
+            case GLYPH_BINARY_REQUEST -> antialiased = false;
+            case GLYPH_ANTIALIASED_REQUEST -> antialiased = true;
+            default -> throw glyphRasterException;
+        }
+        String fontName = (args.length > GLYPH_FONT_INDEX) ?
+                String.join(FONT_NAME_SEPARATOR, Arrays.copyOfRange(args, GLYPH_FONT_INDEX, args.length)) :
+                this.settings.glyphRaster().getFontName();
+        // Java silently substitutes fonts that are not installed, which changes the brightness ranking.
+        if (!CharConverter.isFontAvailable(fontName)) {
+            throw new CustomShellException(CHANGE_GLYPH_RASTER, FONT_NOT_INSTALLED);
+        }
+        try {
+            GlyphRaster raster = new GlyphRaster(fontName, Integer.parseInt(args[1]), antialiased);
+            this.settings = this.settings.withGlyphRaster(raster);
+        } catch (IllegalArgumentException e) { // Also thrown for sizes that are not numbers.
+            throw glyphRasterException;
+        }
+    }
+
+    /**
+     * Creates the handler of a command that sets the algorithm's settings to one of several values,
+     * given as the second argument of the command.
+     * @param errorSubject The subject of the error message of a missing or invalid value.
+     * @param values The change of the settings for each valid value.
+     * @return The handler of the command.
+     */
+    private CommandHandler option(String errorSubject, Map<String, SettingsUpdate> values) {
+        return args -> {
+            SettingsUpdate update = (args.length >= TWO_ARGUMENTS) ? values.get(args[1]) : null;
+            if (update == null) {
+                throw new CustomShellException(errorSubject, INCORRECT_FORMAT);
+            }
+            this.settings = update.apply(this.settings);
+        };
+    }
+
+    /**
+     * Creates the table of all the shell commands, in the order they are listed in the usage.
+     * Commands that choose one of several values of a setting are handled by {@link #option}.
+     * @return The commands by their names.
+     */
+    private Map<String, Command> createCommands() {
+        Map<String, Command> commands = new LinkedHashMap<>();
+        commands.put(EXIT_INPUT, new Command("", "Exit the shell.", args -> { }));
+        commands.put(PRINT_CHARS_LIST_INPUT, new Command("", "View the current character set (default is 0-9).",
+                args -> printCharList()));
+        commands.put(ADD_CHARS_TO_LIST, new Command("<arg>", "Add characters to the current character set " +
+                "(e.g., \"all\", \"space\", \"\"a\", \"z-d\", \"blocks\", \"box\", \"braille\"...).",
+                this::addCharsToList));
+        commands.put(REMOVE_CHARS_FROM_LIST, new Command("<arg>", "Remove characters from the current character " +
+                "set (e.g., \"all\", \"space\", \"a\", \"z-d\", \"blocks\", \"box\", \"braille\"...).",
+                this::removeCharsFromList));
+        commands.put(CHANGE_RESOLUTION, new Command("<up|down>", "Change the picture's resolution, or set it to " +
+                "any number of characters in a row.", this::changeOutputResolution));
+        commands.put(ROUND_METHOD, new Command("<type>", "Change rounding method (up, down, abs).",
+                option(ROUND_ERROR, Map.of(
+                        ROUND_UP_FORMAT, settings -> settings.withRoundMethod(RoundMethod.UP),
+                        ROUND_DOWN_FORMAT, settings -> settings.withRoundMethod(RoundMethod.DOWN),
+                        ROUND_ABS_VALUE_FORMAT, settings -> settings.withRoundMethod(RoundMethod.ABSOLUTE)))));
+        commands.put(OUTPUT_FORMAT, new Command("<fmt>", "Choose output format: console, html, chtml, diff, " +
+                "ansi or ansi256 (default is console).", this::changeOutputFormat));
+        commands.put(RUN_ALGORITHM, new Command("", "Run the algorithm with the current parameters.",
+                args -> runAsciiArtAlgorithm()));
+        commands.put(BRIGHTNESS_PYRAMID, new Command("<arg>", "Serve resolution changes from a brightness " +
+                "pyramid (on, off, warm).", option(CHANGE_PYRAMID_MODE, Map.of(
+                        ON_REQUEST, settings -> settings.withPyramidEnabled(true),
+                        OFF_REQUEST, settings -> settings.withPyramidEnabled(false),
+                        PYRAMID_WARM_UP_REQUEST, this::warmUpPyramid))));
+        commands.put(PREFETCH_RESOLUTIONS, new Command("<arg>", "Compute adjacent resolutions in the background " +
+                "after each run (on, off).", option(CHANGE_PREFETCH_MODE, Map.of(
+                        ON_REQUEST, settings -> settings.withSpeculationEnabled(true),
+                        OFF_REQUEST, settings -> settings.withSpeculationEnabled(false)))));
+        commands.put(LUMA_ARITHMETIC, new Command("<arg>", "Choose the brightness arithmetic (float, fixed).",
+                option(CHANGE_LUMA_ARITHMETIC, Map.of(
+                        FLOAT_LUMA_REQUEST, settings -> settings.withFixedPointEnabled(false),
+                        FIXED_POINT_LUMA_REQUEST, settings -> settings.withFixedPointEnabled(true)))));
+        commands.put(RENDER_FRAMES, new Command("<path>", "Run the algorithm on every frame of a GIF or a " +
+                "directory of numbered frames.", this::renderFrames));
+        commands.put(DELTA_MODE, new Command("<arg>", "Recompute only the changed parts when the image file is " +
+                "modified (on, off).", option(CHANGE_DELTA_MODE, Map.of(
+                        ON_REQUEST, settings -> settings.withDeltaEnabled(true),
+                        OFF_REQUEST, settings -> settings.withDeltaEnabled(false)))));
+        commands.put(MATCH_METHOD, new Command("<arg>", "Match characters by brightness only or also by shape, " +
+                "or render braille dots (brightness, shape, braille).", option(CHANGE_MATCH_METHOD, Map.of(
+                        MATCH_BY_BRIGHTNESS_REQUEST, settings -> settings.withMatchMethod(MatchMethod.BRIGHTNESS),
+                        MATCH_BY_SHAPE_REQUEST, settings -> settings.withMatchMethod(MatchMethod.SHAPE),
+                        MATCH_BY_BRAILLE_REQUEST, settings -> settings.withMatchMethod(MatchMethod.BRAILLE)))));
+        commands.put(DITHER_METHOD, new Command("<arg>", "Dither the brightness values to avoid banding with " +
+                "small character sets (none, fs, ordered).", option(CHANGE_DITHER_METHOD, Map.of(
+                        NO_DITHER_REQUEST, settings -> settings.withDitherMethod(DitherMethod.NONE),
+                        FLOYD_STEINBERG_DITHER_REQUEST,
+                        settings -> settings.withDitherMethod(DitherMethod.FLOYD_STEINBERG),
+                        ORDERED_DITHER_REQUEST, settings -> settings.withDitherMethod(DitherMethod.ORDERED)))));
+        commands.put(CHAR_ASPECT_RATIO, new Command("<ratio>", "Set the height to width ratio of the " +
+                "characters, such as 2 for terminals (default is 1).", this::changeCharAspectRatio));
+        commands.put(LUMA_FILTER, new Command("<arg>", "Filter the grey values before matching (gamma <value>, " +
+                "equalize, levels [percent], clear).", this::changeLumaFilters));
+        commands.put(PIXEL_FORMAT, new Command("<format>", "Load images in color or as grey values only " +
+                "(rgb, luma8, luma16).", option(CHANGE_PIXEL_FORMAT, Map.of(
+                        RGB_FORMAT_REQUEST, settings -> settings.withPixelFormat(PixelFormat.RGB),
+                        LUMA_8_FORMAT_REQUEST, settings -> settings.withPixelFormat(PixelFormat.LUMA_8),
+                        LUMA_16_FORMAT_REQUEST, settings -> settings.withPixelFormat(PixelFormat.LUMA_16)))));
+        commands.put(PIXEL_STORAGE, new Command("<arg>", "Store the pixels on the heap or in a mapped file for " +
+                "huge images (heap, mapped).", option(CHANGE_PIXEL_STORAGE, Map.of(
+                        HEAP_STORAGE_REQUEST, settings -> settings.withOffHeapEnabled(false),
+                        MAPPED_STORAGE_REQUEST, settings -> settings.withOffHeapEnabled(true)))));
+        commands.put(IMAGE_CACHE, new Command("<arg>", "Cache decoded images on disk and map them on later runs " +
+                "(on [megabytes], off, clear).", this::changeImageCache));
+        commands.put(GLYPH_RASTER, new Command("<arg>", "Measure the glyphs in another size and font, " +
+                "antialiased or not (default, <pixels> <binary|aa> [font]).", this::changeGlyphRaster));
+        commands.put(BRIGHTNESS_PRECISION, new Command("<p>", "Keep the brightness values in less memory, with " +
+                "identical output (double, float, short).", option(CHANGE_BRIGHTNESS_PRECISION, Map.of(
+                        DOUBLE_PRECISION_REQUEST,
+                        settings -> settings.withBrightnessPrecision(BrightnessPrecision.DOUBLE),
+                        FLOAT_PRECISION_REQUEST,
+                        settings -> settings.withBrightnessPrecision(BrightnessPrecision.FLOAT),
+                        SHORT_PRECISION_REQUEST,
+                        settings -> settings.withBrightnessPrecision(BrightnessPrecision.SHORT)))));
+        return commands;
+    }
+
+    /**
+     * Executes the command of the user's input, as found in the command table.
+     * @param args The arguments given by the user. The first argument is the command.
      * @throws CustomShellException In case of invalid input.
      * @throws IOException In case of invalid image path.
      */
-    private void inputSwitcher(String[] args, String imageName) throws CustomShellException, IOException {
-        switch (args[0]) { // Switch user's command
-            case PRINT_CHARS_LIST_INPUT:
-                printCharList();
-                break;
-            case ADD_CHARS_TO_LIST:
-                addCharsToList(args);
-                break;
-            case REMOVE_CHARS_FROM_LIST:
-                removeCharsFromList(args);
-                break;
-            case CHANGE_RESOLUTION:
-                changeOutputResolution(args);
-                break;
-            case ROUND_METHOD:
-                changeRoundMethod(args);
-                break;
-            case OUTPUT_FORMAT:
-                changeOutputFormat(args);
-                break;
-            case RUN_ALGORITHM:
-                runAsciiArtAlgorithm(imageName);
-                break;
-            case EXIT_INPUT:
-                break;
-            default:
-                throw new CustomShellException(EXECUTE_REQUEST, INCORRECT_COMMAND);
+    private void inputSwitcher(String[] args) throws CustomShellException, IOException {
+        Command command = this.commands.get(args[0]);
+        if (command == null) {
+            throw new CustomShellException(EXECUTE_REQUEST, INCORRECT_COMMAND);
         }
+        command.handler().handle(args);
     }
 
     /**
      * Responsible for translating the commands given from the user and execute them.
-     * <p>List of valid commands:</p>
-     * <ul>
-     *      <li>exit - Exit the shell.</li>
-     *      <li>chars - View the current character set.</li>
-     *      <li>add - Add characters to the current character set.</li>
-     *      <li>remove - Remove characters to the current character set.</li>
-     *      <li>res - Control the picture's resolution.</li>
-     *      <li>round - Change rounding method when matching an ASCII character.</li>
-     *      <li>output - Choose output format: .html file or console.</li>
-     *      <li>asciiArt - Run the algorithm with the current parameters.</li>
-     * </ul>
      *
      * @param imagePath Path to the image to activate the algorithm on.
      */
     private void run(String imagePath) {
         try {
+            this.imagePath = imagePath;
             this.imageName = imagePath.substring(imagePath.lastIndexOf("\\") + 1).split("\\.")[0];
-            Image image = new Image(imagePath);
+            // Only the dimensions are read, so images that do not fit in the heap can still be opened.
+            Dimension imageSize = Image.readDimensions(imagePath);
             // Save image sizes after padding
-            this.imageWidth = MathUtils.closestPowerOfTwo(image.getWidth());
+            this.imageWidth = MathUtils.closestPowerOfTwo(imageSize.width);
             this.minCharsInRow = Math.max(
-                    1, this.imageWidth / MathUtils.closestPowerOfTwo(image.getHeight())
+                    1, this.imageWidth / MathUtils.closestPowerOfTwo(imageSize.height)
             );
             String input = "";
             while (!input.equals(EXIT_INPUT)) {
                 try {
+                    // Console outputs are written before the prompt, while files are written in the background.
+                    if (!(this.userOutput instanceof HtmlAsciiOutput)) {
+                        this.outputWriter.flush();
+                    }
                     System.out.print(WAIT_FOR_USER_INPUT);
                     input = KeyboardInput.readLine();
 
                     String[] args = input.split(" "); // parse the command from the user
 
-                    inputSwitcher(args, imagePath); // handle the user's request according to the command
+                    inputSwitcher(args); // handle the user's request according to the command
                 } catch (CustomShellException e) { // Catch exceptions that occurred due to invalid commands
                     System.out.println(e.getMessage());
                 }
@@ -503,23 +993,57 @@ public class Shell {
         } catch (IOException e) {
             // Invalid image path, will end the run() and return to main to end the session.
             System.out.println(e.getMessage());
+        } finally {
+            this.outputWriter.close(); // The writer thread is a daemon, so the last outputs are written first.
         }
     }
 
     /**
-     * Prints the welcome message to the user.
+     * Prints the welcome message to the user, with the usage of the commands in the command table.
      */
-    private static void printWelcomeMessage() {
+    private void printWelcomeMessage() {
         try (BufferedReader reader = new BufferedReader(new FileReader(SHELL_WELCOME_MSG_PATH))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+                if (line.equals(USAGE_PLACEHOLDER)) {
+                    printUsage();
+                } else {
+                    System.out.println(line);
+                }
             }
         } catch (IOException e) {
             System.out.println(String.format(READ_ERROR_MSG, e.getMessage()));
         }
     }
 
+    /**
+     * Prints a line for the usage of each command in the command table, with its description wrapped at
+     * word boundaries.
+     */
+    private void printUsage() {
+        String indent = WORD_SEPARATOR.repeat(USAGE_INDENT);
+        for (Map.Entry<String, Command> entry : this.commands.entrySet()) {
+            Command command = entry.getValue();
+            String usage = command.arguments().isEmpty() ? entry.getKey() :
+                    entry.getKey() + WORD_SEPARATOR + command.arguments();
+            StringBuilder line = new StringBuilder(String.format(USAGE_FORMAT, usage));
+            int lineStart = line.length();
+            for (String word : command.description().split(WORD_SEPARATOR)) {
+                if (line.length() > lineStart &&
+                    line.length() + WORD_SEPARATOR.length() + word.length() > USAGE_LINE_LENGTH) {
+                    System.out.println(line);
+                    line = new StringBuilder(indent);
+                    lineStart = line.length();
+                }
+                if (line.length() > lineStart) {
+                    line.append(WORD_SEPARATOR);
+                }
+                line.append(word);
+            }
+            System.out.println(line);
+        }
+    }
+
     /**
      * Main method to run the shell.
      * @param args Command line arguments.
@@ -531,8 +1055,8 @@ public class Shell {
             System.out.println(NO_IMAGE_ERROR);
             return; // Exit if no arguments are provided
         }
-        printWelcomeMessage();
         Shell newShellSession = new Shell();
+        newShellSession.printWelcomeMessage();
         newShellSession.run(args[0]);
     }
 
@@ -0,0 +1,93 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to the console, colored with ANSI escape sequences.
+ * <p>Supports both 24-bit colors and the 256-color palette, for terminals without 24-bit color support.
+ * An escape sequence is only written when the color changes, and all the output goes through
+ * a single buffered writer.</p>
+ */
+public class AnsiConsoleAsciiOutput implements ColoredAsciiOutput {
+
+    private static final String TRUE_COLOR_ESCAPE = "\u001B[38;2;%d;%d;%dm";
+    private static final String PALETTE_COLOR_ESCAPE = "\u001B[38;5;%dm";
+    private static final String RESET_ESCAPE = "\u001B[0m";
+    private static final String WRITE_ERROR = "Failed to write the colored output to the console";
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+
+    // The 256-color palette's 6x6x6 color cube starts at index 16.
+    private static final int NUM_OF_PALETTE_COLORS = 256;
+    private static final int COLOR_CUBE_OFFSET = 16;
+
+    private static final String[] PALETTE_ESCAPES = createPaletteEscapes();
+
+    private final boolean trueColor;
+
+    /**
+     * Create a new AnsiConsoleAsciiOutput instance.
+     * @param trueColor <code>true</code> to use 24-bit colors,
+     *                  <code>false</code> to use the 256-color palette.
+     */
+    public AnsiConsoleAsciiOutput(boolean trueColor) {
+        this.trueColor = trueColor;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        new ConsoleAsciiOutput().out(chars);
+    }
+
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            int currentColor = -1; // No color was written yet.
+            for (int y = 0; y < chars.length; y++) {
+                for (int x = 0; x < chars[y].length; x++) {
+                    int color = trueColor ? colors[y][x]
+                                          : COLOR_CUBE_OFFSET + ColorCube.toCubeIndex(colors[y][x]);
+                    if (color != currentColor) {
+                        writer.write(trueColor ? toTrueColorEscape(color) : PALETTE_ESCAPES[color]);
+                        currentColor = color;
+                    }
+                    writer.write(chars[y][x]);
+                    writer.write(' ');
+                }
+                writer.write(System.lineSeparator());
+            }
+            writer.write(RESET_ESCAPE);
+            writer.flush(); // Flush without closing, since closing would close the console.
+        } catch (IOException e) {
+            Logger.getGlobal().severe(WRITE_ERROR);
+        }
+    }
+
+    /**
+     * Returns the escape sequence of a 24-bit color.
+     * @param rgb The packed RGB color.
+     * @return The escape sequence.
+     */
+    private static String toTrueColorEscape(int rgb) {
+        return String.format(TRUE_COLOR_ESCAPE, (rgb >> RED_SHIFT) & CHANNEL_MASK,
+                             (rgb >> GREEN_SHIFT) & CHANNEL_MASK, rgb & CHANNEL_MASK);
+    }
+
+    /**
+     * Creates the escape sequences of all the 256-color palette's colors.
+     * @return The escape sequences, by palette index.
+     */
+    private static String[] createPaletteEscapes() {
+        String[] escapes = new String[NUM_OF_PALETTE_COLORS];
+        for (int i = 0; i < NUM_OF_PALETTE_COLORS; i++) {
+            escapes[i] = String.format(PALETTE_COLOR_ESCAPE, i);
+        }
+        return escapes;
+    }
+}
@@ -0,0 +1,44 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output the rows of a 2D array of chars in some fashion,
+ * one row at a time, as soon as each row is computed.
+ * <p>Rows are given in order, between a single call to {@link #begin(int, int)} and a single call to
+ * {@link #end()}. A row's buffer may be reused for the next row as soon as {@link #row(int, char[], int)}
+ * returns, so the whole array never has to exist at once.</p>
+ */
+public interface AsciiRowOutput {
+
+    /**
+     * Starts the output of a 2D array of chars.
+     * @param rows The number of rows that will be given.
+     * @param cols The number of chars in each row.
+     */
+    void begin(int rows, int cols);
+
+    /**
+     * Outputs a single row.
+     * @param index The index of the row, starting at 0.
+     * @param buffer The chars of the row. May be modified by the caller once this method returns.
+     * @param len The number of chars of the row, at the start of the buffer.
+     */
+    void row(int index, char[] buffer, int len);
+
+    /**
+     * Ends the output of the 2D array of chars.
+     */
+    void end();
+
+    /**
+     * Outputs all the rows of a whole 2D array of chars.
+     * @param chars The 2D array of chars to output.
+     */
+    default void outRows(char[][] chars) {
+        begin(chars.length, chars[0].length);
+        for (int y = 0; y < chars.length; y++) {
+            row(y, chars[y], chars[y].length);
+        }
+        end();
+    }
+
+}
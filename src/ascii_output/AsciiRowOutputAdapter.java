@@ -0,0 +1,40 @@
+package ascii_output;
+
+import java.util.Arrays;
+
+/**
+ * Adapts an {@link AsciiOutput} of whole 2D arrays of chars to the row by row {@link AsciiRowOutput},
+ * for outputs that can only be written once all the rows are known.
+ * <p>The rows are copied as they are given, and the whole array is output when it ends.</p>
+ */
+public class AsciiRowOutputAdapter implements AsciiRowOutput {
+
+    private final AsciiOutput output;
+    private char[][] chars;
+
+    /**
+     * Creates an adapter of an output of whole arrays.
+     * @param output The output to send each whole array to.
+     */
+    public AsciiRowOutputAdapter(AsciiOutput output) {
+        this.output = output;
+    }
+
+    @Override
+    public void begin(int rows, int cols) {
+        chars = new char[rows][];
+    }
+
+    @Override
+    public void row(int index, char[] buffer, int len) {
+        chars[index] = Arrays.copyOf(buffer, len); // The buffer may be reused for the next row.
+    }
+
+    @Override
+    public void end() {
+        char[][] completeChars = chars;
+        chars = null;
+        output.out(completeChars);
+    }
+
+}
@@ -0,0 +1,291 @@
+package ascii_output;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Outputs 2D arrays of chars on a dedicated writer thread, so the next array can be computed while the
+ * previous one is written to the console or to a file.
+ * <p>The arrays are handed to another output in the order they were given. At most <code>capacity</code>
+ * arrays wait to be written: when they all wait, the next array waits for a free slot, so a slow output slows
+ * the producer down instead of holding an unbounded number of arrays in memory.</p>
+ * <p>The given arrays are written after the call returns, so they must not be modified afterwards.</p>
+ * <p>An array can also be streamed row by row, as an {@link AsciiRowOutput}. Each row is copied into one of a
+ * small ring of row buffers and written on the writer thread, so the next row can be computed while the
+ * previous one is written. When every buffer of the ring waits to be written, the next row waits for one.
+ * The rows are streamed to the wrapped output if it is an {@link AsciiRowOutput}, and otherwise collected by
+ * an {@link AsciiRowOutputAdapter}. A streamed array must end before the next array is given.</p>
+ */
+public class AsyncAsciiOutput implements ColoredAsciiOutput, AsciiRowOutput {
+
+    private static final String WRITER_THREAD_NAME = "ascii-art-output";
+    private static final String CLOSED = "The output was closed.";
+    private static final String STREAMING = "An array is still being streamed.";
+    private static final String INVALID_CAPACITY = "The queue capacity must be positive, but was %d.";
+    private static final int NUM_OF_ROW_BUFFERS = 8;
+
+    /**
+     * A write waiting for the writer thread.
+     * @param write Writes to the wrapped output, or <code>null</code> to stop the writer thread.
+     * @param written The future of the array the write belongs to, completed exceptionally if the write fails.
+     * @param startsArray Whether the write starts an array, which frees the array's slot once it is taken.
+     */
+    private record PendingWrite(Runnable write, CompletableFuture<Void> written, boolean startsArray) {
+    }
+
+    private final AsciiOutput output;
+    private final AsciiRowOutput rowOutput;
+    private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+    private final Semaphore freeSlots;
+    private final BlockingQueue<char[]> freeRowBuffers = new ArrayBlockingQueue<>(NUM_OF_ROW_BUFFERS);
+    private final Thread writerThread;
+    private CompletableFuture<Void> lastWritten = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> streamWritten;
+    private boolean closed;
+
+    /**
+     * Creates an output that writes to another output on a new writer thread.
+     * @param output The output to write the arrays to. Only used by the writer thread from now on.
+     * @param capacity The maximal number of arrays waiting to be written.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public AsyncAsciiOutput(AsciiOutput output, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_CAPACITY, capacity));
+        }
+        this.output = output;
+        this.rowOutput = (output instanceof AsciiRowOutput outputOfRows) ? outputOfRows :
+                         new AsciiRowOutputAdapter(output);
+        this.freeSlots = new Semaphore(capacity);
+        for (int i = 0; i < NUM_OF_ROW_BUFFERS; i++) {
+            freeRowBuffers.add(new char[0]); // Grown to the length of the rows when they are first copied.
+        }
+        this.writerThread = new Thread(this::writePendingOutputs, WRITER_THREAD_NAME);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the output the arrays are written to.
+     * @return The wrapped output.
+     */
+    public AsciiOutput getOutput() {
+        return output;
+    }
+
+    /**
+     * Queues the specified 2D array of chars to be written, waiting only if the queue is full.
+     * @param chars The 2D array of chars to output. Must not be modified afterwards.
+     */
+    @Override
+    public void out(char[][] chars) {
+        outAsync(chars, null);
+    }
+
+    /**
+     * Queues the specified 2D array of chars to be written in the given colors, waiting only if the queue
+     * is full. The colors are ignored if the wrapped output is not a {@link ColoredAsciiOutput}.
+     * @param chars The 2D array of chars to output. Must not be modified afterwards.
+     * @param colors A 2D array of the same dimensions, holding the color of each char as a packed RGB value.
+     *               Must not be modified afterwards.
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        outAsync(chars, colors);
+    }
+
+    /**
+     * Queues the specified 2D array of chars to be written, waiting only if the queue is full.
+     * @param chars The 2D array of chars to output. Must not be modified afterwards.
+     * @return A future that completes once the array is written, or completes exceptionally if writing it
+     * failed or the output was closed first.
+     */
+    public CompletableFuture<Void> outAsync(char[][] chars) {
+        return outAsync(chars, null);
+    }
+
+    /**
+     * Queues the specified 2D array of chars to be written in the given colors, waiting only if the queue
+     * is full. The colors are ignored if the wrapped output is not a {@link ColoredAsciiOutput}.
+     * @param chars The 2D array of chars to output. Must not be modified afterwards.
+     * @param colors A 2D array of the same dimensions, holding the color of each char as a packed RGB value,
+     *               or <code>null</code> to write the chars without colors. Must not be modified afterwards.
+     * @return A future that completes once the array is written, or completes exceptionally if writing it
+     * failed or the output was closed first.
+     * @throws IllegalStateException If an array is still being streamed.
+     */
+    public synchronized CompletableFuture<Void> outAsync(char[][] chars, int[][] colors) {
+        if (streamWritten != null) {
+            throw new IllegalStateException(STREAMING);
+        }
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        if (!takeSlot(written)) {
+            return written;
+        }
+        pendingWrites.add(new PendingWrite(() -> {
+            if (colors != null && output instanceof ColoredAsciiOutput coloredOutput) {
+                coloredOutput.out(chars, colors);
+            } else {
+                output.out(chars);
+            }
+            written.complete(null);
+        }, written, true));
+        lastWritten = written;
+        return written;
+    }
+
+    /**
+     * Starts streaming an array row by row, waiting only if <code>capacity</code> arrays wait to be written.
+     * Does nothing if the output was closed, and then the rows of the array are not written either.
+     * @param rows The number of rows that will be given.
+     * @param cols The number of chars in each row.
+     * @throws IllegalStateException If an array is still being streamed.
+     */
+    @Override
+    public synchronized void begin(int rows, int cols) {
+        if (streamWritten != null) {
+            throw new IllegalStateException(STREAMING);
+        }
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        if (!takeSlot(written)) {
+            return;
+        }
+        pendingWrites.add(new PendingWrite(() -> rowOutput.begin(rows, cols), written, true));
+        streamWritten = written;
+        lastWritten = written;
+    }
+
+    /**
+     * Copies a row of the streamed array into a free row buffer, and queues it to be written, waiting only if
+     * every row buffer waits to be written.
+     * @param index The index of the row, starting at 0.
+     * @param buffer The chars of the row. May be modified once this method returns.
+     * @param len The number of chars of the row, at the start of the buffer.
+     */
+    @Override
+    public synchronized void row(int index, char[] buffer, int len) {
+        CompletableFuture<Void> written = streamWritten;
+        if (written == null) { // The stream did not begin, since the output was closed.
+            return;
+        }
+        char[] rowBuffer;
+        try {
+            rowBuffer = freeRowBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            written.completeExceptionally(e);
+            return;
+        }
+        char[] copiedRow = (rowBuffer.length < len) ? new char[len] : rowBuffer;
+        System.arraycopy(buffer, 0, copiedRow, 0, len);
+        pendingWrites.add(new PendingWrite(() -> {
+            try {
+                rowOutput.row(index, copiedRow, len);
+            } finally {
+                freeRowBuffers.add(copiedRow);
+            }
+        }, written, false));
+    }
+
+    /**
+     * Ends the streamed array. Its future completes once all of its rows are written.
+     */
+    @Override
+    public synchronized void end() {
+        CompletableFuture<Void> written = streamWritten;
+        if (written == null) {
+            return;
+        }
+        streamWritten = null;
+        pendingWrites.add(new PendingWrite(() -> {
+            rowOutput.end();
+            written.complete(null);
+        }, written, false));
+    }
+
+    /**
+     * Takes a slot for an array that waits to be written, waiting for one if needed.
+     * @param written The future of the array, completed exceptionally if no slot was taken.
+     * @return <code>true</code> if a slot was taken, <code>false</code> if the output was closed or the wait was
+     * interrupted.
+     */
+    private boolean takeSlot(CompletableFuture<Void> written) {
+        if (closed) {
+            written.completeExceptionally(new IllegalStateException(CLOSED));
+            return false;
+        }
+        try {
+            freeSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            written.completeExceptionally(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all the arrays queued so far are written, including a streamed array that has ended.
+     * Failures to write an array are not thrown here, but only by the future of that array.
+     */
+    public void flush() {
+        CompletableFuture<Void> lastQueued;
+        synchronized (this) {
+            lastQueued = lastWritten;
+        }
+        try {
+            lastQueued.get();
+        } catch (ExecutionException e) { // Reported by the future of the failed array.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes all the queued arrays and stops the writer thread. Arrays given afterwards are not written.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingWrites.add(new PendingWrite(null, null, false));
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Performs the queued writes in order until the output is closed. Runs on the writer thread.
+     */
+    private void writePendingOutputs() {
+        while (true) {
+            PendingWrite pending;
+            try {
+                pending = pendingWrites.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (pending.write() == null) {
+                return;
+            }
+            if (pending.startsArray()) { // The array no longer waits to be written.
+                freeSlots.release();
+            }
+            try {
+                pending.write().run();
+            } catch (RuntimeException e) { // The next arrays and rows are still written.
+                pending.written().completeExceptionally(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package ascii_output;
+
+/**
+ * A utility class that quantizes colors to a fixed 6x6x6 color cube,
+ * whose levels are those of the 256-color ANSI palette.
+ */
+final class ColorCube {
+
+    /**
+     * The number of colors in the cube.
+     */
+    static final int NUM_OF_COLORS = 216;
+
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int CUBE_SIDE = 6;
+    private static final int[] CUBE_LEVELS = {0, 95, 135, 175, 215, 255};
+    private static final int FIRST_LEVEL_THRESHOLD = 48;
+    private static final int SECOND_LEVEL_THRESHOLD = 115;
+    private static final int LEVEL_OFFSET = 35;
+    private static final int LEVEL_STEP = 40;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ColorCube() {}
+
+    /**
+     * Returns the index of the closest color in the cube.
+     * @param rgb The packed RGB color.
+     * @return The cube index, in the range [0, 215].
+     */
+    static int toCubeIndex(int rgb) {
+        int red = toCubeLevel((rgb >> RED_SHIFT) & CHANNEL_MASK);
+        int green = toCubeLevel((rgb >> GREEN_SHIFT) & CHANNEL_MASK);
+        int blue = toCubeLevel(rgb & CHANNEL_MASK);
+        return (red * CUBE_SIDE + green) * CUBE_SIDE + blue;
+    }
+
+    /**
+     * Returns the color of a cube index.
+     * @param cubeIndex The cube index, in the range [0, 215].
+     * @return The packed RGB color.
+     */
+    static int toRgb(int cubeIndex) {
+        int red = CUBE_LEVELS[cubeIndex / (CUBE_SIDE * CUBE_SIDE)];
+        int green = CUBE_LEVELS[(cubeIndex / CUBE_SIDE) % CUBE_SIDE];
+        int blue = CUBE_LEVELS[cubeIndex % CUBE_SIDE];
+        return (red << RED_SHIFT) | (green << GREEN_SHIFT) | blue;
+    }
+
+    /**
+     * Returns the closest cube level of a channel value.
+     * @param channelValue The channel value, in the range [0, 255].
+     * @return The cube level, in the range [0, 5].
+     */
+    private static int toCubeLevel(int channelValue) {
+        if (channelValue < FIRST_LEVEL_THRESHOLD) {
+            return 0;
+        }
+        if (channelValue < SECOND_LEVEL_THRESHOLD) {
+            return 1;
+        }
+        return (channelValue - LEVEL_OFFSET) / LEVEL_STEP;
+    }
+}
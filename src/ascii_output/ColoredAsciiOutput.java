@@ -0,0 +1,16 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars
+ * along with the color of each char in some fashion.
+ */
+public interface ColoredAsciiOutput extends AsciiOutput {
+
+    /**
+     * Output the specified 2D array of chars, each in its given color.
+     * @param chars The 2D array of chars to output.
+     * @param colors A 2D array of the same dimensions, holding the color of each char as a packed RGB value.
+     */
+    void out(char[][] chars, int[][] colors);
+
+}
@@ -0,0 +1,22 @@
+package ascii_output;
+
+/**
+ * Output a 2D array of chars, each in its own color, to an HTML file viewable in a web browser.
+ * The colors are quantized to a bounded palette with one CSS class per color.
+ */
+public class ColoredHtmlAsciiOutput extends HtmlAsciiOutput implements ColoredAsciiOutput {
+
+    /**
+     * Create a new ColoredHtmlAsciiOutput instance.
+     * @param filename The name of the file to write to.
+     * @param fontName The name of the font to use.
+     */
+    public ColoredHtmlAsciiOutput(String filename, String fontName) {
+        super(filename, fontName);
+    }
+
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        write(chars, colors);
+    }
+}
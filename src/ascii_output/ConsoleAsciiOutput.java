@@ -2,9 +2,15 @@ package ascii_output;
 
 /**
  * Output a 2D array of chars to the console.
+ * <p>Each row is printed as soon as it is given, so rows can also be streamed
+ * with {@link AsciiRowOutput}.</p>
  * @author Dan Nirel
  */
-public class ConsoleAsciiOutput implements AsciiOutput {
+public class ConsoleAsciiOutput implements AsciiOutput, AsciiRowOutput {
+
+    private static final char CHAR_SEPARATOR = ' ';
+
+    private final StringBuilder rowBuilder = new StringBuilder();
 
     /**
      * An empty constructor.
@@ -14,11 +20,24 @@ public class ConsoleAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
-            }
-            System.out.println();
+        outRows(chars);
+    }
+
+    @Override
+    public void begin(int rows, int cols) {
+    }
+
+    @Override
+    public void row(int index, char[] buffer, int len) {
+        // Printed at once, rather than a print call for each char.
+        rowBuilder.setLength(0);
+        for (int x = 0; x < len; x++) {
+            rowBuilder.append(buffer[x]).append(CHAR_SEPARATOR);
         }
+        System.out.println(rowBuilder);
+    }
+
+    @Override
+    public void end() {
     }
 }
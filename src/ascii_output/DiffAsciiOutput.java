@@ -0,0 +1,66 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output only the cells of a 2D array of chars that changed since the previous output, to the console.
+ * <p>Each output starts with a header line <code>@ rows cols changedCells</code>, followed by one
+ * <code>row col char</code> line per changed cell, so a client holding the previous output can patch it
+ * in place. The first output, and any output whose dimensions differ from the previous one,
+ * lists all of its cells.</p>
+ */
+public class DiffAsciiOutput implements AsciiOutput {
+
+    private static final String HEADER_FORMAT = "@ %d %d %d";
+    private static final String CELL_FORMAT = "%d %d %c";
+    private static final String WRITE_ERROR = "Failed to write the changed cells to the console";
+
+    private char[][] previousChars;
+
+    /**
+     * An empty constructor.
+     */
+    public DiffAsciiOutput() {
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        boolean fullOutput = previousChars == null || previousChars.length != chars.length ||
+                             previousChars[0].length != chars[0].length;
+        int changedCells = 0;
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                if (fullOutput || chars[y][x] != previousChars[y][x]) {
+                    changedCells++;
+                }
+            }
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            writer.write(String.format(HEADER_FORMAT, chars.length, chars[0].length, changedCells));
+            writer.write(System.lineSeparator());
+            for (int y = 0; y < chars.length; y++) {
+                for (int x = 0; x < chars[y].length; x++) {
+                    if (fullOutput || chars[y][x] != previousChars[y][x]) {
+                        writer.write(String.format(CELL_FORMAT, y, x, chars[y][x]));
+                        writer.write(System.lineSeparator());
+                    }
+                }
+            }
+            writer.flush(); // Flush without closing, since closing would close the console.
+        } catch (IOException e) {
+            Logger.getGlobal().severe(WRITE_ERROR);
+        }
+
+        // Keep a copy, since the caller may reuse the given array.
+        previousChars = new char[chars.length][];
+        for (int y = 0; y < chars.length; y++) {
+            previousChars[y] = chars[y].clone();
+        }
+    }
+}
@@ -3,18 +3,32 @@ package ascii_output;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * <p>Uncolored rows can also be streamed with {@link AsciiRowOutput}, in which case each row is written
+ * to the file as soon as it is given.</p>
+ * <p>The file is written in UTF-8 and declares it, so Unicode glyphs and braille patterns are shown as they
+ * are, whatever the platform's default charset.</p>
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements AsciiOutput, AsciiRowOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int NO_COLOR = -1;
+    private static final String STYLE_START = "<style>\n";
+    private static final String COLOR_CLASS = ".c%d{color:#%06x}\n";
+    private static final String STYLE_END = "</style>\n";
+    private static final String SPAN_START = "<span class=\"c%d\">";
+    private static final String SPAN_END = "</span>";
+    private static final String WRITE_ERROR = "Failed to write to \"%s\"";
 
     private final String fontName;
     private final String filename;
+    // The writer of the rows being streamed, or null if no rows are being streamed or writing failed.
+    private BufferedWriter rowWriter;
 
     /**
      * Create a new HtmlAsciiOutput instance.
@@ -28,43 +42,196 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                    """
-                            <!DOCTYPE html>
-                            <html>
-                            <body style="\
-                            \tCOLOR:#000000;\
-                            \tTEXT-ALIGN:center;\
-                            \tFONT-SIZE:1px;">
-                            <p style="\
-                            \twhite-space:pre;\
-                            \tFONT-FAMILY:%s;\
-                            \tFONT-SIZE:%frem;\
-                            \tLETTER-SPACING:0.15em;\
-                            \tLINE-HEIGHT:%fem;">
-                            """,
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
+        write(chars, null);
+    }
+
+    @Override
+    public void begin(int rows, int cols) {
+        try {
+            rowWriter = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8));
+            writeHeader(rowWriter, cols, null);
+        } catch (IOException e) {
+            handleRowWriteError();
+        }
+    }
+
+    @Override
+    public void row(int index, char[] buffer, int len) {
+        if (rowWriter == null) { // Writing failed, and was already reported.
+            return;
+        }
+        try {
+            for (int x = 0; x < len; x++) {
+                writeChar(rowWriter, buffer[x]);
+            }
+            rowWriter.newLine();
+        } catch (IOException e) {
+            handleRowWriteError();
+        }
+    }
 
+    @Override
+    public void end() {
+        if (rowWriter == null) {
+            return;
+        }
+        try {
+            writeFooter(rowWriter);
+            rowWriter.close();
+            rowWriter = null;
+        } catch (IOException e) {
+            handleRowWriteError();
+        }
+    }
+
+    /**
+     * Writes the specified 2D array of chars to the HTML file, optionally colored.
+     * <p>Colors are quantized to a fixed 6x6x6 color cube. Each cube color that is used gets a single
+     * CSS class, and each run of adjacent chars of the same color is wrapped in a single span,
+     * which keeps the file small even at high resolutions.</p>
+     * @param chars The 2D array of chars to output.
+     * @param colors A 2D array of the same dimensions, holding the color of each char as a packed RGB
+     *               value, or <code>null</code> to write the chars in the default color.
+     */
+    protected void write(char[][] chars, int[][] colors) {
+        int[][] cubeIndices = (colors == null) ? null : toCubeIndices(colors);
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8))) {
+            writeHeader(writer, chars[0].length, cubeIndices);
+
+            int currentCubeIndex = NO_COLOR;
             for(int y = 0 ; y < chars.length ; y++) {
                 for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+                    if (cubeIndices != null && cubeIndices[y][x] != currentCubeIndex) {
+                        // Close the previous color's span, and open a span for the new color.
+                        if (currentCubeIndex != NO_COLOR) {
+                            writer.write(SPAN_END);
+                        }
+                        currentCubeIndex = cubeIndices[y][x];
+                        writer.write(String.format(SPAN_START, currentCubeIndex));
                     }
-                    writer.write(htmlRep);
+                    writeChar(writer, chars[y][x]);
                 }
                 writer.newLine();
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
+            if (currentCubeIndex != NO_COLOR) {
+                writer.write(SPAN_END);
+            }
+            writeFooter(writer);
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            Logger.getGlobal().severe(String.format(WRITE_ERROR, filename));
+        }
+    }
+
+    /**
+     * Writes the start of the HTML file, up to the first char.
+     * @param writer The writer of the HTML file.
+     * @param cols The number of chars in each row.
+     * @param cubeIndices A 2D array of the color cube indices of the chars, or <code>null</code> if the
+     *                    chars are not colored.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeHeader(BufferedWriter writer, int cols, int[][] cubeIndices) throws IOException {
+        writer.write(
+                """
+                        <!DOCTYPE html>
+                        <html>
+                        <head><meta charset="utf-8"></head>
+                        <body style="\
+                        \tCOLOR:#000000;\
+                        \tTEXT-ALIGN:center;\
+                        \tFONT-SIZE:1px;">
+                        """);
+        if (cubeIndices != null) {
+            writeColorClasses(writer, cubeIndices);
+        }
+        writer.write(String.format(
+                """
+                        <p style="\
+                        \twhite-space:pre;\
+                        \tFONT-FAMILY:%s;\
+                        \tFONT-SIZE:%frem;\
+                        \tLETTER-SPACING:0.15em;\
+                        \tLINE-HEIGHT:%fem;">
+                        """,
+                fontName, BASE_FONT_SIZE/cols, BASE_LINE_SPACING));
+    }
+
+    /**
+     * Writes a single char, escaped if it has a meaning in HTML.
+     * @param writer The writer of the HTML file.
+     * @param c The char to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeChar(BufferedWriter writer, char c) throws IOException {
+        switch(c) {
+            case '<': writer.write("&lt;");  break;
+            case '>': writer.write("&gt;");  break;
+            case '&': writer.write("&amp;"); break;
+            default:  writer.write(c);
+        }
+    }
+
+    /**
+     * Writes the end of the HTML file, after the last char.
+     * @param writer The writer of the HTML file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeFooter(BufferedWriter writer) throws IOException {
+        writer.write(
+            "</p>\n"+
+            "</body>\n"+
+            "</html>\n");
+    }
+
+    /**
+     * Reports a failure to write streamed rows, and stops writing the rest of them.
+     */
+    private void handleRowWriteError() {
+        Logger.getGlobal().severe(String.format(WRITE_ERROR, filename));
+        if (rowWriter != null) {
+            try {
+                rowWriter.close();
+            } catch (IOException e) { // Already reported.
+            }
+            rowWriter = null;
+        }
+    }
+
+    /**
+     * Quantizes each color to the index of its closest color cube color.
+     * @param colors A 2D array of packed RGB colors.
+     * @return A 2D array of the same dimensions, holding the color cube indices.
+     */
+    private static int[][] toCubeIndices(int[][] colors) {
+        int[][] cubeIndices = new int[colors.length][];
+        for (int y = 0; y < colors.length; y++) {
+            cubeIndices[y] = new int[colors[y].length];
+            for (int x = 0; x < colors[y].length; x++) {
+                cubeIndices[y][x] = ColorCube.toCubeIndex(colors[y][x]);
+            }
+        }
+        return cubeIndices;
+    }
+
+    /**
+     * Writes a style element with one CSS class for each color cube color that is used.
+     * @param writer The writer of the HTML file.
+     * @param cubeIndices A 2D array of color cube indices.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeColorClasses(BufferedWriter writer, int[][] cubeIndices) throws IOException {
+        boolean[] isUsed = new boolean[ColorCube.NUM_OF_COLORS];
+        for (int[] cubeIndexRow : cubeIndices) {
+            for (int cubeIndex : cubeIndexRow) {
+                isUsed[cubeIndex] = true;
+            }
+        }
+        writer.write(STYLE_START);
+        for (int cubeIndex = 0; cubeIndex < ColorCube.NUM_OF_COLORS; cubeIndex++) {
+            if (isUsed[cubeIndex]) {
+                writer.write(String.format(COLOR_CLASS, cubeIndex, ColorCube.toRgb(cubeIndex)));
+            }
         }
+        writer.write(STYLE_END);
     }
 }
@@ -0,0 +1,62 @@
+package image;
+
+/**
+ * A luma filter that stretches the grey levels of the image linearly, so its darkest level becomes black
+ * and its brightest level becomes white.
+ * <p>A fraction of the darkest and brightest pixels can be clipped, so a few outliers do not prevent
+ * the stretch.</p>
+ */
+public class AutoLevelsFilter implements LumaFilter {
+
+    private static final int MAX_GREY_VALUE = NUM_OF_GREY_LEVELS - 1;
+    private static final double MAX_CLIP_FRACTION = 0.5;
+    private static final String INVALID_CLIP_FRACTION = "Clip fraction must be in [0, 0.5), got %s.";
+
+    private final double clipFraction;
+
+    /**
+     * Creates an auto-levels filter.
+     * @param clipFraction The fraction of pixels to clip at each end of the histogram, in [0, 0.5).
+     * @throws IllegalArgumentException If the clip fraction is out of range.
+     */
+    public AutoLevelsFilter(double clipFraction) {
+        if (!(clipFraction >= 0 && clipFraction < MAX_CLIP_FRACTION)) {
+            throw new IllegalArgumentException(String.format(INVALID_CLIP_FRACTION, clipFraction));
+        }
+        this.clipFraction = clipFraction;
+    }
+
+    @Override
+    public float[] createLookupTable(int[] histogram) {
+        long totalPixels = 0;
+        for (int count : histogram) {
+            totalPixels += count;
+        }
+        long clippedPixels = (long) (totalPixels * clipFraction);
+        int low = 0;
+        for (long darker = histogram[0]; low < MAX_GREY_VALUE && darker <= clippedPixels; ) {
+            darker += histogram[++low];
+        }
+        int high = MAX_GREY_VALUE;
+        for (long brighter = histogram[MAX_GREY_VALUE]; high > 0 && brighter <= clippedPixels; ) {
+            brighter += histogram[--high];
+        }
+
+        float[] lookupTable = new float[NUM_OF_GREY_LEVELS];
+        for (int level = 0; level < NUM_OF_GREY_LEVELS; level++) {
+            if (high <= low) { // A single grey level, which can not be stretched.
+                lookupTable[level] = level;
+            } else {
+                double stretched = (double) (level - low) * MAX_GREY_VALUE / (high - low);
+                lookupTable[level] = (float) Math.max(0, Math.min(MAX_GREY_VALUE, stretched));
+            }
+        }
+        return lookupTable;
+    }
+
+    @Override
+    public boolean usesHistogram() {
+        return true;
+    }
+
+}
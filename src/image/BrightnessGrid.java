@@ -0,0 +1,350 @@
+package image;
+
+import utils.BufferPool;
+
+/**
+ * A grid of normalized brightness values, stored row by row in a single flat array.
+ * <p>A flat array is a single allocation, and its rows follow each other in memory, so scanning the grid
+ * row by row reads it sequentially. The value of a cell is at index <code>row * numCols + col</code> of
+ * {@link #getValues()}.</p>
+ * <p>The grids of a render are leased from the {@link BufferPool} with {@link #lease(int, int)}, and are
+ * released back to it once the render no longer needs them. Grids created with the constructor, such as
+ * long-lived shared grids, are never pooled, so releasing them does nothing.</p>
+ * <p>Grids can be {@link #lease(int, int, BrightnessPrecision, BrightnessSource) leased} in a narrower
+ * precision, a <code>float</code> or a quantized <code>short</code> per value, which halves or quarters the
+ * memory a kept grid takes and the bytes a scan of it reads. The values are computed in <code>double</code>
+ * precision and narrowed as they are set, so no <code>double</code> grid is allocated along the way. A
+ * narrowed grid keeps the {@link BrightnessSource} of its values, so a value its storage does not hold
+ * exactly can still be recomputed with {@link #getExact}.</p>
+ */
+public final class BrightnessGrid {
+
+    /**
+     * The quantized value of the brightness values above 1, which only differ from 1 by rounding errors.
+     */
+    public static final int MAX_QUANTIZED = 0xFFFF;
+
+    /**
+     * The quantized value of exactly 1. The quantized value of 0 is 0, and the values between them are
+     * quantized to the nearest multiple of <code>1 / QUANTIZED_ONE</code>.
+     */
+    public static final int QUANTIZED_ONE = MAX_QUANTIZED - 1;
+
+    /**
+     * The most a brightness value may exceed 1 or fall below 0 by, through rounding errors, and still be
+     * matched by its quantized value.
+     */
+    public static final double MAX_OVERSHOOT = 1e-6;
+
+    /**
+     * Returned by {@link #getQuantized(int, int)} for values outside the range of the quantized values.
+     */
+    public static final int NOT_QUANTIZED = -1;
+
+    private static final String INVALID_DIMENSIONS = "A grid of %dx%d cells is invalid.";
+    private static final String TOO_LARGE = "A grid of %dx%d cells is too large for an array.";
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final String NOT_DOUBLE = "The values of a %s grid are not stored as doubles.";
+
+    private final int numRows;
+    private final int numCols;
+    private final boolean pooled;
+    private final BrightnessPrecision precision;
+    private double[] values;
+    private float[] floatValues;
+    private short[] quantizedValues;
+    private BrightnessSource exactSource;
+
+    /**
+     * Creates a grid of zeros that is not pooled.
+     * @param numRows The number of rows.
+     * @param numCols The number of cells in a row.
+     * @throws IllegalArgumentException If the dimensions are not positive.
+     * @throws UnsupportedOperationException If the grid is too large for an array.
+     */
+    public BrightnessGrid(int numRows, int numCols) {
+        this(numRows, numCols, false);
+    }
+
+    /**
+     * Creates a grid of zeros.
+     * @param numRows The number of rows.
+     * @param numCols The number of cells in a row.
+     * @param pooled Whether to lease the values from the pool.
+     * @throws IllegalArgumentException If the dimensions are not positive.
+     * @throws UnsupportedOperationException If the grid is too large for an array.
+     */
+    private BrightnessGrid(int numRows, int numCols, boolean pooled) {
+        this(numRows, numCols, BrightnessPrecision.DOUBLE, pooled);
+        this.values = pooled ? BufferPool.leaseDoubles(numRows * numCols) : new double[numRows * numCols];
+    }
+
+    /**
+     * Creates a grid whose values are not allocated yet.
+     * @param numRows The number of rows.
+     * @param numCols The number of cells in a row.
+     * @param precision The precision the values are stored in.
+     * @param pooled Whether the values are leased from the pool.
+     * @throws IllegalArgumentException If the dimensions are not positive.
+     * @throws UnsupportedOperationException If the grid is too large for an array.
+     */
+    private BrightnessGrid(int numRows, int numCols, BrightnessPrecision precision, boolean pooled) {
+        if (numRows <= 0 || numCols <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_DIMENSIONS, numRows, numCols));
+        }
+        if ((long) numRows * numCols > MAX_ARRAY_LENGTH) {
+            throw new UnsupportedOperationException(String.format(TOO_LARGE, numRows, numCols));
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.precision = precision;
+        this.pooled = pooled;
+    }
+
+    /**
+     * Leases a grid of zeros from the pool. The grid should be released once it is no longer needed.
+     * @param numRows The number of rows.
+     * @param numCols The number of cells in a row.
+     * @return The grid.
+     * @throws IllegalArgumentException If the dimensions are not positive.
+     * @throws UnsupportedOperationException If the grid is too large for an array.
+     */
+    public static BrightnessGrid lease(int numRows, int numCols) {
+        return new BrightnessGrid(numRows, numCols, true);
+    }
+
+    /**
+     * Leases a grid of the given precision from the pool. The grid should be released once it is no longer
+     * needed.
+     * <p>A <code>double</code> grid is filled with zeros. The values of a narrower grid are unspecified, so
+     * every cell must be {@link #set set} before it is read.</p>
+     * @param numRows The number of rows.
+     * @param numCols The number of cells in a row.
+     * @param precision The precision to store the values in.
+     * @param exactSource The source of the values that will be set, to recompute them exactly. Only kept if the
+     *                    precision is narrower than <code>double</code>.
+     * @return The grid.
+     * @throws IllegalArgumentException If the dimensions are not positive.
+     * @throws UnsupportedOperationException If the grid is too large for an array.
+     */
+    public static BrightnessGrid lease(int numRows, int numCols, BrightnessPrecision precision,
+                                       BrightnessSource exactSource) {
+        if (precision == BrightnessPrecision.DOUBLE) {
+            return lease(numRows, numCols);
+        }
+        BrightnessGrid grid = new BrightnessGrid(numRows, numCols, precision, true);
+        if (precision == BrightnessPrecision.FLOAT) {
+            grid.floatValues = BufferPool.leaseFloats(numRows * numCols);
+        } else {
+            grid.quantizedValues = BufferPool.leaseShorts(numRows * numCols);
+        }
+        grid.exactSource = exactSource;
+        return grid;
+    }
+
+    /**
+     * Leases a copy of this grid from the pool, in <code>double</code> precision.
+     * The values of a narrowed grid are copied exactly, as returned by {@link #getExact(int, int)}.
+     * @return The copy.
+     */
+    public BrightnessGrid leaseCopy() {
+        BrightnessGrid copy = lease(numRows, numCols);
+        if (precision == BrightnessPrecision.DOUBLE) {
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+            return copy;
+        }
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                copy.values[row * numCols + col] = getExact(row, col);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns whether the values are leased from the pool. Grids that are not pooled may be shared, such as
+     * the levels of a {@link BrightnessPyramid}, so they should be copied before they are modified.
+     * @return <code>true</code> if the grid is pooled, <code>false</code> otherwise.
+     */
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Returns the precision the values are stored in.
+     * @return The precision.
+     */
+    public BrightnessPrecision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the number of rows.
+     * @return The number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns the number of cells in a row.
+     * @return The number of columns.
+     */
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Returns the value of a cell, as stored in the grid's precision.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The brightness value.
+     */
+    public double get(int row, int col) {
+        int index = row * numCols + col;
+        switch (precision) {
+            case FLOAT:
+                return floatValues[index];
+            case SHORT:
+                return (double) Math.min(QUANTIZED_ONE, quantizedValues[index] & MAX_QUANTIZED) / QUANTIZED_ONE;
+            default:
+                return values[index];
+        }
+    }
+
+    /**
+     * Returns the exact value of a cell, recomputing it if the grid is narrowed.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The brightness value, as computed in <code>double</code> precision.
+     */
+    public double getExact(int row, int col) {
+        return (exactSource != null) ? exactSource.getBrightness(row, col) : get(row, col);
+    }
+
+    /**
+     * Returns the quantized value of a cell, as {@link #quantize(double)} quantizes it.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The quantized value in the range [0, {@link #MAX_QUANTIZED}], or {@link #NOT_QUANTIZED} if the
+     * value is not a number, or falls below 0 or exceeds 1 by more than {@link #MAX_OVERSHOOT}.
+     */
+    public int getQuantized(int row, int col) {
+        if (precision == BrightnessPrecision.SHORT) {
+            return quantizedValues[row * numCols + col] & MAX_QUANTIZED;
+        }
+        double value = get(row, col);
+        if (!(value >= -MAX_OVERSHOOT && value <= 1 + MAX_OVERSHOOT)) {
+            return NOT_QUANTIZED;
+        }
+        return quantize(value);
+    }
+
+    /**
+     * Sets the value of a cell. A quantized grid stores negative values as 0.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param value The brightness value.
+     */
+    public void set(int row, int col, double value) {
+        set(row * numCols + col, value);
+    }
+
+    /**
+     * Sets the recomputation of the exact values of a narrowed grid, after its values are updated from
+     * another source.
+     * @param exactSource The source of the values.
+     */
+    public void setExactSource(BrightnessSource exactSource) {
+        this.exactSource = exactSource;
+    }
+
+    /**
+     * Returns the flat array of the values, for loops that scan whole rows.
+     * @return The values, row by row. Modifying them modifies the grid.
+     * @throws IllegalStateException If the grid is narrowed.
+     */
+    public double[] getValues() {
+        if (precision != BrightnessPrecision.DOUBLE) {
+            throw new IllegalStateException(String.format(NOT_DOUBLE, precision));
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values to the pool if the grid was leased. The grid must not be used afterwards.
+     */
+    public void release() {
+        if (!pooled) {
+            return;
+        }
+        if (values != null) {
+            BufferPool.release(values);
+            values = null;
+        }
+        if (floatValues != null) {
+            BufferPool.release(floatValues);
+            floatValues = null;
+        }
+        if (quantizedValues != null) {
+            BufferPool.release(quantizedValues);
+            quantizedValues = null;
+        }
+    }
+
+    /**
+     * Quantizes a brightness value to 16 bits.
+     * <p>The characters matched by rounding up or down change right at 0 and 1, so 0, 1 and the values
+     * above 1 each have a quantized value of their own, and the values between 0 and 1 are rounded to the
+     * nearest of the other quantized values.</p>
+     * @param value The brightness value, which is not negative. Not a number is quantized as a value
+     *              between 0 and 1.
+     * @return 0 for 0, {@link #QUANTIZED_ONE} for 1, {@link #MAX_QUANTIZED} for values above 1, and the nearest
+     * multiple of <code>1 / QUANTIZED_ONE</code> in the range [1, <code>QUANTIZED_ONE - 1</code>] otherwise.
+     */
+    public static int quantize(double value) {
+        if (value <= 0) {
+            return 0;
+        }
+        if (value >= 1) {
+            return (value == 1) ? QUANTIZED_ONE : MAX_QUANTIZED;
+        }
+        return (int) Math.min(QUANTIZED_ONE - 1, Math.max(1, Math.round(value * QUANTIZED_ONE)));
+    }
+
+    /**
+     * Rounds a value to the nearest <code>float</code> on the same side of 0 and of 1, so the rounded value
+     * is quantized to 0, {@link #QUANTIZED_ONE} or {@link #MAX_QUANTIZED} only if the value itself is.
+     * @param value The value.
+     * @return The rounded value.
+     */
+    private static float narrowToFloat(double value) {
+        float narrowed = (float) value;
+        if (narrowed == 0 && value != 0) {
+            return Math.copySign(Float.MIN_VALUE, (float) value);
+        }
+        if (narrowed == 1 && value != 1) {
+            return (value < 1) ? Math.nextDown(1f) : Math.nextUp(1f);
+        }
+        return narrowed;
+    }
+
+    /**
+     * Sets the value at an index of the flat array.
+     * @param index The index of the cell.
+     * @param value The brightness value.
+     */
+    private void set(int index, double value) {
+        switch (precision) {
+            case FLOAT:
+                floatValues[index] = narrowToFloat(value);
+                break;
+            case SHORT:
+                quantizedValues[index] = (short) quantize(value);
+                break;
+            default:
+                values[index] = value;
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package image;
+
+/**
+ * An enum that represents how the values of a {@link BrightnessGrid} are stored.
+ */
+public enum BrightnessPrecision {
+    /** 64-bit floating-point values, 8 bytes per value */
+    DOUBLE,
+    /** 32-bit floating-point values, 4 bytes per value */
+    FLOAT,
+    /** Values quantized to 16-bit integers in the range [0, 65535], 2 bytes per value */
+    SHORT
+}
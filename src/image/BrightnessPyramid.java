@@ -0,0 +1,202 @@
+package image;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A multi-resolution brightness pyramid of a padded image.
+ * <p>Level 0 holds the normalized brightness of every single pixel, and each following level holds
+ * the mean of 2x2 cells of the level below it. Since the padded image dimensions are powers of two,
+ * the brightness grid of every power-of-two resolution is exactly one of the levels.</p>
+ * <p>Levels are computed lazily, each one from the level below it, so the image pixels are only
+ * read once per pyramid. The base level takes a <code>double</code> per pixel, so it is only computed when
+ * the brightness of single pixels is requested: otherwise, level 1 is computed straight from pairs of pixel
+ * rows, with the same arithmetic, and the largest level kept takes a quarter of that.</p>
+ * <p>Each level is computed under its own lock and published as soon as it is complete, so a caller only
+ * waits for the levels up to the one it needs, even while the pyramid is warmed up in the background.</p>
+ * <p>Each level is a single array, so images whose levels would not fit in an array are not supported.</p>
+ */
+public class BrightnessPyramid {
+
+    private static final int TWO_BY_TWO_CELLS = 4;
+    private static final int MAX_RGB_VALUE = 255;
+    private static final String WARM_UP_THREAD_NAME = "brightness-pyramid-warm-up";
+    private static final String INVALID_RESOLUTION = "Resolution %d does not match any pyramid level.";
+
+    private final Image image;
+    private final AtomicReferenceArray<BrightnessGrid> levels;
+    private final Object[] levelLocks;
+
+    /**
+     * Creates a new brightness pyramid for the given image.
+     * No pixels are read until the first level is requested.
+     * @param paddedImage An image whose dimensions are powers of two.
+     */
+    public BrightnessPyramid(Image paddedImage) {
+        this.image = paddedImage;
+        int minDimension = Math.min(paddedImage.getWidth(), paddedImage.getHeight());
+        // The number of times both dimensions can be halved, plus the base level.
+        int numLevels = Integer.numberOfTrailingZeros(minDimension) + 1;
+        this.levels = new AtomicReferenceArray<>(numLevels);
+        this.levelLocks = new Object[numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            levelLocks[level] = new Object();
+        }
+    }
+
+    /**
+     * Returns the brightness grid of the given resolution.
+     * The returned grid is shared with the pyramid and must not be modified. It is not pooled, so releasing
+     * it does nothing.
+     * @param resolution The number of sub-images in a row. Must be a power of two.
+     * @return A grid of the normalized brightness values of the sub-images.
+     * @throws IllegalArgumentException If no pyramid level matches the resolution.
+     * @throws UnsupportedOperationException If the level is too large for an array.
+     */
+    public BrightnessGrid getBrightnessGrid(int resolution) {
+        int imageWidth = image.getWidth();
+        if (resolution <= 0 || imageWidth % resolution != 0) {
+            throw new IllegalArgumentException(String.format(INVALID_RESOLUTION, resolution));
+        }
+        int subImageDims = imageWidth / resolution;
+        int level = Integer.numberOfTrailingZeros(subImageDims);
+        if (Integer.bitCount(subImageDims) != 1 || level >= levels.length()) {
+            throw new IllegalArgumentException(String.format(INVALID_RESOLUTION, resolution));
+        }
+        return getLevel(level);
+    }
+
+    /**
+     * Computes all the pyramid levels above the base level in a background daemon thread, from the largest
+     * level up, so each level is published before the next one is computed.
+     */
+    public void warmUpInBackground() {
+        Thread warmUpThread = new Thread(() -> {
+            for (int level = 1; level < levels.length(); level++) {
+                getLevel(level);
+            }
+        }, WARM_UP_THREAD_NAME);
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    /**
+     * Returns the given pyramid level, computing it and every missing level below it if needed.
+     * <p>Only the lock of the level is held while it is computed, and the locks of the levels below it are
+     * taken after it, always downwards, so the levels can be computed by several threads at once.</p>
+     * @param level The level to return.
+     * @return The brightness grid of the given level.
+     */
+    private BrightnessGrid getLevel(int level) {
+        BrightnessGrid grid = levels.get(level);
+        if (grid != null) {
+            return grid;
+        }
+        synchronized (levelLocks[level]) {
+            grid = levels.get(level);
+            if (grid == null) {
+                if (level == 0) {
+                    grid = computeBaseLevel();
+                } else if (level == 1 && levels.get(0) == null) {
+                    grid = computeFirstLevel();
+                } else {
+                    grid = downsample(getLevel(level - 1));
+                }
+                levels.set(level, grid);
+            }
+            return grid;
+        }
+    }
+
+    /**
+     * Computes the normalized brightness of every pixel in the image.
+     * @return The base level of the pyramid.
+     */
+    private BrightnessGrid computeBaseLevel() {
+        int imageHeight = image.getHeight();
+        int imageWidth = image.getWidth();
+        float[] greyRow = new float[imageWidth];
+        BrightnessGrid baseLevel = new BrightnessGrid(imageHeight, imageWidth);
+        double[] values = baseLevel.getValues();
+        for (int row = 0; row < imageHeight; row++) {
+            image.readGreyRow(row, 0, greyRow, imageWidth);
+            for (int col = 0; col < imageWidth; col++) {
+                values[row * imageWidth + col] = (double) greyRow[col] / MAX_RGB_VALUE;
+            }
+        }
+        return baseLevel;
+    }
+
+    /**
+     * Computes the first level above the base level straight from the image, two pixel rows at a time,
+     * with the same arithmetic as downsampling the base level.
+     * @return Level 1 of the pyramid.
+     */
+    private BrightnessGrid computeFirstLevel() {
+        int imageWidth = image.getWidth();
+        int numRows = image.getHeight() / 2;
+        float[] greyRow = new float[imageWidth];
+        double[] upperValues = new double[imageWidth];
+        double[] lowerValues = new double[imageWidth];
+        BrightnessGrid firstLevel = new BrightnessGrid(numRows, imageWidth / 2);
+        double[] values = firstLevel.getValues();
+        for (int row = 0; row < numRows; row++) {
+            readBaseRow(2 * row, greyRow, upperValues);
+            readBaseRow(2 * row + 1, greyRow, lowerValues);
+            downsampleRows(upperValues, 0, lowerValues, 0, values, row * firstLevel.getNumCols(),
+                           firstLevel.getNumCols());
+        }
+        return firstLevel;
+    }
+
+    /**
+     * Reads the normalized brightness of every pixel in a row of the image.
+     * @param row The pixel row.
+     * @param greyRow An array of the image's width for the grey values.
+     * @param values The array to write the normalized brightness values to.
+     */
+    private void readBaseRow(int row, float[] greyRow, double[] values) {
+        image.readGreyRow(row, 0, greyRow, greyRow.length);
+        for (int col = 0; col < greyRow.length; col++) {
+            values[col] = (double) greyRow[col] / MAX_RGB_VALUE;
+        }
+    }
+
+    /**
+     * Creates the next pyramid level, where each cell is the mean of 2x2 cells in the given level.
+     * @param level The level to downsample.
+     * @return The downsampled level.
+     */
+    private static BrightnessGrid downsample(BrightnessGrid level) {
+        int levelCols = level.getNumCols();
+        int numRows = level.getNumRows() / 2;
+        int numCols = levelCols / 2;
+        double[] values = level.getValues();
+        BrightnessGrid nextLevel = new BrightnessGrid(numRows, numCols);
+        double[] nextValues = nextLevel.getValues();
+        for (int row = 0; row < numRows; row++) {
+            int upperRow = 2 * row * levelCols;
+            downsampleRows(values, upperRow, values, upperRow + levelCols, nextValues, row * numCols, numCols);
+        }
+        return nextLevel;
+    }
+
+    /**
+     * Computes a row of the next level from two rows of a level, where each cell is the mean of 2x2 cells.
+     * @param upper The values of the upper row.
+     * @param upperOffset The index of the first value of the upper row.
+     * @param lower The values of the lower row.
+     * @param lowerOffset The index of the first value of the lower row.
+     * @param next The values of the next level.
+     * @param nextOffset The index of the first value of the row in the next level.
+     * @param numCols The number of cells in a row of the next level.
+     */
+    private static void downsampleRows(double[] upper, int upperOffset, double[] lower, int lowerOffset,
+                                       double[] next, int nextOffset, int numCols) {
+        for (int col = 0; col < numCols; col++) {
+            next[nextOffset + col] = (upper[upperOffset + 2 * col] + upper[upperOffset + 2 * col + 1] +
+                                      lower[lowerOffset + 2 * col] + lower[lowerOffset + 2 * col + 1]) /
+                                     TWO_BY_TWO_CELLS;
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package image;
+
+/**
+ * Computes the exact normalized brightness of a single cell of a brightness grid, identically to the
+ * computation of the whole grid.
+ * <p>Grids of a narrower {@link BrightnessPrecision} keep the source of their values, so the few values
+ * their storage can not tell apart are recomputed on demand.</p>
+ */
+@FunctionalInterface
+public interface BrightnessSource {
+
+    /**
+     * Computes the brightness of a cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The normalized brightness value.
+     */
+    double getBrightness(int row, int col);
+
+}
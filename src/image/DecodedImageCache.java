@@ -0,0 +1,409 @@
+package image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of decoded images, so images that were already decoded are mapped instead of decoded.
+ * <p>Each image is stored in a raw file of a small header followed by its pixels, row by row, in the
+ * requested pixel format and in the native byte order, since the cache is local. Grey formats cache only
+ * the grey plane, a quarter or half the size of packed RGB values.</p>
+ * <p>The file of an image is named by a hash of its pixel format and contents, so a modified image is never
+ * served from the cache, and identical images share a file. An image is found by a small index file, named
+ * by a hash of its canonical path, size, modification time and pixel format, which holds the name of its
+ * cached file. So an image whose file has not changed is served without reading it, and its contents are
+ * only hashed on a miss, such as after it was modified or replaced. When the cache grows over its maximal
+ * size, the least recently used files are deleted.</p>
+ * <p>Cached files are written and read through their channel, and only mapped for off-heap images, so the
+ * files that are renamed are never mapped. The files that off-heap images of this process still map are
+ * neither evicted nor cleared, until the images are garbage collected.</p>
+ */
+public class DecodedImageCache {
+
+    private static final String DEFAULT_DIRECTORY_NAME = "ascii-art-cache";
+    private static final String CACHE_FILE_SUFFIX = ".raw";
+    private static final String INDEX_FILE_SUFFIX = ".key";
+    private static final String KEY_REGEX = "[0-9a-f]+";
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String HEX_BYTE_FORMAT = "%02x";
+    private static final int MAGIC = 0x41534349; // "ASCI"
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int HASH_BUFFER_BYTES = 1 << 16;
+    private static final String CACHE_WRITE_FAILED = "Failed to cache the decoded image";
+    private static final String INVALID_MAX_BYTES = "The maximal cache size must be positive, but was %d.";
+
+    // The mapped pixels of each cached file that an off-heap image was read from, by the file's absolute path.
+    private static final ConcurrentHashMap<Path, WeakReference<MappedPixelPlane>> mappedFiles =
+            new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Creates a cache in the default directory, under the system's temporary directory.
+     * @param maxBytes The maximal total size of the cached files.
+     * @throws IllegalArgumentException If the maximal size is not positive.
+     */
+    public DecodedImageCache(long maxBytes) {
+        this(Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIRECTORY_NAME), maxBytes);
+    }
+
+    /**
+     * Creates a cache in the given directory. The directory is created when the first image is cached.
+     * @param directory The directory to store the cached files in.
+     * @param maxBytes The maximal total size of the cached files.
+     * @throws IllegalArgumentException If the maximal size is not positive.
+     */
+    public DecodedImageCache(Path directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_MAX_BYTES, maxBytes));
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the image in a given file, from the cache if it was cached, and caches it otherwise.
+     * An image that can not be cached is still returned.
+     * @param filename The name of the image file.
+     * @param pixelFormat The format to store the pixels in.
+     * @param offHeap Whether to keep the pixels in the mapped cache file, or to copy them to an array.
+     * @return The image.
+     * @throws IOException If the image or its cached file can not be read.
+     */
+    public Image load(String filename, PixelFormat pixelFormat, boolean offHeap) throws IOException {
+        Path indexFile = directory.resolve(computeMetadataKey(filename, pixelFormat) + INDEX_FILE_SUFFIX);
+        String indexedKey = readIndex(indexFile);
+        Image image = (indexedKey == null) ? null : readCachedImage(indexedKey, pixelFormat, offHeap);
+        if (image != null) {
+            return image;
+        }
+        // A miss by the file's metadata, so look the image up by its contents.
+        String contentKey = computeContentKey(filename, pixelFormat);
+        image = readCachedImage(contentKey, pixelFormat, offHeap);
+        try {
+            if (image == null) {
+                image = new Image(filename, pixelFormat, offHeap);
+                writeCachedImage(image, getCachedFile(contentKey));
+            }
+            writeIndex(indexFile, contentKey);
+            evict();
+        } catch (IOException e) { // The cache is only an optimization, so the image is still used.
+            Logger.getGlobal().warning(CACHE_WRITE_FAILED);
+        }
+        return image;
+    }
+
+    /**
+     * Deletes all the cached files and index files, except the cached files that off-heap images still map.
+     * @throws IOException If a file can not be deleted.
+     */
+    public void clear() throws IOException {
+        for (File file : listFiles(CACHE_FILE_SUFFIX)) {
+            if (!isMapped(file.toPath())) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        for (File file : listFiles(INDEX_FILE_SUFFIX)) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Computes the name of the index file of an image from its file's metadata, without reading it.
+     * @param filename The name of the image file.
+     * @param pixelFormat The format of the cached pixels.
+     * @return The hex digest of the image's canonical path, size, modification time and pixel format.
+     * @throws IOException If the canonical path of the image can not be resolved.
+     */
+    private static String computeMetadataKey(String filename, PixelFormat pixelFormat) throws IOException {
+        File file = new File(filename);
+        MessageDigest digest = createDigest();
+        String metadata = String.join(File.pathSeparator, file.getCanonicalPath(), Long.toString(file.length()),
+                                      Long.toString(file.lastModified()), pixelFormat.name());
+        digest.update(metadata.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the name of the cached file of an image from its contents.
+     * @param filename The name of the image file.
+     * @param pixelFormat The format of the cached pixels.
+     * @return The hex digest of the image's pixel format and contents.
+     * @throws IOException If the image file can not be read.
+     */
+    private static String computeContentKey(String filename, PixelFormat pixelFormat) throws IOException {
+        MessageDigest digest = createDigest();
+        digest.update(pixelFormat.name().getBytes(StandardCharsets.UTF_8));
+        try (InputStream input = Files.newInputStream(Paths.get(filename))) {
+            byte[] buffer = new byte[HASH_BUFFER_BYTES];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a digest of the cache's hash algorithm.
+     * @return The digest.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) { // Every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Formats a digest as hex digits.
+     * @param digest The digest.
+     * @return The hex digits of the digest.
+     */
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format(HEX_BYTE_FORMAT, b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns the cached file of the given key.
+     * @param key The hex digest of an image's pixel format and contents.
+     * @return The path of the cached file.
+     */
+    private Path getCachedFile(String key) {
+        return directory.resolve(key + CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Reads the key of the cached file an index file refers to.
+     * @param indexFile The index file.
+     * @return The key, or <code>null</code> if there is no valid index file.
+     * @throws IOException If the index file exists but can not be read.
+     */
+    private static String readIndex(Path indexFile) throws IOException {
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        String key = Files.readString(indexFile, StandardCharsets.UTF_8).trim();
+        return key.matches(KEY_REGEX) ? key : null;
+    }
+
+    /**
+     * Writes an index file that refers to a cached file. The file is written under another name and then
+     * renamed, so a partly written index is never read.
+     * @param indexFile The index file.
+     * @param key The key of the cached file.
+     * @throws IOException If the index file can not be written.
+     */
+    private void writeIndex(Path indexFile, String key) throws IOException {
+        Files.createDirectories(directory);
+        Path partialFile = indexFile.resolveSibling(indexFile.getFileName() + PARTIAL_FILE_SUFFIX);
+        Files.writeString(partialFile, key, StandardCharsets.UTF_8);
+        Files.move(partialFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an image from the cached file of a key, and keeps track of the file if the image maps it.
+     * @param key The key of the cached file.
+     * @param pixelFormat The expected pixel format.
+     * @param offHeap Whether to keep the pixels in the mapped file, or to copy them to an array.
+     * @return The image, or <code>null</code> if there is no complete cached image of that format in the file.
+     * @throws IOException If the file can not be read.
+     */
+    private Image readCachedImage(String key, PixelFormat pixelFormat, boolean offHeap) throws IOException {
+        Path cachedFile = getCachedFile(key);
+        Image image = readCachedImage(cachedFile, pixelFormat, offHeap);
+        if (image != null && image.getMappedPixels() != null) {
+            mappedFiles.put(cachedFile.toAbsolutePath(), new WeakReference<>(image.getMappedPixels()));
+        }
+        return image;
+    }
+
+    /**
+     * Checks whether an off-heap image may still map a cached file, so deleting it could fail.
+     * @param cachedFile The cached file.
+     * @return <code>true</code> if the mapped pixels read from the file were not garbage collected yet.
+     */
+    private static boolean isMapped(Path cachedFile) {
+        Path absolutePath = cachedFile.toAbsolutePath();
+        WeakReference<MappedPixelPlane> mappedPixels = mappedFiles.get(absolutePath);
+        if (mappedPixels != null && mappedPixels.get() == null) {
+            mappedFiles.remove(absolutePath, mappedPixels);
+            return false;
+        }
+        return mappedPixels != null;
+    }
+
+    /**
+     * Reads an image from a cached file, and marks the file as recently used.
+     * <p>Off-heap images keep the file mapped, and the pixels of other images are read through its channel,
+     * so the file stays unmapped and can be deleted on every system.</p>
+     * @param cachedFile The cached file.
+     * @param pixelFormat The expected pixel format.
+     * @param offHeap Whether to keep the pixels in the mapped file, or to copy them to an array.
+     * @return The image, or <code>null</code> if there is no complete cached image of that format in the file.
+     * @throws IOException If the file can not be read.
+     */
+    private static Image readCachedImage(Path cachedFile, PixelFormat pixelFormat, boolean offHeap)
+            throws IOException {
+        if (!Files.isRegularFile(cachedFile)) {
+            return null;
+        }
+        Image image;
+        try (FileChannel channel = FileChannel.open(cachedFile, StandardOpenOption.READ)) {
+            image = readCachedImage(channel, pixelFormat, offHeap);
+        }
+        if (image == null) {
+            Files.deleteIfExists(cachedFile); // A partly written or outdated file.
+        } else {
+            // The modification time of a cached file is the last time it was used.
+            cachedFile.toFile().setLastModified(System.currentTimeMillis());
+        }
+        return image;
+    }
+
+    /**
+     * Reads an image from the channel of a cached file.
+     * @param channel The channel of the cached file, at its start.
+     * @param pixelFormat The expected pixel format.
+     * @param offHeap Whether to keep the pixels in the mapped file, or to copy them to an array.
+     * @return The image, or <code>null</code> if the file is not a complete cached image of that format.
+     * @throws IOException If the file can not be read.
+     */
+    private static Image readCachedImage(FileChannel channel, PixelFormat pixelFormat, boolean offHeap)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+        while (header.hasRemaining() && channel.read(header) != -1) {
+            // Keep reading until the header is complete or the file ends.
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ||
+            header.getInt() != pixelFormat.ordinal()) {
+            return null;
+        }
+        int width = header.getInt();
+        int height = header.getInt();
+        if (width <= 0 || height <= 0 ||
+            channel.size() != HEADER_BYTES + MappedPixelPlane.getByteCount(pixelFormat, width, height)) {
+            return null;
+        }
+        if (offHeap) {
+            return new Image(new MappedPixelPlane(channel, HEADER_BYTES, FileChannel.MapMode.READ_ONLY,
+                                                  pixelFormat, width, height));
+        }
+        switch (pixelFormat) {
+            case LUMA_8 -> {
+                byte[] luma8Pixels = new byte[width * height];
+                MappedPixelPlane.readArray(channel, pixelFormat, luma8Pixels);
+                return new Image(luma8Pixels, width, height);
+            }
+            case LUMA_16 -> {
+                short[] luma16Pixels = new short[width * height];
+                MappedPixelPlane.readArray(channel, pixelFormat, luma16Pixels);
+                return new Image(luma16Pixels, width, height);
+            }
+            default -> {
+                int[] rgbPixels = new int[width * height];
+                MappedPixelPlane.readArray(channel, pixelFormat, rgbPixels);
+                return new Image(rgbPixels, width, height);
+            }
+        }
+    }
+
+    /**
+     * Writes an image to a cached file through its channel, without mapping it. The file is written under
+     * another name and then renamed, so a partly written file is never read.
+     * @param image The image to cache.
+     * @param cachedFile The cached file.
+     * @throws IOException If the file can not be written.
+     */
+    private void writeCachedImage(Image image, Path cachedFile) throws IOException {
+        Files.createDirectories(directory);
+        PixelFormat pixelFormat = image.getPixelFormat();
+        Path partialFile = cachedFile.resolveSibling(cachedFile.getFileName() + PARTIAL_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(partialFile, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(pixelFormat.ordinal()).putInt(image.getWidth()).putInt(image.getHeight())
+                  .flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            MappedPixelPlane mappedPixels = image.getMappedPixels();
+            if (mappedPixels != null) {
+                mappedPixels.writeTo(channel);
+            } else if (pixelFormat == PixelFormat.LUMA_8) {
+                MappedPixelPlane.writeArray(channel, pixelFormat, image.getLuma8Pixels());
+            } else if (pixelFormat == PixelFormat.LUMA_16) {
+                MappedPixelPlane.writeArray(channel, pixelFormat, image.getLuma16Pixels());
+            } else {
+                MappedPixelPlane.writeArray(channel, pixelFormat, image.getRgbPixels());
+            }
+        }
+        Files.move(partialFile, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the least recently used cached files until the cache is not larger than its maximal size,
+     * and the index files that refer to deleted files. The files that off-heap images still map are kept,
+     * and the next least recently used files are deleted instead.
+     * @throws IOException If a file can not be deleted.
+     */
+    private void evict() throws IOException {
+        File[] cachedFiles = listFiles(CACHE_FILE_SUFFIX);
+        // Keep the most recently used files.
+        Arrays.sort(cachedFiles, Comparator.comparingLong(File::lastModified).reversed());
+        long totalBytes = 0;
+        boolean deleted = false;
+        for (File file : cachedFiles) {
+            totalBytes += file.length();
+            if (totalBytes > maxBytes && !isMapped(file.toPath())) {
+                deleted |= Files.deleteIfExists(file.toPath());
+            }
+        }
+        if (!deleted) {
+            return;
+        }
+        for (File indexFile : listFiles(INDEX_FILE_SUFFIX)) {
+            String key = readIndex(indexFile.toPath());
+            if (key == null || !Files.isRegularFile(getCachedFile(key))) {
+                Files.deleteIfExists(indexFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * Lists the files of the cache with the given suffix.
+     * @param suffix The suffix of the cached files or of the index files.
+     * @return The files, or an empty array if there are none.
+     */
+    private File[] listFiles(String suffix) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(suffix));
+        return (files == null) ? new File[0] : files;
+    }
+
+}
@@ -0,0 +1,310 @@
+package image;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * A sequence of frames, read one frame at a time.
+ * <p>The frames are either all the frames of a single (animated) image file, such as a GIF,
+ * or the images in a directory of numbered frames, ordered by their numbers.</p>
+ * <p>Frames of a single file may cover only a part of the animation area, in which case they are drawn
+ * over the previous frames, as done by animated GIFs that only store the changed area of each frame.
+ * The animation area is the logical screen of the GIF, and after each frame is shown, its area is disposed
+ * of as its GIF metadata says: kept, cleared to the background, or restored to what it was before the frame
+ * was drawn. The background, like any area no frame covered, is white.</p>
+ */
+public class FrameSequence implements Closeable {
+
+    private static final String GIF_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_IMAGE_DESCRIPTOR = "ImageDescriptor";
+    private static final String GIF_LEFT_POSITION = "imageLeftPosition";
+    private static final String GIF_TOP_POSITION = "imageTopPosition";
+    private static final String GIF_GRAPHIC_CONTROL_EXTENSION = "GraphicControlExtension";
+    private static final String GIF_DISPOSAL_METHOD = "disposalMethod";
+    private static final String GIF_RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String GIF_RESTORE_TO_PREVIOUS = "restoreToPrevious";
+    private static final String GIF_STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_LOGICAL_SCREEN_DESCRIPTOR = "LogicalScreenDescriptor";
+    private static final String GIF_LOGICAL_SCREEN_WIDTH = "logicalScreenWidth";
+    private static final String GIF_LOGICAL_SCREEN_HEIGHT = "logicalScreenHeight";
+    private static final String NO_READER_ERROR = "No image reader found for \"%s\".";
+    private static final String NO_FRAMES_ERROR = "No frames found in \"%s\".";
+    private static final String NON_DIGITS_REGEX = "\\D";
+
+    private final ImageReader reader;
+    private final ImageInputStream inputStream;
+    private final File[] frameFiles;
+    private final int frameCount;
+    private BufferedImage canvas;
+    private int nextFrameIndex;
+    // The area of the last drawn frame, which is disposed of before the next frame is drawn.
+    private Rectangle disposalArea;
+    private String disposalMethod;
+    private int[] pixelsBeforeFrame;
+
+    /**
+     * Opens the frame sequence at the given path.
+     * @param path The path of an image file, or of a directory of numbered frames.
+     * @throws IOException If the path can not be read as a frame sequence.
+     */
+    public FrameSequence(String path) throws IOException {
+        File file = new File(path);
+        if (file.isDirectory()) {
+            this.frameFiles = listNumberedFrames(file);
+            this.reader = null;
+            this.inputStream = null;
+            this.frameCount = frameFiles.length;
+        } else {
+            this.frameFiles = null;
+            this.inputStream = ImageIO.createImageInputStream(file);
+            this.reader = openReader(inputStream, path);
+            this.frameCount = reader.getNumImages(true);
+        }
+        if (frameCount == 0) {
+            close();
+            throw new IOException(String.format(NO_FRAMES_ERROR, path));
+        }
+    }
+
+    /**
+     * Returns the number of frames in the sequence.
+     * @return The number of frames.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns whether there are more frames to read.
+     * @return <code>true</code> if there are more frames, <code>false</code> otherwise.
+     */
+    public boolean hasNextFrame() {
+        return nextFrameIndex < frameCount;
+    }
+
+    /**
+     * Reads the next frame of the sequence.
+     * @return The next frame.
+     * @throws IOException If the frame can not be read.
+     */
+    public Image nextFrame() throws IOException {
+        BufferedImage frame;
+        if (frameFiles != null) {
+            frame = readFrameFile(frameFiles[nextFrameIndex]);
+        } else {
+            frame = readFrameFromReader(nextFrameIndex);
+        }
+        nextFrameIndex++;
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        return new Image(frame.getRGB(0, 0, width, height, null, 0, width), width, height);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.dispose();
+        }
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Lists the image files of a directory, ordered by the number in their names.
+     * @param directory The directory of numbered frames.
+     * @return The ordered frame files.
+     */
+    private static File[] listNumberedFrames(File directory) {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(FrameSequence::getFrameNumber)
+                                     .thenComparing(File::getName));
+        return files;
+    }
+
+    /**
+     * Returns the number in a frame file's name, made of all the digits in the name.
+     * @param frameFile The frame file.
+     * @return The frame number, or 0 if the name has no digits.
+     */
+    private static long getFrameNumber(File frameFile) {
+        String digits = frameFile.getName().replaceAll(NON_DIGITS_REGEX, "");
+        return digits.isEmpty() ? 0 : Long.parseLong(digits);
+    }
+
+    /**
+     * Creates an image reader for the given stream.
+     * @param inputStream The image input stream.
+     * @param path The path of the stream, for error messages.
+     * @return An image reader whose input is the stream.
+     * @throws IOException If no image reader supports the stream.
+     */
+    private static ImageReader openReader(ImageInputStream inputStream, String path) throws IOException {
+        Iterator<ImageReader> readers = (inputStream == null) ? null : ImageIO.getImageReaders(inputStream);
+        if (readers == null || !readers.hasNext()) {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            throw new IOException(String.format(NO_READER_ERROR, path));
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(inputStream, false);
+        return reader;
+    }
+
+    /**
+     * Reads a single frame file, using an image reader.
+     * @param frameFile The frame file.
+     * @return The frame.
+     * @throws IOException If the frame can not be read.
+     */
+    private static BufferedImage readFrameFile(File frameFile) throws IOException {
+        try (ImageInputStream frameStream = ImageIO.createImageInputStream(frameFile)) {
+            ImageReader frameReader = openReader(frameStream, frameFile.getPath());
+            try {
+                return frameReader.read(0);
+            } finally {
+                frameReader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads a frame of the image file and draws it over the previous frames at its position, after disposing
+     * of the area of the previous frame.
+     * @param frameIndex The index of the frame.
+     * @return The full frame.
+     * @throws IOException If the frame can not be read.
+     */
+    private BufferedImage readFrameFromReader(int frameIndex) throws IOException {
+        BufferedImage frame = reader.read(frameIndex);
+        Node frameMetadata = getMetadataTree(reader.getImageMetadata(frameIndex), GIF_METADATA_FORMAT);
+        Node descriptor = findChild(frameMetadata, GIF_IMAGE_DESCRIPTOR);
+        int left = getIntAttribute(descriptor, GIF_LEFT_POSITION);
+        int top = getIntAttribute(descriptor, GIF_TOP_POSITION);
+        if (canvas == null) {
+            canvas = createCanvas(left + frame.getWidth(), top + frame.getHeight());
+        } else {
+            disposePreviousFrame();
+        }
+        Node graphicControl = findChild(frameMetadata, GIF_GRAPHIC_CONTROL_EXTENSION);
+        disposalMethod = (graphicControl == null) ? null :
+                         graphicControl.getAttributes().getNamedItem(GIF_DISPOSAL_METHOD).getNodeValue();
+        disposalArea = new Rectangle(left, top, frame.getWidth(), frame.getHeight())
+                .intersection(new Rectangle(canvas.getWidth(), canvas.getHeight()));
+        if (GIF_RESTORE_TO_PREVIOUS.equals(disposalMethod) && !disposalArea.isEmpty()) {
+            pixelsBeforeFrame = canvas.getRGB(disposalArea.x, disposalArea.y, disposalArea.width,
+                                              disposalArea.height, pixelsBeforeFrame, 0, disposalArea.width);
+        }
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(frame, left, top, null);
+        graphics.dispose();
+        return canvas;
+    }
+
+    /**
+     * Creates the white canvas the frames are drawn on, of the size of the GIF's logical screen.
+     * @param firstFrameRight The right edge of the first frame, used if there is no logical screen size.
+     * @param firstFrameBottom The bottom edge of the first frame, used if there is no logical screen size.
+     * @return The canvas.
+     * @throws IOException If the metadata of the image file can not be read.
+     */
+    private BufferedImage createCanvas(int firstFrameRight, int firstFrameBottom) throws IOException {
+        Node screenDescriptor = findChild(getMetadataTree(reader.getStreamMetadata(), GIF_STREAM_METADATA_FORMAT),
+                                          GIF_LOGICAL_SCREEN_DESCRIPTOR);
+        int width = getIntAttribute(screenDescriptor, GIF_LOGICAL_SCREEN_WIDTH);
+        int height = getIntAttribute(screenDescriptor, GIF_LOGICAL_SCREEN_HEIGHT);
+        if (width <= 0 || height <= 0) { // Not a GIF, or a GIF without a logical screen size.
+            width = Math.max(reader.getWidth(0), firstFrameRight);
+            height = Math.max(reader.getHeight(0), firstFrameBottom);
+        }
+        BufferedImage newCanvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        fillWhite(newCanvas, new Rectangle(width, height));
+        return newCanvas;
+    }
+
+    /**
+     * Disposes of the area of the last drawn frame as its disposal method says.
+     * Frames with no disposal method, or that are not disposed of, stay on the canvas.
+     */
+    private void disposePreviousFrame() {
+        if (disposalArea == null || disposalArea.isEmpty()) {
+            return;
+        }
+        if (GIF_RESTORE_TO_BACKGROUND.equals(disposalMethod)) {
+            fillWhite(canvas, disposalArea);
+        } else if (GIF_RESTORE_TO_PREVIOUS.equals(disposalMethod)) {
+            canvas.setRGB(disposalArea.x, disposalArea.y, disposalArea.width, disposalArea.height,
+                          pixelsBeforeFrame, 0, disposalArea.width);
+        }
+    }
+
+    /**
+     * Fills an area of an image with white.
+     * @param image The image.
+     * @param area The area to fill.
+     */
+    private static void fillWhite(BufferedImage image, Rectangle area) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(area.x, area.y, area.width, area.height);
+        graphics.dispose();
+    }
+
+    /**
+     * Returns the tree of the given metadata in the given format.
+     * @param metadata The metadata.
+     * @param formatName The name of the metadata format.
+     * @return The root of the tree, or <code>null</code> if there is no metadata in the format.
+     */
+    private static Node getMetadataTree(IIOMetadata metadata, String formatName) {
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(formatName)) {
+            return null;
+        }
+        return metadata.getAsTree(formatName);
+    }
+
+    /**
+     * Finds the child of a metadata node with the given name.
+     * @param node The metadata node, or <code>null</code>.
+     * @param name The name of the child.
+     * @return The child, or <code>null</code> if there is none.
+     */
+    private static Node findChild(Node node, String name) {
+        if (node == null) {
+            return null;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an integer attribute of a metadata node.
+     * @param node The metadata node, or <code>null</code>.
+     * @param name The name of the attribute.
+     * @return The value of the attribute, or 0 if there is no node.
+     */
+    private static int getIntAttribute(Node node, String name) {
+        return (node == null) ? 0 : Integer.parseInt(node.getAttributes().getNamedItem(name).getNodeValue());
+    }
+
+}
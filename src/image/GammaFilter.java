@@ -0,0 +1,35 @@
+package image;
+
+/**
+ * A luma filter that applies a gamma curve, where a gamma above 1 brightens the mid-tones
+ * and a gamma below 1 darkens them.
+ */
+public class GammaFilter implements LumaFilter {
+
+    private static final int MAX_GREY_VALUE = NUM_OF_GREY_LEVELS - 1;
+    private static final String INVALID_GAMMA = "Gamma must be positive, got %s.";
+
+    private final double gamma;
+
+    /**
+     * Creates a gamma filter.
+     * @param gamma The gamma value. Must be positive.
+     * @throws IllegalArgumentException If the gamma value is not positive.
+     */
+    public GammaFilter(double gamma) {
+        if (!(gamma > 0) || Double.isInfinite(gamma)) {
+            throw new IllegalArgumentException(String.format(INVALID_GAMMA, gamma));
+        }
+        this.gamma = gamma;
+    }
+
+    @Override
+    public float[] createLookupTable(int[] histogram) {
+        float[] lookupTable = new float[NUM_OF_GREY_LEVELS];
+        for (int level = 0; level < NUM_OF_GREY_LEVELS; level++) {
+            lookupTable[level] = (float) (MAX_GREY_VALUE * Math.pow((double) level / MAX_GREY_VALUE, 1 / gamma));
+        }
+        return lookupTable;
+    }
+
+}
@@ -0,0 +1,21 @@
+package image;
+
+/**
+ * Converts runs of packed RGB pixels to their grey values, with the factors of
+ * {@link SubImageHandler#toGrey(int)}.
+ * <p>Every implementation must give bit-identical grey values, so the brightness values do not depend on the
+ * converter that computed them.</p>
+ */
+@FunctionalInterface
+interface GreyRowConverter {
+
+    /**
+     * Converts a run of packed RGB pixels to their grey values, in the range [0, 255].
+     * @param rgbPixels The packed RGB pixels.
+     * @param offset The index of the first pixel to convert.
+     * @param grey The array to write the grey values to, starting at index 0.
+     * @param length The number of pixels to convert.
+     */
+    void convert(int[] rgbPixels, int offset, float[] grey, int length);
+
+}
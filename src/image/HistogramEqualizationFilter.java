@@ -0,0 +1,50 @@
+package image;
+
+/**
+ * A luma filter that equalizes the histogram of the image, spreading its grey levels evenly
+ * over the whole range.
+ */
+public class HistogramEqualizationFilter implements LumaFilter {
+
+    private static final int MAX_GREY_VALUE = NUM_OF_GREY_LEVELS - 1;
+
+    /**
+     * An empty constructor.
+     */
+    public HistogramEqualizationFilter() {
+    }
+
+    @Override
+    public float[] createLookupTable(int[] histogram) {
+        long totalPixels = 0;
+        long firstLevelPixels = 0;
+        for (int count : histogram) {
+            if (totalPixels == 0) {
+                firstLevelPixels = count;
+            }
+            totalPixels += count;
+        }
+        float[] lookupTable = new float[NUM_OF_GREY_LEVELS];
+        if (totalPixels == firstLevelPixels) { // A single grey level, which can not be spread.
+            for (int level = 0; level < NUM_OF_GREY_LEVELS; level++) {
+                lookupTable[level] = level;
+            }
+            return lookupTable;
+        }
+        // Map each level by its cumulative distribution, so the darkest level in the image becomes black.
+        long cumulativePixels = 0;
+        for (int level = 0; level < NUM_OF_GREY_LEVELS; level++) {
+            cumulativePixels += histogram[level];
+            double fraction = (double) Math.max(0, cumulativePixels - firstLevelPixels) /
+                              (totalPixels - firstLevelPixels);
+            lookupTable[level] = (float) (fraction * MAX_GREY_VALUE);
+        }
+        return lookupTable;
+    }
+
+    @Override
+    public boolean usesHistogram() {
+        return true;
+    }
+
+}
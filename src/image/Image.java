@@ -1,10 +1,14 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
@@ -12,7 +16,26 @@ import java.io.IOException;
  */
 public class Image {
 
-    private final Color[][] pixelArray;
+    private static final int MAX_RGB_VALUE = 255;
+    private static final int MAX_LUMA_16_VALUE = 0xFFFF;
+    static final float LUMA_16_PER_GREY_LEVEL = (float) MAX_LUMA_16_VALUE / MAX_RGB_VALUE;
+    private static final int LUMA_8_MASK = 0xFF;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    // The number of pixels decoded at a time.
+    private static final int MAX_STRIP_PIXELS = 1 << 22;
+    private static final int MAX_ARRAY_PIXELS = Integer.MAX_VALUE - 8;
+    private static final String UNREADABLE_FILE = "Can't read input file!";
+    private static final String TOO_LARGE_FOR_ARRAY = "An image of %dx%d pixels is too large for a pixel array.";
+
+    /*
+     The pixels are stored row by row, either as packed RGB values, which is far more compact than Color
+     objects, or as grey values only. Exactly one of the pixel arrays or the off-heap pixels is not null.
+     */
+    private final int[] rgbPixels;
+    private final byte[] luma8Pixels;
+    private final short[] luma16Pixels;
+    private final MappedPixelPlane mappedPixels;
     private final int width;
     private final int height;
 
@@ -22,14 +45,81 @@ public class Image {
      * @throws IOException If an I/O error occurs.
      */
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
-        width = im.getWidth();
-        height = im.getHeight();
+        this(filename, PixelFormat.RGB);
+    }
 
-        pixelArray = new Color[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+    /**
+     * Constructs an Image object from a given file, storing its pixels in the given format.
+     * <p>The image is decoded a strip of rows at a time, so besides its pixels only a strip of decoded pixels
+     * is in memory. Grey formats convert each row with the same factors as the brightness computations, so
+     * no full-size RGB array is ever created.</p>
+     * @param filename The name of the file to construct the image from.
+     * @param pixelFormat The format to store the pixels in.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Image(String filename, PixelFormat pixelFormat) throws IOException {
+        this(filename, pixelFormat, false);
+    }
+
+    /**
+     * Constructs an Image object from a given file, storing its pixels in the given format, on or off the heap.
+     * <p>Off-heap images are decoded in strips of rows into a memory-mapped temporary file, so neither the
+     * decoded image nor its pixels have to fit in the heap. Their brightness values are computed from the
+     * mapped pixels, but their colors and the fixed-point and delta computations still expand them to an
+     * array of packed RGB values.</p>
+     * @param filename The name of the file to construct the image from.
+     * @param pixelFormat The format to store the pixels in.
+     * @param offHeap Whether to store the pixels in a memory-mapped file instead of an array.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Image(String filename, PixelFormat pixelFormat, boolean offHeap) throws IOException {
+        if (offHeap) {
+            mappedPixels = decodeToMappedPixels(filename, pixelFormat);
+            width = mappedPixels.getWidth();
+            height = mappedPixels.getHeight();
+            rgbPixels = null;
+            luma8Pixels = null;
+            luma16Pixels = null;
+            return;
+        }
+        mappedPixels = null;
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input);
+            try {
+                reader.setInput(input);
+                int imageWidth = reader.getWidth(0);
+                int imageHeight = reader.getHeight(0);
+                if ((long) imageWidth * imageHeight > MAX_ARRAY_PIXELS) {
+                    throw new IOException(String.format(TOO_LARGE_FOR_ARRAY, imageWidth, imageHeight));
+                }
+                int numPixels = imageWidth * imageHeight;
+                int[] rgbValues = (pixelFormat == PixelFormat.RGB) ? new int[numPixels] : null;
+                byte[] luma8Values = (pixelFormat == PixelFormat.LUMA_8) ? new byte[numPixels] : null;
+                short[] luma16Values = (pixelFormat == PixelFormat.LUMA_16) ? new short[numPixels] : null;
+                float[] greyRow = new float[imageWidth];
+                int[] greyLevels = new int[imageWidth];
+                decodeRows(reader, imageWidth, imageHeight, (row, rgbRow) -> {
+                    int offset = row * imageWidth;
+                    if (rgbValues != null) {
+                        System.arraycopy(rgbRow, 0, rgbValues, offset, imageWidth);
+                        return;
+                    }
+                    toGreyLevels(rgbRow, pixelFormat, greyRow, greyLevels);
+                    for (int col = 0; col < imageWidth; col++) {
+                        if (luma8Values != null) {
+                            luma8Values[offset + col] = (byte) greyLevels[col];
+                        } else {
+                            luma16Values[offset + col] = (short) greyLevels[col];
+                        }
+                    }
+                });
+                width = imageWidth;
+                height = imageHeight;
+                rgbPixels = rgbValues;
+                luma8Pixels = luma8Values;
+                luma16Pixels = luma16Values;
+            } finally {
+                reader.dispose();
             }
         }
     }
@@ -41,11 +131,197 @@ public class Image {
      * @param height The height of the image.
      */
     public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+        this.rgbPixels = new int[height * width];
+        this.luma8Pixels = null;
+        this.luma16Pixels = null;
+        this.mappedPixels = null;
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                rgbPixels[i * width + j] = pixelArray[i][j].getRGB();
+            }
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Constructs an Image object from a given packed RGB pixel array, without copying it.
+     * @param rgbPixels The packed RGB values of the pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     */
+    Image(int[] rgbPixels, int width, int height) {
+        this.rgbPixels = rgbPixels;
+        this.luma8Pixels = null;
+        this.luma16Pixels = null;
+        this.mappedPixels = null;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Constructs an Image object from a given 8-bit grey pixel array, without copying it.
+     * @param luma8Pixels The grey values of the pixels, row by row.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     */
+    Image(byte[] luma8Pixels, int width, int height) {
+        this.rgbPixels = null;
+        this.luma8Pixels = luma8Pixels;
+        this.luma16Pixels = null;
+        this.mappedPixels = null;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Constructs an Image object from a given 16-bit grey pixel array, without copying it.
+     * @param luma16Pixels The grey values of the pixels, row by row, where 65535 is white.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     */
+    Image(short[] luma16Pixels, int width, int height) {
+        this.rgbPixels = null;
+        this.luma8Pixels = null;
+        this.luma16Pixels = luma16Pixels;
+        this.mappedPixels = null;
         this.width = width;
         this.height = height;
     }
 
+    /**
+     * Constructs an Image object from given off-heap pixels, without copying them.
+     * @param mappedPixels The off-heap pixels.
+     */
+    Image(MappedPixelPlane mappedPixels) {
+        this.rgbPixels = null;
+        this.luma8Pixels = null;
+        this.luma16Pixels = null;
+        this.mappedPixels = mappedPixels;
+        this.width = mappedPixels.getWidth();
+        this.height = mappedPixels.getHeight();
+    }
+
+    /**
+     * Reads the dimensions of the image in a given file, without decoding its pixels.
+     * @param filename The name of the image file.
+     * @return The width and height of the image.
+     * @throws IOException If the file can not be read as an image.
+     */
+    public static Dimension readDimensions(String filename) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input);
+            try {
+                reader.setInput(input);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the image in a given file into off-heap pixels, a strip of rows at a time.
+     * @param filename The name of the image file.
+     * @param pixelFormat The format to store the pixels in.
+     * @return The off-heap pixels.
+     * @throws IOException If the file can not be read as an image, or the pixels can not be mapped.
+     */
+    private static MappedPixelPlane decodeToMappedPixels(String filename, PixelFormat pixelFormat)
+            throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = getReader(input);
+            try {
+                reader.setInput(input);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                MappedPixelPlane mappedPixels = MappedPixelPlane.createTemporary(pixelFormat, width, height);
+                float[] greyRow = new float[width];
+                int[] greyLevels = new int[width];
+                decodeRows(reader, width, height, (row, rgbRow) -> {
+                    if (pixelFormat == PixelFormat.RGB) {
+                        mappedPixels.writeRgbRow(row, rgbRow);
+                        return;
+                    }
+                    toGreyLevels(rgbRow, pixelFormat, greyRow, greyLevels);
+                    mappedPixels.writeGreyRow(row, greyLevels);
+                });
+                return mappedPixels;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Receives the decoded rows of an image, one at a time and in order.
+     */
+    @FunctionalInterface
+    private interface RowConsumer {
+
+        /**
+         * Receives a decoded row.
+         * @param row The index of the row.
+         * @param rgbRow The packed RGB values of the row. The array is reused for the next row.
+         */
+        void accept(int row, int[] rgbRow);
+    }
+
+    /**
+     * Decodes the first image of a reader a strip of rows at a time, through source regions of the reader.
+     * <p>Only the rows of the current strip are decoded, but readers that can not seek to a row
+     * still scan the file up to it.</p>
+     * @param reader The reader, whose input is set.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param rowConsumer The consumer of the decoded rows.
+     * @throws IOException If the image can not be decoded.
+     */
+    private static void decodeRows(ImageReader reader, int width, int height, RowConsumer rowConsumer)
+            throws IOException {
+        int stripHeight = Math.max(1, MAX_STRIP_PIXELS / width);
+        ImageReadParam readParam = reader.getDefaultReadParam();
+        int[] rgbRow = new int[width];
+        for (int top = 0; top < height; top += stripHeight) {
+            int stripRows = Math.min(stripHeight, height - top);
+            readParam.setSourceRegion(new Rectangle(0, top, width, stripRows));
+            BufferedImage strip = reader.read(0, readParam);
+            for (int row = 0; row < stripRows; row++) {
+                strip.getRGB(0, row, width, 1, rgbRow, 0, width);
+                rowConsumer.accept(top + row, rgbRow);
+            }
+        }
+    }
+
+    /**
+     * Converts a row of packed RGB values to the grey levels of a grey pixel format.
+     * @param rgbRow The packed RGB values.
+     * @param pixelFormat The grey pixel format.
+     * @param greyRow An array of the row's width for the grey values.
+     * @param greyLevels The array to write the grey levels to, in the range of the pixel format.
+     */
+    private static void toGreyLevels(int[] rgbRow, PixelFormat pixelFormat, float[] greyRow, int[] greyLevels) {
+        SubImageHandler.convertRowToGrey(rgbRow, 0, greyRow, rgbRow.length);
+        for (int col = 0; col < rgbRow.length; col++) {
+            greyLevels[col] = (pixelFormat == PixelFormat.LUMA_8) ? Math.round(greyRow[col]) :
+                              Math.round(greyRow[col] * LUMA_16_PER_GREY_LEVEL);
+        }
+    }
+
+    /**
+     * Returns a reader for the image in a given stream.
+     * @param input The image stream, or <code>null</code> if it could not be opened.
+     * @return The image reader.
+     * @throws IOException If no reader can decode the stream.
+     */
+    private static ImageReader getReader(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = (input == null) ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException(UNREADABLE_FILE);
+        }
+        return readers.next();
+    }
+
     /**
      * Returns the width of the image.
      * @return The width of the image.
@@ -69,7 +345,157 @@ public class Image {
      * @return The pixel at the given coordinates.
      */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRgb(x, y));
+    }
+
+    /**
+     * Returns the packed RGB value of a single pixel, in any pixel format, without expanding the image.
+     * @param row The pixel's row.
+     * @param col The pixel's column.
+     * @return The packed RGB value.
+     */
+    int getRgb(int row, int col) {
+        if (mappedPixels != null) {
+            return getMappedRgb(row, col);
+        }
+        int index = row * width + col;
+        return (rgbPixels != null) ? rgbPixels[index] : toGreyRgb(getGreyLevel(index));
+    }
+
+    /**
+     * Returns the format the pixels are stored in.
+     * @return The pixel format.
+     */
+    public PixelFormat getPixelFormat() {
+        if (mappedPixels != null) {
+            return mappedPixels.getPixelFormat();
+        }
+        if (rgbPixels != null) {
+            return PixelFormat.RGB;
+        }
+        return (luma8Pixels != null) ? PixelFormat.LUMA_8 : PixelFormat.LUMA_16;
+    }
+
+    /**
+     * Returns the packed RGB values of all the pixels, row by row.
+     * The array of an RGB image is shared with the image and must not be modified.
+     * For grey and off-heap images, a new array of RGB values is created on every call.
+     * @return The packed RGB pixel array.
+     * @throws UnsupportedOperationException If the image is off-heap and too large for an array.
+     */
+    int[] getRgbPixels() {
+        if (rgbPixels != null) {
+            return rgbPixels;
+        }
+        if (mappedPixels != null) {
+            if ((long) width * height > MAX_ARRAY_PIXELS) {
+                throw new UnsupportedOperationException(String.format(TOO_LARGE_FOR_ARRAY, width, height));
+            }
+            int[] expandedPixels = new int[width * height];
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    expandedPixels[row * width + col] = getMappedRgb(row, col);
+                }
+            }
+            return expandedPixels;
+        }
+        int[] greyRgbPixels = new int[width * height];
+        for (int i = 0; i < greyRgbPixels.length; i++) {
+            greyRgbPixels[i] = toGreyRgb(getGreyLevel(i));
+        }
+        return greyRgbPixels;
+    }
+
+    /**
+     * Returns the 8-bit grey values of all the pixels, row by row, if the image is stored in that format.
+     * The returned array is shared with the image and must not be modified.
+     * @return The grey pixel array, or <code>null</code> if the image is stored in another format.
+     */
+    byte[] getLuma8Pixels() {
+        return luma8Pixels;
+    }
+
+    /**
+     * Returns the 16-bit grey values of all the pixels, row by row, if the image is stored in that format.
+     * The returned array is shared with the image and must not be modified.
+     * @return The grey pixel array, or <code>null</code> if the image is stored in another format.
+     */
+    short[] getLuma16Pixels() {
+        return luma16Pixels;
+    }
+
+    /**
+     * Returns the off-heap pixels, if the image is stored off the heap.
+     * @return The off-heap pixels, or <code>null</code> if the image is stored in an array.
+     */
+    MappedPixelPlane getMappedPixels() {
+        return mappedPixels;
+    }
+
+    /**
+     * Reads the grey values of a run of pixels, in the range [0, 255], in any pixel format.
+     * For RGB images, the grey values are identical to those of the brightness computations.
+     * @param row The row of the pixels.
+     * @param col The column of the first pixel to read.
+     * @param grey The array to write the grey values to, starting at index 0.
+     * @param length The number of pixels to read.
+     */
+    void readGreyRow(int row, int col, float[] grey, int length) {
+        if (mappedPixels != null) {
+            mappedPixels.readGreyRow(row, col, grey, length);
+            return;
+        }
+        int offset = row * width + col;
+        if (rgbPixels != null) {
+            SubImageHandler.convertRowToGrey(rgbPixels, offset, grey, length);
+        } else if (luma8Pixels != null) {
+            for (int i = 0; i < length; i++) {
+                grey[i] = luma8Pixels[offset + i] & LUMA_8_MASK;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                grey[i] = (luma16Pixels[offset + i] & MAX_LUMA_16_VALUE) / LUMA_16_PER_GREY_LEVEL;
+            }
+        }
+    }
+
+    /**
+     * Returns the 8-bit grey level of a pixel of a grey image.
+     * @param index The index of the pixel.
+     * @return The grey level, in the range [0, 255].
+     */
+    private int getGreyLevel(int index) {
+        if (luma8Pixels != null) {
+            return luma8Pixels[index] & LUMA_8_MASK;
+        }
+        return Math.round((luma16Pixels[index] & MAX_LUMA_16_VALUE) / LUMA_16_PER_GREY_LEVEL);
+    }
+
+    /**
+     * Returns the packed RGB value of a pixel of an off-heap image.
+     * @param row The pixel's row.
+     * @param col The pixel's column.
+     * @return The packed RGB value.
+     */
+    private int getMappedRgb(int row, int col) {
+        int value = mappedPixels.getValue(row, col);
+        switch (mappedPixels.getPixelFormat()) {
+            case LUMA_8:
+                return toGreyRgb(value);
+            case LUMA_16:
+                return toGreyRgb(Math.round(value / LUMA_16_PER_GREY_LEVEL));
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Returns the packed RGB value of a grey level.
+     * @param greyLevel The grey level, in the range [0, 255].
+     * @return The packed RGB value.
+     */
+    private static int toGreyRgb(int greyLevel) {
+        return (greyLevel << RED_SHIFT) | (greyLevel << GREEN_SHIFT) | greyLevel;
     }
 
     /**
@@ -77,15 +503,9 @@ public class Image {
      * @param fileName The name of the file to save the image to.
      */
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        // Initialize BufferedImage and set all of its pixels from the packed RGB array.
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, width, height, getRgbPixels(), 0, width);
         File outputfile = new File(fileName+".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
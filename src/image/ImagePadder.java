@@ -3,6 +3,9 @@ package image;
 import utils.MathUtils;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
 /**
  * A utility class responsible for padding a given image such that its dimensions will be powers of 2.
@@ -10,6 +13,9 @@ import java.awt.*;
 public final class ImagePadder {
 
     private static final int TWO_TO_THE_POWER_OF_1 = 2;
+    private static final int WHITE_RGB = Color.WHITE.getRGB();
+    private static final byte WHITE_LUMA_8 = (byte) 0xFF;
+    private static final short WHITE_LUMA_16 = (short) 0xFFFF;
 
     /**
      * A private constructor to prevent instantiation of this class.
@@ -20,6 +26,7 @@ public final class ImagePadder {
      * Pads the given image with white pixels such that its dimensions will be powers of 2.
      * @param image The image to pad.
      * @return The padded image.
+     * @throws UncheckedIOException If the image is stored off the heap, and the padded pixels can not be mapped.
      */
     public static Image padImage(Image image) {
         int imageHeight = image.getHeight();
@@ -33,27 +40,82 @@ public final class ImagePadder {
             return image;
         }
 
-        Color[][] paddedImage = new Color[heightAfterPadding][widthAfterPadding];
-        for (int i = 0; i < heightAfterPadding; i++) {
-            for (int j = 0; j < widthAfterPadding; j++) {
-                // If the current pixel is outside the original image, set it to white.
-                if (i < heightDiff / TWO_TO_THE_POWER_OF_1) {
-                    paddedImage[i][j] = Color.WHITE;
-                } else if (j < widthDiff / TWO_TO_THE_POWER_OF_1) {
-                    paddedImage[i][j] = Color.WHITE;
-                } else if (i >= imageHeight + (heightDiff / TWO_TO_THE_POWER_OF_1)){
-                    paddedImage[i][j] = Color.WHITE;
-                } else if (j >= imageWidth + (widthDiff / TWO_TO_THE_POWER_OF_1)) {
-                        paddedImage[i][j] = Color.WHITE;
-                } else {
-                    paddedImage[i][j] = image.getPixel(
-                            i - (heightDiff / TWO_TO_THE_POWER_OF_1), j - (widthDiff / TWO_TO_THE_POWER_OF_1)
-                    );
-                }
-            }
-        }
-
-        return new Image(paddedImage, widthAfterPadding, heightAfterPadding);
+        int topPadding = heightDiff / TWO_TO_THE_POWER_OF_1;
+        int leftPadding = widthDiff / TWO_TO_THE_POWER_OF_1;
+        if (image.getMappedPixels() != null) {
+            return padMappedImage(image, widthAfterPadding, heightAfterPadding, topPadding, leftPadding);
+        }
+        // Grey images are padded in their own format, so they are never expanded to RGB.
+        if (image.getPixelFormat() == PixelFormat.LUMA_8) {
+            byte[] paddedPixels = new byte[heightAfterPadding * widthAfterPadding];
+            Arrays.fill(paddedPixels, WHITE_LUMA_8);
+            copyRows(image.getLuma8Pixels(), paddedPixels, imageWidth, imageHeight, widthAfterPadding,
+                     topPadding, leftPadding);
+            return new Image(paddedPixels, widthAfterPadding, heightAfterPadding);
+        }
+        if (image.getPixelFormat() == PixelFormat.LUMA_16) {
+            short[] paddedPixels = new short[heightAfterPadding * widthAfterPadding];
+            Arrays.fill(paddedPixels, WHITE_LUMA_16);
+            copyRows(image.getLuma16Pixels(), paddedPixels, imageWidth, imageHeight, widthAfterPadding,
+                     topPadding, leftPadding);
+            return new Image(paddedPixels, widthAfterPadding, heightAfterPadding);
+        }
+        int[] paddedPixels = new int[heightAfterPadding * widthAfterPadding];
+        // Fill the whole image with white pixels, and then copy the original image rows into its center.
+        Arrays.fill(paddedPixels, WHITE_RGB);
+        copyRows(image.getRgbPixels(), paddedPixels, imageWidth, imageHeight, widthAfterPadding,
+                 topPadding, leftPadding);
+        return new Image(paddedPixels, widthAfterPadding, heightAfterPadding);
+    }
+
+    /**
+     * Pads an off-heap image into new off-heap pixels of the same format.
+     * @param image The off-heap image to pad.
+     * @param widthAfterPadding The width of the padded image.
+     * @param heightAfterPadding The height of the padded image.
+     * @param topPadding The number of padding rows above the image.
+     * @param leftPadding The number of padding columns left of the image.
+     * @return The padded image.
+     * @throws UncheckedIOException If the padded pixels can not be mapped.
+     */
+    private static Image padMappedImage(Image image, int widthAfterPadding, int heightAfterPadding,
+                                        int topPadding, int leftPadding) {
+        PixelFormat pixelFormat = image.getPixelFormat();
+        MappedPixelPlane paddedPixels;
+        try {
+            paddedPixels = MappedPixelPlane.createTemporary(pixelFormat, widthAfterPadding, heightAfterPadding);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (pixelFormat == PixelFormat.LUMA_8) {
+            paddedPixels.fill(WHITE_LUMA_8);
+        } else if (pixelFormat == PixelFormat.LUMA_16) {
+            paddedPixels.fill(WHITE_LUMA_16);
+        } else {
+            paddedPixels.fill(WHITE_RGB);
+        }
+        for (int i = 0; i < image.getHeight(); i++) {
+            paddedPixels.copyRow(image.getMappedPixels(), i, i + topPadding, leftPadding);
+        }
+        return new Image(paddedPixels);
+    }
+
+    /**
+     * Copies the rows of an image into a larger pixel array of any primitive type.
+     * @param originalPixels The pixels of the image.
+     * @param paddedPixels The pixels of the padded image.
+     * @param imageWidth The width of the image.
+     * @param imageHeight The height of the image.
+     * @param widthAfterPadding The width of the padded image.
+     * @param topPadding The number of padding rows above the image.
+     * @param leftPadding The number of padding columns left of the image.
+     */
+    private static void copyRows(Object originalPixels, Object paddedPixels, int imageWidth, int imageHeight,
+                                 int widthAfterPadding, int topPadding, int leftPadding) {
+        for (int i = 0; i < imageHeight; i++) {
+            System.arraycopy(originalPixels, i * imageWidth,
+                    paddedPixels, (i + topPadding) * widthAfterPadding + leftPadding, imageWidth);
+        }
     }
 
 }
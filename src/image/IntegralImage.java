@@ -0,0 +1,273 @@
+package image;
+
+/**
+ * An integral image (summed-area table) of an unpadded image, for grids of any number of rows and columns.
+ * <p>Each entry holds the sum of the grey values of all the pixels above and to the left of it, so the sum
+ * of any rectangle takes four lookups. Since the pixels are constant within their area, the sums between
+ * the entries are interpolated bilinearly, which gives the exact area-weighted sum of tiles whose
+ * boundaries fall inside pixels.</p>
+ * <p>The sums of the color channels are only computed when the colors of a grid are first requested.</p>
+ * <p>Every entry is a <code>double</code> on the heap, so an integral image takes 8 bytes per pixel, and 24
+ * more once colors are requested. The entries of each table are a single array, so images of more than
+ * about 2^31 pixels are not supported.</p>
+ */
+public class IntegralImage {
+
+    private static final int MAX_RGB_VALUE = 255;
+    private static final int NUM_OF_CHANNELS = 3;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int BITS_PER_CHANNEL = 8;
+    private static final String INVALID_GRID = "A grid of %dx%d tiles is invalid.";
+    private static final String TOO_LARGE = "An image of %dx%d pixels is too large for an integral image.";
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final Image image;
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final double[] greySums;
+    private double[][] channelSums;
+
+    /**
+     * Creates the integral image of the grey values of the given image.
+     * @param image The image. It is not padded.
+     * @throws UnsupportedOperationException If the image is too large for an integral image.
+     */
+    public IntegralImage(Image image) {
+        this(image, null);
+    }
+
+    /**
+     * Creates the integral image of the grey values of the given image, after mapping them through
+     * a lookup table in the same pass.
+     * @param image The image. It is not padded.
+     * @param greyLookupTable The grey value of each grey level, or <code>null</code> to skip filtering.
+     *                        The colors are not filtered.
+     * @throws UnsupportedOperationException If the image is too large for an integral image.
+     */
+    public IntegralImage(Image image, float[] greyLookupTable) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.stride = width + 1;
+        if ((long) (height + 1) * stride > MAX_ARRAY_LENGTH) {
+            throw new UnsupportedOperationException(String.format(TOO_LARGE, width, height));
+        }
+        this.greySums = new double[(height + 1) * stride];
+        float[] greyRow = new float[width];
+        for (int row = 0; row < height; row++) {
+            image.readGreyRow(row, 0, greyRow, width);
+            if (greyLookupTable != null) {
+                SubImageHandler.applyLookupTable(greyRow, width, greyLookupTable);
+            }
+            double rowSum = 0;
+            int above = row * stride + 1;
+            int current = above + stride;
+            for (int col = 0; col < width; col++) {
+                rowSum += greyRow[col];
+                greySums[current + col] = greySums[above + col] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tile rows that keeps the tiles closest to the given aspect ratio.
+     * @param numCols The number of tiles in a row.
+     * @param tileAspectRatio The height of a tile divided by its width.
+     * @return The number of tile rows, at least one.
+     */
+    public int getNumRows(int numCols, double tileAspectRatio) {
+        double tileHeight = (double) width / numCols * tileAspectRatio;
+        return Math.max(1, (int) Math.round(height / tileHeight));
+    }
+
+    /**
+     * Returns the normalized brightness of each tile of a grid that covers the whole image.
+     * @param numRows The number of tile rows.
+     * @param numCols The number of tiles in a row.
+     * @return A grid of the normalized brightness values of the tiles, leased from the pool.
+     * @throws IllegalArgumentException If the grid dimensions are not positive.
+     */
+    public BrightnessGrid getBrightnessGrid(int numRows, int numCols) {
+        return getBrightnessGrid(numRows, numCols, BrightnessPrecision.DOUBLE);
+    }
+
+    /**
+     * Returns the normalized brightness of each tile of a grid that covers the whole image, stored in the
+     * given precision as each value is computed.
+     * @param numRows The number of tile rows.
+     * @param numCols The number of tiles in a row.
+     * @param precision The precision to store the values in. A narrower grid keeps
+     *                  {@link #getBrightnessSource(int, int)} as the source of its values.
+     * @return A grid of the normalized brightness values of the tiles, leased from the pool.
+     * @throws IllegalArgumentException If the grid dimensions are not positive.
+     */
+    public BrightnessGrid getBrightnessGrid(int numRows, int numCols, BrightnessPrecision precision) {
+        BrightnessSource tileBrightness = getBrightnessSource(numRows, numCols);
+        BrightnessGrid brightnessGrid = BrightnessGrid.lease(numRows, numCols, precision, tileBrightness);
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                brightnessGrid.set(row, col, tileBrightness.getBrightness(row, col));
+            }
+        }
+        return brightnessGrid;
+    }
+
+    /**
+     * Returns the source of the brightness values of {@link #getBrightnessGrid(int, int)}, which computes
+     * the value of a single tile in four lookups.
+     * @param numRows The number of tile rows.
+     * @param numCols The number of tiles in a row.
+     * @return The source of the brightness values of the tiles.
+     * @throws IllegalArgumentException If the grid dimensions are not positive.
+     */
+    public BrightnessSource getBrightnessSource(int numRows, int numCols) {
+        checkGridDimensions(numRows, numCols);
+        int[] rowIndices = new int[numRows + 1];
+        double[] rowFractions = new double[numRows + 1];
+        int[] colIndices = new int[numCols + 1];
+        double[] colFractions = new double[numCols + 1];
+        splitBoundaries(height, numRows, rowIndices, rowFractions);
+        splitBoundaries(width, numCols, colIndices, colFractions);
+        double tileArea = (double) width * height / ((double) numRows * numCols);
+        return (row, col) -> sumTile(greySums, rowIndices, rowFractions, colIndices, colFractions, row, col) /
+                             tileArea / MAX_RGB_VALUE;
+    }
+
+    /**
+     * Returns the mean color of each tile of a grid that covers the whole image.
+     * @param numRows The number of tile rows.
+     * @param numCols The number of tiles in a row.
+     * @return A 2D array of the mean colors of the tiles, as packed RGB values.
+     * @throws IllegalArgumentException If the grid dimensions are not positive.
+     */
+    public int[][] getColorGrid(int numRows, int numCols) {
+        checkGridDimensions(numRows, numCols);
+        if (channelSums == null) {
+            channelSums = computeChannelSums();
+        }
+        int[] rowIndices = new int[numRows + 1];
+        double[] rowFractions = new double[numRows + 1];
+        int[] colIndices = new int[numCols + 1];
+        double[] colFractions = new double[numCols + 1];
+        splitBoundaries(height, numRows, rowIndices, rowFractions);
+        splitBoundaries(width, numCols, colIndices, colFractions);
+        double tileArea = (double) width * height / ((double) numRows * numCols);
+
+        int[][] colorGrid = new int[numRows][numCols];
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                int color = 0;
+                for (int channel = 0; channel < NUM_OF_CHANNELS; channel++) {
+                    double sum = sumTile(channelSums[channel], rowIndices, rowFractions, colIndices,
+                                         colFractions, row, col);
+                    int mean = Math.min(MAX_RGB_VALUE, (int) Math.round(sum / tileArea));
+                    color = (color << BITS_PER_CHANNEL) | mean;
+                }
+                colorGrid[row][col] = color;
+            }
+        }
+        return colorGrid;
+    }
+
+    /**
+     * Computes the integral images of the red, green and blue channels.
+     * @return The integral image of each channel.
+     */
+    private double[][] computeChannelSums() {
+        double[][] sums = new double[NUM_OF_CHANNELS][(height + 1) * stride];
+        int[] rgbPixels = image.getRgbPixels();
+        int[] shifts = {RED_SHIFT, GREEN_SHIFT, 0};
+        for (int channel = 0; channel < NUM_OF_CHANNELS; channel++) {
+            double[] channelSum = sums[channel];
+            int shift = shifts[channel];
+            for (int row = 0; row < height; row++) {
+                double rowSum = 0;
+                int above = row * stride + 1;
+                int current = above + stride;
+                int offset = row * width;
+                for (int col = 0; col < width; col++) {
+                    rowSum += (rgbPixels[offset + col] >> shift) & CHANNEL_MASK;
+                    channelSum[current + col] = channelSum[above + col] + rowSum;
+                }
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Sums the values of a single tile, weighting the pixels it partly covers by the covered area.
+     * @param sums The integral image to sum.
+     * @param rowIndices The pixel row of each tile row boundary.
+     * @param rowFractions The fraction of the pixel row at each tile row boundary.
+     * @param colIndices The pixel column of each tile column boundary.
+     * @param colFractions The fraction of the pixel column at each tile column boundary.
+     * @param row The tile's row.
+     * @param col The tile's column.
+     * @return The area-weighted sum of the tile.
+     */
+    private double sumTile(double[] sums, int[] rowIndices, double[] rowFractions,
+                           int[] colIndices, double[] colFractions, int row, int col) {
+        return integralAt(sums, rowIndices[row + 1], rowFractions[row + 1], colIndices[col + 1],
+                          colFractions[col + 1]) -
+               integralAt(sums, rowIndices[row], rowFractions[row], colIndices[col + 1], colFractions[col + 1]) -
+               integralAt(sums, rowIndices[row + 1], rowFractions[row + 1], colIndices[col], colFractions[col]) +
+               integralAt(sums, rowIndices[row], rowFractions[row], colIndices[col], colFractions[col]);
+    }
+
+    /**
+     * Returns the integral at a point that may fall inside a pixel, by interpolating between the entries.
+     * @param sums The integral image.
+     * @param row The pixel row of the point.
+     * @param rowFraction The fraction of the pixel row above the point.
+     * @param col The pixel column of the point.
+     * @param colFraction The fraction of the pixel column left of the point.
+     * @return The sum of the values above and to the left of the point.
+     */
+    private double integralAt(double[] sums, int row, double rowFraction, int col, double colFraction) {
+        int top = row * stride + col;
+        double value = sums[top];
+        if (colFraction > 0) {
+            value += colFraction * (sums[top + 1] - sums[top]);
+        }
+        if (rowFraction > 0) { // Only read the next row when the point is inside it, since it may not exist.
+            int bottom = top + stride;
+            double bottomValue = sums[bottom];
+            if (colFraction > 0) {
+                bottomValue += colFraction * (sums[bottom + 1] - sums[bottom]);
+            }
+            value += rowFraction * (bottomValue - value);
+        }
+        return value;
+    }
+
+    /**
+     * Splits a length into equal parts, and finds the pixel and the fraction of it at each boundary.
+     * @param length The length in pixels.
+     * @param numParts The number of parts.
+     * @param indices The array to write the pixel of each of the <code>numParts + 1</code> boundaries to.
+     * @param fractions The array to write the fraction of the pixel before each boundary to.
+     */
+    private static void splitBoundaries(int length, int numParts, int[] indices, double[] fractions) {
+        for (int boundary = 0; boundary <= numParts; boundary++) {
+            long position = (long) boundary * length;
+            indices[boundary] = (int) (position / numParts);
+            fractions[boundary] = (double) (position % numParts) / numParts;
+        }
+    }
+
+    /**
+     * Checks that the grid dimensions are positive.
+     * @param numRows The number of tile rows.
+     * @param numCols The number of tiles in a row.
+     * @throws IllegalArgumentException If the grid dimensions are not positive.
+     */
+    private static void checkGridDimensions(int numRows, int numCols) {
+        if (numRows <= 0 || numCols <= 0) {
+            throw new IllegalArgumentException(String.format(INVALID_GRID, numRows, numCols));
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package image;
+
+/**
+ * A filter of the grey values of an image, applied before the image is divided into sub-images.
+ * <p>A filter maps each of the {@link #NUM_OF_GREY_LEVELS} grey levels to a new grey value, so a chain
+ * of filters is folded into a single lookup table that is applied while the brightness values are summed,
+ * without another pass over the image.</p>
+ */
+public interface LumaFilter {
+
+    /**
+     * The number of grey levels a filter maps, from black (0) to white (255).
+     */
+    int NUM_OF_GREY_LEVELS = 256;
+
+    /**
+     * Creates the lookup table of the filter.
+     * @param histogram The number of pixels of each grey level, after all the previous filters.
+     *                  Only filled if {@link #usesHistogram()} returns <code>true</code>.
+     * @return An array of {@link #NUM_OF_GREY_LEVELS} grey values in the range [0, 255],
+     * one for each grey level.
+     */
+    float[] createLookupTable(int[] histogram);
+
+    /**
+     * Returns whether the filter depends on the histogram of the image.
+     * @return <code>true</code> if the filter needs the histogram, <code>false</code> otherwise.
+     */
+    default boolean usesHistogram() {
+        return false;
+    }
+
+}
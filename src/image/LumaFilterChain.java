@@ -0,0 +1,125 @@
+package image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered chain of luma filters, folded into a single grey lookup table per image.
+ * <p>The histogram of the image is computed in a single pass, and only if one of the filters uses it.
+ * Each filter then receives the histogram of the grey levels after all the filters before it,
+ * so the chain behaves as if each filter was applied to the whole image in turn.</p>
+ */
+public class LumaFilterChain {
+
+    private static final int MAX_GREY_VALUE = LumaFilter.NUM_OF_GREY_LEVELS - 1;
+
+    /**
+     * The chain without any filters.
+     */
+    public static final LumaFilterChain EMPTY = new LumaFilterChain(List.of());
+
+    private final List<LumaFilter> filters;
+
+    /**
+     * Creates a filter chain of the given filters.
+     * @param filters The filters, in the order they are applied.
+     */
+    private LumaFilterChain(List<LumaFilter> filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Returns a chain of the filters of this chain, followed by the given filter.
+     * Chains are immutable, so a chain can be kept by a run while the shell adds filters to a new one.
+     * @param filter The filter to add.
+     * @return A new chain with the filter at its end.
+     */
+    public LumaFilterChain withFilter(LumaFilter filter) {
+        List<LumaFilter> newFilters = new ArrayList<>(filters);
+        newFilters.add(filter);
+        return new LumaFilterChain(List.copyOf(newFilters));
+    }
+
+    /**
+     * Returns whether the chain has no filters.
+     * @return <code>true</code> if the chain is empty, <code>false</code> otherwise.
+     */
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+
+    /**
+     * Creates the grey lookup table of the whole chain for the given image.
+     * @param image The image to filter.
+     * @return An array of {@link LumaFilter#NUM_OF_GREY_LEVELS} grey values in the range [0, 255],
+     * one for each grey level, or <code>null</code> if the chain is empty.
+     */
+    public float[] createLookupTable(Image image) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        int[] histogram = null;
+        for (LumaFilter filter : filters) {
+            if (filter.usesHistogram()) {
+                histogram = computeHistogram(image);
+                break;
+            }
+        }
+
+        float[] lookupTable = new float[LumaFilter.NUM_OF_GREY_LEVELS];
+        for (int level = 0; level < LumaFilter.NUM_OF_GREY_LEVELS; level++) {
+            lookupTable[level] = level;
+        }
+        for (LumaFilter filter : filters) {
+            // The histogram after the filters so far, which is only 256 counts to move.
+            int[] filteredHistogram = filter.usesHistogram() ? rebinHistogram(histogram, lookupTable) : null;
+            float[] filterTable = filter.createLookupTable(filteredHistogram);
+            for (int level = 0; level < LumaFilter.NUM_OF_GREY_LEVELS; level++) {
+                lookupTable[level] = filterTable[toGreyLevel(lookupTable[level])];
+            }
+        }
+        return lookupTable;
+    }
+
+    /**
+     * Returns the grey level of a grey value, for indexing a lookup table.
+     * @param grey A grey value in the range [0, 255].
+     * @return The nearest grey level.
+     */
+    static int toGreyLevel(float grey) {
+        return Math.min(MAX_GREY_VALUE, Math.max(0, Math.round(grey)));
+    }
+
+    /**
+     * Counts the pixels of each grey level in the image, in a single pass over its pixels.
+     * @param image The image.
+     * @return The number of pixels of each grey level.
+     */
+    private static int[] computeHistogram(Image image) {
+        int width = image.getWidth();
+        float[] greyRow = new float[width];
+        int[] histogram = new int[LumaFilter.NUM_OF_GREY_LEVELS];
+        for (int row = 0; row < image.getHeight(); row++) {
+            image.readGreyRow(row, 0, greyRow, width);
+            for (int col = 0; col < width; col++) {
+                histogram[toGreyLevel(greyRow[col])]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Moves the counts of a histogram to the grey levels they are mapped to by a lookup table.
+     * @param histogram The histogram of the original grey levels.
+     * @param lookupTable The lookup table of the filters applied so far.
+     * @return The histogram of the filtered grey levels.
+     */
+    private static int[] rebinHistogram(int[] histogram, float[] lookupTable) {
+        int[] rebinned = new int[LumaFilter.NUM_OF_GREY_LEVELS];
+        for (int level = 0; level < LumaFilter.NUM_OF_GREY_LEVELS; level++) {
+            rebinned[toGreyLevel(lookupTable[level])] += histogram[level];
+        }
+        return rebinned;
+    }
+
+}
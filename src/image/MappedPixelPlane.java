@@ -0,0 +1,323 @@
+package image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The pixels of an image stored off the heap, in a memory-mapped temporary file.
+ * <p>The pixels are stored row by row in any pixel format. A single mapping is limited to 2GB, so the file
+ * is mapped in chunks of whole rows, and the operating system pages the pixels in and out as they are
+ * read, which allows images larger than the heap.</p>
+ * <p>Mapped files can not be moved or deleted on every system while they are mapped, and a mapping is only
+ * released when it is garbage collected, so files that are moved or deleted are read and written through
+ * their channel with {@link #writeArray}, {@link #readArray} and {@link #writeTo} instead.</p>
+ */
+class MappedPixelPlane {
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    // The number of bytes copied at a time between an array and a channel.
+    private static final int TRANSFER_BYTES = 1 << 20;
+    private static final int RGB_BYTES = Integer.BYTES;
+    private static final int LUMA_8_BYTES = Byte.BYTES;
+    private static final int LUMA_16_BYTES = Short.BYTES;
+    private static final int LUMA_8_MASK = 0xFF;
+    private static final int MAX_LUMA_16_VALUE = 0xFFFF;
+    private static final String TEMP_FILE_PREFIX = "ascii-art-pixels";
+    private static final String TEMP_FILE_SUFFIX = ".raw";
+    private static final String ROW_TOO_LARGE = "A row of %d pixels is too large to be mapped.";
+    private static final String UNEXPECTED_END = "The file ended before all the pixels were read.";
+
+    private final PixelFormat pixelFormat;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int rowBytes;
+    private final int rowsPerChunk;
+    private final MappedByteBuffer[] chunks;
+
+    /**
+     * Maps the pixels of a plane from a file.
+     * @param channel The file to map. The mappings stay valid after it is closed.
+     * @param position The position of the first pixel in the file.
+     * @param mapMode Whether the pixels can be written.
+     * @param pixelFormat The format the pixels are stored in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @throws IOException If the file can not be mapped, or a row is too large to be mapped.
+     */
+    MappedPixelPlane(FileChannel channel, long position, FileChannel.MapMode mapMode, PixelFormat pixelFormat,
+                     int width, int height) throws IOException {
+        this.pixelFormat = pixelFormat;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = getBytesPerPixel(pixelFormat);
+        if ((long) width * bytesPerPixel > MAX_CHUNK_BYTES) {
+            throw new IOException(String.format(ROW_TOO_LARGE, width));
+        }
+        this.rowBytes = width * bytesPerPixel;
+        this.rowsPerChunk = Math.max(1, MAX_CHUNK_BYTES / rowBytes);
+        this.chunks = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int chunkRows = Math.min(rowsPerChunk, height - chunk * rowsPerChunk);
+            chunks[chunk] = channel.map(mapMode, position + (long) chunk * rowsPerChunk * rowBytes,
+                                        (long) chunkRows * rowBytes);
+            chunks[chunk].order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Creates a plane of the given dimensions in a temporary file, whose pixels are all zero.
+     * <p>The file is opened to be deleted when it is closed, so it is deleted right away on systems that
+     * allow deleting mapped files, and once the mapping is released on the others.</p>
+     * @param pixelFormat The format to store the pixels in.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The plane.
+     * @throws IOException If the temporary file can not be created or mapped.
+     */
+    static MappedPixelPlane createTemporary(PixelFormat pixelFormat, int width, int height) throws IOException {
+        Path file = Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.DELETE_ON_CLOSE)) {
+            // Writing the last byte extends the file to the size of the pixels.
+            channel.write(ByteBuffer.allocate(Byte.BYTES), getByteCount(pixelFormat, width, height) - 1);
+            return new MappedPixelPlane(channel, 0, FileChannel.MapMode.READ_WRITE, pixelFormat, width, height);
+        }
+    }
+
+    /**
+     * Writes the pixels of an array of the given format to a channel, at its position.
+     * @param channel The channel to write to.
+     * @param pixelFormat The pixel format.
+     * @param pixels An <code>int[]</code>, <code>byte[]</code> or <code>short[]</code> array, of the given format.
+     * @throws IOException If the pixels can not be written.
+     */
+    static void writeArray(FileChannel channel, PixelFormat pixelFormat, Object pixels) throws IOException {
+        int bytesPerPixel = getBytesPerPixel(pixelFormat);
+        int count = Array.getLength(pixels);
+        ByteBuffer bytes = ByteBuffer.allocate(TRANSFER_BYTES).order(ByteOrder.nativeOrder());
+        for (int offset = 0; offset < count; offset += TRANSFER_BYTES / bytesPerPixel) {
+            int transferCount = Math.min(count - offset, TRANSFER_BYTES / bytesPerPixel);
+            bytes.clear();
+            switch (pixelFormat) {
+                case LUMA_8 -> bytes.put((byte[]) pixels, offset, transferCount);
+                case LUMA_16 -> bytes.asShortBuffer().put((short[]) pixels, offset, transferCount);
+                default -> bytes.asIntBuffer().put((int[]) pixels, offset, transferCount);
+            }
+            bytes.position(0).limit(transferCount * bytesPerPixel);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads the pixels of an array of the given format from a channel, at its position.
+     * @param channel The channel to read from.
+     * @param pixelFormat The pixel format.
+     * @param pixels An <code>int[]</code>, <code>byte[]</code> or <code>short[]</code> array, of the given format,
+     *               which is filled.
+     * @throws IOException If the pixels can not be read, or the channel ends before they are all read.
+     */
+    static void readArray(FileChannel channel, PixelFormat pixelFormat, Object pixels) throws IOException {
+        int bytesPerPixel = getBytesPerPixel(pixelFormat);
+        int count = Array.getLength(pixels);
+        ByteBuffer bytes = ByteBuffer.allocate(TRANSFER_BYTES).order(ByteOrder.nativeOrder());
+        for (int offset = 0; offset < count; offset += TRANSFER_BYTES / bytesPerPixel) {
+            int transferCount = Math.min(count - offset, TRANSFER_BYTES / bytesPerPixel);
+            bytes.clear().limit(transferCount * bytesPerPixel);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) == -1) {
+                    throw new EOFException(UNEXPECTED_END);
+                }
+            }
+            bytes.flip();
+            switch (pixelFormat) {
+                case LUMA_8 -> bytes.get((byte[]) pixels, offset, transferCount);
+                case LUMA_16 -> bytes.asShortBuffer().get((short[]) pixels, offset, transferCount);
+                default -> bytes.asIntBuffer().get((int[]) pixels, offset, transferCount);
+            }
+        }
+    }
+
+    /**
+     * Writes all the pixels of the plane to a channel, at its position, without mapping the channel.
+     * @param channel The channel to write to.
+     * @throws IOException If the pixels can not be written.
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            ByteBuffer bytes = chunk.duplicate().clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes the pixels of an image take in the given format.
+     * @param pixelFormat The pixel format.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The number of bytes.
+     */
+    static long getByteCount(PixelFormat pixelFormat, int width, int height) {
+        return (long) width * height * getBytesPerPixel(pixelFormat);
+    }
+
+    /**
+     * Returns the number of bytes a pixel takes in the given format.
+     * @param pixelFormat The pixel format.
+     * @return The number of bytes per pixel.
+     */
+    private static int getBytesPerPixel(PixelFormat pixelFormat) {
+        switch (pixelFormat) {
+            case LUMA_8:
+                return LUMA_8_BYTES;
+            case LUMA_16:
+                return LUMA_16_BYTES;
+            default:
+                return RGB_BYTES;
+        }
+    }
+
+    /**
+     * Returns the width of the image.
+     * @return The width of the image.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     * @return The height of the image.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the format the pixels are stored in.
+     * @return The pixel format.
+     */
+    PixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    /**
+     * Writes a row of packed RGB values to an RGB plane.
+     * @param row The row to write.
+     * @param rgbRow The packed RGB values of the row's pixels.
+     */
+    void writeRgbRow(int row, int[] rgbRow) {
+        MappedByteBuffer chunk = chunks[row / rowsPerChunk];
+        int position = (row % rowsPerChunk) * rowBytes;
+        for (int col = 0; col < width; col++) {
+            chunk.putInt(position + col * RGB_BYTES, rgbRow[col]);
+        }
+    }
+
+    /**
+     * Writes a row of stored grey values to a grey plane.
+     * @param row The row to write.
+     * @param greyLevels The stored grey values of the row's pixels, in the plane's pixel format.
+     */
+    void writeGreyRow(int row, int[] greyLevels) {
+        MappedByteBuffer chunk = chunks[row / rowsPerChunk];
+        int position = (row % rowsPerChunk) * rowBytes;
+        for (int col = 0; col < width; col++) {
+            if (pixelFormat == PixelFormat.LUMA_8) {
+                chunk.put(position + col, (byte) greyLevels[col]);
+            } else {
+                chunk.putShort(position + col * LUMA_16_BYTES, (short) greyLevels[col]);
+            }
+        }
+    }
+
+    /**
+     * Sets all the pixels to a single stored value.
+     * @param value The stored value, in the plane's pixel format.
+     */
+    void fill(int value) {
+        int[] rowValues = new int[width];
+        Arrays.fill(rowValues, value);
+        for (int row = 0; row < height; row++) {
+            if (pixelFormat == PixelFormat.RGB) {
+                writeRgbRow(row, rowValues);
+            } else {
+                writeGreyRow(row, rowValues);
+            }
+        }
+    }
+
+    /**
+     * Copies a whole row of another plane of the same format into a row of this plane.
+     * @param source The plane to copy from.
+     * @param sourceRow The row to copy.
+     * @param row The row of this plane to copy to.
+     * @param col The column of this plane to copy the first pixel to.
+     */
+    void copyRow(MappedPixelPlane source, int sourceRow, int row, int col) {
+        MappedByteBuffer chunk = chunks[row / rowsPerChunk];
+        int position = (row % rowsPerChunk) * rowBytes + col * bytesPerPixel;
+        chunk.put(position, source.chunks[sourceRow / source.rowsPerChunk],
+                  (sourceRow % source.rowsPerChunk) * source.rowBytes, source.rowBytes);
+    }
+
+    /**
+     * Returns the stored value of a single pixel.
+     * @param row The pixel's row.
+     * @param col The pixel's column.
+     * @return The packed RGB value, or the grey value in the plane's pixel format.
+     */
+    int getValue(int row, int col) {
+        MappedByteBuffer chunk = chunks[row / rowsPerChunk];
+        int position = (row % rowsPerChunk) * rowBytes + col * bytesPerPixel;
+        switch (pixelFormat) {
+            case LUMA_8:
+                return chunk.get(position) & LUMA_8_MASK;
+            case LUMA_16:
+                return chunk.getShort(position) & MAX_LUMA_16_VALUE;
+            default:
+                return chunk.getInt(position);
+        }
+    }
+
+    /**
+     * Reads the grey values of a run of pixels in a single row, in the range [0, 255].
+     * For RGB planes, the grey values are identical to those of the brightness computations.
+     * @param row The row of the pixels.
+     * @param col The column of the first pixel.
+     * @param grey The array to write the grey values to, starting at index 0.
+     * @param length The number of pixels to read.
+     */
+    void readGreyRow(int row, int col, float[] grey, int length) {
+        MappedByteBuffer chunk = chunks[row / rowsPerChunk];
+        int position = (row % rowsPerChunk) * rowBytes + col * bytesPerPixel;
+        if (pixelFormat == PixelFormat.LUMA_8) {
+            for (int i = 0; i < length; i++) {
+                grey[i] = chunk.get(position + i) & LUMA_8_MASK;
+            }
+        } else if (pixelFormat == PixelFormat.LUMA_16) {
+            for (int i = 0; i < length; i++) {
+                grey[i] = (chunk.getShort(position + i * LUMA_16_BYTES) & MAX_LUMA_16_VALUE) /
+                          Image.LUMA_16_PER_GREY_LEVEL;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                grey[i] = SubImageHandler.toGrey(chunk.getInt(position + i * RGB_BYTES));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package image;
+
+/**
+ * An enum that represents how the pixels of an image are stored.
+ */
+public enum PixelFormat {
+    /** Packed RGB values, 4 bytes per pixel */
+    RGB,
+    /** 8-bit grey values, 1 byte per pixel */
+    LUMA_8,
+    /** 16-bit grey values, 2 bytes per pixel */
+    LUMA_16
+}
@@ -1,16 +1,50 @@
 package image;
 
-import java.awt.*;
+import utils.BufferPool;
+
+import java.util.Arrays;
 
 /**
  * A utility class that handles all sub-images related functions.
  */
 public final class SubImageHandler {
 
-    private static final float RED_TO_GREY_FACTOR = 0.2126f;
-    private static final float GREEN_TO_GREY_FACTOR = 0.7152f;
-    private static final float BLUE_TO_GREY_FACTOR = 0.0722f;
+    // The grey conversion, shared with the Vector API kernel.
+    static final float RED_TO_GREY_FACTOR = 0.2126f;
+    static final float GREEN_TO_GREY_FACTOR = 0.7152f;
+    static final float BLUE_TO_GREY_FACTOR = 0.0722f;
+    static final int RED_SHIFT = 16;
+    static final int GREEN_SHIFT = 8;
+    static final int CHANNEL_MASK = 0xFF;
+
     private static final int MAX_RGB_VALUE = 255;
+    private static final int NUM_OF_CHANNELS = 3;
+    private static final String VECTOR_MODULE_NAME = "jdk.incubator.vector";
+    private static final String VECTOR_GREY_ROW_CONVERTER_NAME = "VectorGreyRowConverter";
+
+    /*
+     Fixed-point grey factors over 2^FIXED_POINT_SHIFT, summing exactly to 2^FIXED_POINT_SHIFT.
+     Each factor is within 2^-(FIXED_POINT_SHIFT + 1) of its float counterpart, and the errors of the
+     factors sum to about 5.3e-6 in each direction, which bounds the error of a normalized brightness value.
+     A pixel's fixed-point grey value is at most 255 * 2^16, so it fits in an int.
+     */
+    private static final int FIXED_POINT_SHIFT = 16;
+    private static final int RED_TO_GREY_FIXED_POINT_FACTOR = 13933;
+    private static final int GREEN_TO_GREY_FIXED_POINT_FACTOR = 46871;
+    private static final int BLUE_TO_GREY_FIXED_POINT_FACTOR = 4732;
+
+    /**
+     * The maximal difference between a fixed-point brightness value and the float brightness value
+     * of the same sub-image.
+     */
+    public static final double FIXED_POINT_TOLERANCE = 1e-5;
+
+    /**
+     * The scalar loop of {@link #convertRowToGrey(int[], int, float[], int)}.
+     */
+    static final GreyRowConverter SCALAR_GREY_ROW_CONVERTER = SubImageHandler::convertRowToGreyScalar;
+
+    private static final GreyRowConverter GREY_ROW_CONVERTER = loadGreyRowConverter();
 
     /**
      * Private constructor to prevent instantiation.
@@ -18,64 +52,409 @@ public final class SubImageHandler {
     private SubImageHandler() {}
 
     /**
-     * Divides an image into sub-images of size resolution².
-     * @param image The image to divide.
-     * @param resolution The resolution of the sub-images.
-     * @return A 2D array of sub-images.
+     * Returns the normalized brightness values of all the sub-images of the given resolution,
+     * without creating the sub-images themselves.
+     * <p>The image is converted to grey one row at a time over its packed RGB values, using the factors of
+     * {@link #toGrey(int)}, and each row is summed into the sub-images it crosses. The conversion uses a
+     * Vector API kernel when it is available, as {@link #convertRowToGrey(int[], int, float[], int)} describes.
+     * The sums are not vectorized, since reordering <code>double</code> additions may change their result.</p>
+     * <p>The sums are rounded, so a sub-image summed in another order may differ in its last bits.
+     * {@link #getBrightnessSource(Image, int, float[])} sums a sub-image in the same order as this method,
+     * so it recomputes its value identically.</p>
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @return A grid of the normalized brightness values of the sub-images, leased from the pool.
      */
-    public static Image[][] divideImage(Image image, int resolution) {
-        int imageHeight = image.getHeight();
-        int imageWidth = image.getWidth();
-        /*
-         There are (resolution) images in a row, and since each one is a square,
-         we need (image.getHeight() / resolution) rows.
-         */
-        int subImageDims = imageWidth/ resolution;
+    public static BrightnessGrid getBrightnessGrid(Image image, int resolution) {
+        return getBrightnessGrid(image, resolution, null);
+    }
 
-        int subImageRowCount = imageHeight / (imageWidth / resolution);
-        Image[][] subImages = new Image[subImageRowCount][resolution];
+    /**
+     * Returns the normalized brightness values of all the sub-images of the given resolution,
+     * and computes the mean color of each sub-image in the same pass over the image.
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @param colorGrid A 2D array of the sub-images' dimensions, filled with the mean color of each
+     *                  sub-image as a packed RGB value, or <code>null</code> to skip the colors.
+     * @return A grid of the normalized brightness values of the sub-images, leased from the pool.
+     * @see #getBrightnessGrid(Image, int)
+     */
+    public static BrightnessGrid getBrightnessGrid(Image image, int resolution, int[][] colorGrid) {
+        return getBrightnessGrid(image, resolution, colorGrid, null, BrightnessPrecision.DOUBLE);
+    }
+
+    /**
+     * Returns the normalized brightness values of all the sub-images of the given resolution,
+     * after mapping the grey value of each pixel through a lookup table, such as the one of a
+     * {@link LumaFilterChain}. Each row is mapped right after it is converted to grey,
+     * so filtering takes no additional pass over the image.
+     * <p>Only the sums of a single row of sub-images are kept in <code>double</code> precision. Each row
+     * of values is stored in the grid's precision once it is summed.</p>
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @param colorGrid A 2D array of the sub-images' dimensions, filled with the mean color of each
+     *                  sub-image as a packed RGB value, or <code>null</code> to skip the colors.
+     *                  The colors are not filtered.
+     * @param greyLookupTable The grey value of each grey level, or <code>null</code> to skip filtering.
+     * @param precision The precision to store the values in. A narrower grid keeps
+     *                  {@link #getBrightnessSource(Image, int, float[])} as the source of its values.
+     * @return A grid of the normalized brightness values of the sub-images, leased from the pool.
+     * @see #getBrightnessGrid(Image, int)
+     */
+    public static BrightnessGrid getBrightnessGrid(Image image, int resolution, int[][] colorGrid,
+                                                   float[] greyLookupTable, BrightnessPrecision precision) {
+        int imageWidth = image.getWidth();
+        int subImageDims = imageWidth / resolution;
+        int subImageRowCount = image.getHeight() / subImageDims;
+        // Grey images only create RGB values when colors are requested.
+        int[] rgbPixels = (colorGrid == null) ? null : image.getRgbPixels();
+        float[] greyRow = new float[imageWidth];
+        BrightnessSource exactSource = getBrightnessSource(image, resolution, greyLookupTable);
+        BrightnessGrid brightnessGrid = BrightnessGrid.lease(subImageRowCount, resolution, precision, exactSource);
+        double[] greySums = BufferPool.leaseDoubles(resolution);
+        long[] channelSums = (colorGrid == null) ? null : new long[resolution * NUM_OF_CHANNELS];
+        double numOfPixels = (double) subImageDims * subImageDims;
 
         for (int row = 0; row < subImageRowCount; row++) {
-            for (int col = 0; col < resolution; col++) {
-                Color[][] subPixelArray = new Color[subImageDims][subImageDims];
-
-                // Iterate resolution² times to create sub-images of size resolution²
-                for (int i = 0; i < subImageDims; i++) {
-                    for (int j = 0; j < subImageDims; j++) {
-                        // Calculate the desired pixel based on our current row and column
-                        int x = row * subImageDims + j;
-                        int y = col * subImageDims + i;
-                        subPixelArray[i][j] = image.getPixel(x, y);
-                    }
+            for (int y = row * subImageDims; y < (row + 1) * subImageDims; y++) {
+                image.readGreyRow(y, 0, greyRow, imageWidth);
+                if (greyLookupTable != null) {
+                    applyLookupTable(greyRow, imageWidth, greyLookupTable);
+                }
+                for (int col = 0; col < resolution; col++) {
+                    greySums[col] += sumRange(greyRow, col * subImageDims, (col + 1) * subImageDims);
+                }
+                if (channelSums != null) {
+                    sumChannels(rgbPixels, y * imageWidth, subImageDims, channelSums);
                 }
-
-                subImages[row][col] = new Image(subPixelArray, subImageDims, subImageDims);
             }
+            if (channelSums != null) {
+                writeMeanColors(channelSums, numOfPixels, colorGrid[row]);
+            }
+            for (int col = 0; col < resolution; col++) {
+                brightnessGrid.set(row, col, greySums[col] / numOfPixels / MAX_RGB_VALUE);
+            }
+            Arrays.fill(greySums, 0);
         }
+        BufferPool.release(greySums);
+        return brightnessGrid;
+    }
 
-        return subImages;
+    /**
+     * Returns the source of the brightness values of
+     * {@link #getBrightnessGrid(Image, int, int[][], float[], BrightnessPrecision)}, which recomputes the value
+     * of a single sub-image identically.
+     * <p>Each value reads its pixel rows into a buffer leased from the pool, since the values of a grid may be
+     * recomputed by several threads.</p>
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @param greyLookupTable The grey value of each grey level, or <code>null</code> to skip filtering.
+     * @return The source of the brightness values.
+     */
+    public static BrightnessSource getBrightnessSource(Image image, int resolution, float[] greyLookupTable) {
+        int subImageDims = image.getWidth() / resolution;
+        return (row, col) -> {
+            float[] greyRow = BufferPool.leaseFloats(subImageDims);
+            double greySum = sumSubImage(image, subImageDims, row, col, greyRow, greyLookupTable);
+            BufferPool.release(greyRow);
+            return greySum / ((double) subImageDims * subImageDims) / MAX_RGB_VALUE;
+        };
     }
 
     /**
-     * Returns a given image's normalized brightness value.
+     * Sums the grey values of a sub-image one pixel row at a time, in the order the grid computations do.
      * @param image The image.
-     * @return The image's normalized brightness value.
+     * @param subImageDims The dimension of the sub-images.
+     * @param row The row of the sub-image.
+     * @param col The column of the sub-image.
+     * @param greyRow An array of at least <code>subImageDims</code> grey values to read the rows into.
+     * @param greyLookupTable The grey value of each grey level, or <code>null</code> to skip filtering.
+     * @return The sum of the grey values of the sub-image.
      */
-    public static double getImageBrightness(Image image) {
+    private static double sumSubImage(Image image, int subImageDims, int row, int col, float[] greyRow,
+                                      float[] greyLookupTable) {
         double greySum = 0;
-        int imageHeight = image.getHeight();
+        for (int i = 0; i < subImageDims; i++) {
+            image.readGreyRow(row * subImageDims + i, col * subImageDims, greyRow, subImageDims);
+            if (greyLookupTable != null) {
+                applyLookupTable(greyRow, subImageDims, greyLookupTable);
+            }
+            greySum += sumRange(greyRow, 0, subImageDims);
+        }
+        return greySum;
+    }
+
+    /**
+     * Adds the channel values of a row of pixels to the channel sums of the sub-images the row crosses.
+     * @param rgbPixels The packed RGB pixels.
+     * @param offset The index of the first pixel in the row.
+     * @param subImageDims The dimension of the sub-images.
+     * @param channelSums The red, green and blue sums of each sub-image in the row, one after the other.
+     */
+    private static void sumChannels(int[] rgbPixels, int offset, int subImageDims, long[] channelSums) {
+        for (int col = 0; col < channelSums.length / NUM_OF_CHANNELS; col++) {
+            long redSum = 0;
+            long greenSum = 0;
+            long blueSum = 0;
+            int from = offset + col * subImageDims;
+            for (int i = from; i < from + subImageDims; i++) {
+                int rgb = rgbPixels[i];
+                redSum += (rgb >> RED_SHIFT) & CHANNEL_MASK;
+                greenSum += (rgb >> GREEN_SHIFT) & CHANNEL_MASK;
+                blueSum += rgb & CHANNEL_MASK;
+            }
+            channelSums[col * NUM_OF_CHANNELS] += redSum;
+            channelSums[col * NUM_OF_CHANNELS + 1] += greenSum;
+            channelSums[col * NUM_OF_CHANNELS + 2] += blueSum;
+        }
+    }
+
+    /**
+     * Writes the mean color of each sub-image in a row from its channel sums, and resets the sums.
+     * @param channelSums The red, green and blue sums of each sub-image in the row, one after the other.
+     * @param numOfPixels The number of pixels in a sub-image.
+     * @param colorRow The row of the color grid to write to.
+     */
+    private static void writeMeanColors(long[] channelSums, double numOfPixels, int[] colorRow) {
+        for (int col = 0; col < colorRow.length; col++) {
+            int red = (int) Math.round(channelSums[col * NUM_OF_CHANNELS] / numOfPixels);
+            int green = (int) Math.round(channelSums[col * NUM_OF_CHANNELS + 1] / numOfPixels);
+            int blue = (int) Math.round(channelSums[col * NUM_OF_CHANNELS + 2] / numOfPixels);
+            colorRow[col] = (red << RED_SHIFT) | (green << GREEN_SHIFT) | blue;
+        }
+        Arrays.fill(channelSums, 0);
+    }
+
+    /**
+     * Updates the brightness grid of a previous image to the given image of the same dimensions,
+     * recomputing only the sub-images whose pixels changed.
+     * <p>The recomputed values are identical to those of {@link #getBrightnessGrid(Image, int)}.</p>
+     * @param image The image, whose width is divisible by the resolution.
+     * @param previousImage The previous image, whose brightness grid is given.
+     * @param resolution The number of sub-images in a row.
+     * @param brightnessGrid The brightness grid of the previous image, updated in place.
+     * @return The number of recomputed sub-images.
+     */
+    public static int updateBrightnessGrid(Image image, Image previousImage, int resolution,
+                                           BrightnessGrid brightnessGrid) {
+        int imageWidth = image.getWidth();
+        int subImageDims = imageWidth / resolution;
+        int[] rgbPixels = image.getRgbPixels();
+        int[] previousRgbPixels = previousImage.getRgbPixels();
+        float[] greyRow = new float[subImageDims];
+        int recomputedCount = 0;
+
+        for (int row = 0; row < brightnessGrid.getNumRows(); row++) {
+            for (int col = 0; col < resolution; col++) {
+                int firstPixel = row * subImageDims * imageWidth + col * subImageDims;
+                if (isSubImageUnchanged(rgbPixels, previousRgbPixels, firstPixel, imageWidth, subImageDims)) {
+                    continue;
+                }
+                double greySum = sumSubImage(image, subImageDims, row, col, greyRow, null);
+                brightnessGrid.set(row, col, greySum / ((double) subImageDims * subImageDims) / MAX_RGB_VALUE);
+                recomputedCount++;
+            }
+        }
+        return recomputedCount;
+    }
+
+    /**
+     * Checks whether all the pixels of a sub-image are equal in two images of the same dimensions.
+     * @param rgbPixels The packed RGB pixels of the first image.
+     * @param otherRgbPixels The packed RGB pixels of the second image.
+     * @param firstPixel The index of the sub-image's top-left pixel.
+     * @param imageWidth The width of the images.
+     * @param subImageDims The dimension of the sub-image.
+     * @return <code>true</code> if the sub-image is unchanged, <code>false</code> otherwise.
+     */
+    private static boolean isSubImageUnchanged(int[] rgbPixels, int[] otherRgbPixels, int firstPixel,
+                                               int imageWidth, int subImageDims) {
+        for (int i = 0; i < subImageDims; i++) {
+            int from = firstPixel + i * imageWidth;
+            if (!Arrays.equals(rgbPixels, from, from + subImageDims, otherRgbPixels, from, from + subImageDims)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the normalized brightness values of all the sub-images of the given resolution,
+     * using integer arithmetic only.
+     * <p>Each pixel's grey value is computed with fixed-point factors and summed into a <code>long</code>
+     * per sub-image, and each sub-image is normalized once. The results are within
+     * {@link #FIXED_POINT_TOLERANCE} of those of {@link #getBrightnessGrid(Image, int)}.</p>
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @param precision The precision to store the values in. A narrower grid keeps
+     *                  {@link #getFixedPointBrightnessSource(Image, int)} as the source of its values.
+     * @return A grid of the normalized brightness values of the sub-images, leased from the pool.
+     */
+    public static BrightnessGrid getFixedPointBrightnessGrid(Image image, int resolution,
+                                                             BrightnessPrecision precision) {
         int imageWidth = image.getWidth();
-        for (int i = 0; i < imageHeight; i++) {
-            for (int j = 0; j < imageWidth; j++) {
-                Color pixel = image.getPixel(i, j);
-                // Sum the grey value of all pixels in the image
-                greySum += pixel.getRed() * RED_TO_GREY_FACTOR +
-                           pixel.getGreen() * GREEN_TO_GREY_FACTOR +
-                           pixel.getBlue() * BLUE_TO_GREY_FACTOR;
+        int subImageDims = imageWidth / resolution;
+        int subImageRowCount = image.getHeight() / subImageDims;
+        int[] rgbPixels = image.getRgbPixels();
+        long[] greySums = new long[resolution];
+        BrightnessGrid brightnessGrid = BrightnessGrid.lease(subImageRowCount, resolution, precision,
+                                                             getFixedPointBrightnessSource(image, resolution));
+
+        // The sum of a sub-image's fixed-point grey values, when all of its pixels are white.
+        double maxGreySum = (double) ((long) subImageDims * subImageDims * MAX_RGB_VALUE << FIXED_POINT_SHIFT);
+        for (int row = 0; row < subImageRowCount; row++) {
+            Arrays.fill(greySums, 0);
+            for (int y = row * subImageDims; y < (row + 1) * subImageDims; y++) {
+                int rowOffset = y * imageWidth;
+                for (int col = 0; col < resolution; col++) {
+                    greySums[col] += sumFixedPointGrey(rgbPixels, rowOffset + col * subImageDims, subImageDims);
+                }
             }
+            for (int col = 0; col < resolution; col++) {
+                brightnessGrid.set(row, col, greySums[col] / maxGreySum);
+            }
+        }
+        return brightnessGrid;
+    }
+
+    /**
+     * Returns the source of the brightness values of
+     * {@link #getFixedPointBrightnessGrid(Image, int, BrightnessPrecision)},
+     * which recomputes the value of a single sub-image identically, without expanding grey images to RGB.
+     * @param image The image, whose width is divisible by the resolution.
+     * @param resolution The number of sub-images in a row.
+     * @return The source of the brightness values.
+     */
+    public static BrightnessSource getFixedPointBrightnessSource(Image image, int resolution) {
+        int subImageDims = image.getWidth() / resolution;
+        double maxGreySum = (double) ((long) subImageDims * subImageDims * MAX_RGB_VALUE << FIXED_POINT_SHIFT);
+        return (row, col) -> {
+            long greySum = 0;
+            for (int y = row * subImageDims; y < (row + 1) * subImageDims; y++) {
+                for (int x = col * subImageDims; x < (col + 1) * subImageDims; x++) {
+                    greySum += toFixedPointGrey(image.getRgb(y, x));
+                }
+            }
+            return greySum / maxGreySum;
+        };
+    }
+
+    /**
+     * Sums the fixed-point grey values of a run of packed RGB pixels.
+     * @param rgbPixels The packed RGB pixels.
+     * @param offset The index of the first pixel to sum.
+     * @param length The number of pixels to sum.
+     * @return The sum of the fixed-point grey values.
+     */
+    private static long sumFixedPointGrey(int[] rgbPixels, int offset, int length) {
+        long sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += toFixedPointGrey(rgbPixels[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Converts a single packed RGB value to its fixed-point grey value.
+     * @param rgb The packed RGB value.
+     * @return The grey value, in the range [0, 255 * 2^16].
+     */
+    private static int toFixedPointGrey(int rgb) {
+        return ((rgb >> RED_SHIFT) & CHANNEL_MASK) * RED_TO_GREY_FIXED_POINT_FACTOR +
+               ((rgb >> GREEN_SHIFT) & CHANNEL_MASK) * GREEN_TO_GREY_FIXED_POINT_FACTOR +
+               (rgb & CHANNEL_MASK) * BLUE_TO_GREY_FIXED_POINT_FACTOR;
+    }
+
+    /**
+     * Converts a run of packed RGB pixels to their grey values, in the range [0, 255].
+     * <p>When the application runs with <code>--add-modules jdk.incubator.vector</code>, the pixels are
+     * converted by {@link VectorGreyRowConverter}, a vector of pixels at a time, and otherwise one by one.
+     * Both give bit-identical values.</p>
+     * @param rgbPixels The packed RGB pixels.
+     * @param offset The index of the first pixel to convert.
+     * @param grey The array to write the grey values to, starting at index 0.
+     * @param length The number of pixels to convert.
+     */
+    static void convertRowToGrey(int[] rgbPixels, int offset, float[] grey, int length) {
+        GREY_ROW_CONVERTER.convert(rgbPixels, offset, grey, length);
+    }
+
+    /**
+     * Loads the Vector API kernel if the <code>jdk.incubator.vector</code> module is in the boot layer.
+     * @return The kernel, or <code>null</code> if the module is missing or the kernel can not be loaded.
+     */
+    static GreyRowConverter loadVectorGreyRowConverter() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE_NAME).isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> converterClass = Class.forName(SubImageHandler.class.getPackageName() + "." +
+                                                    VECTOR_GREY_ROW_CONVERTER_NAME);
+            return (GreyRowConverter) converterClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) { // Such as a build without the module.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the grey row converter to use: the Vector API kernel if it can be loaded, and the scalar loop
+     * otherwise.
+     * @return The converter.
+     */
+    private static GreyRowConverter loadGreyRowConverter() {
+        GreyRowConverter vectorConverter = loadVectorGreyRowConverter();
+        return (vectorConverter != null) ? vectorConverter : SCALAR_GREY_ROW_CONVERTER;
+    }
+
+    /**
+     * Converts a run of packed RGB pixels to their grey values one by one.
+     * @param rgbPixels The packed RGB pixels.
+     * @param offset The index of the first pixel to convert.
+     * @param grey The array to write the grey values to, starting at index 0.
+     * @param length The number of pixels to convert.
+     */
+    private static void convertRowToGreyScalar(int[] rgbPixels, int offset, float[] grey, int length) {
+        for (int i = 0; i < length; i++) {
+            grey[i] = toGrey(rgbPixels[offset + i]);
+        }
+    }
+
+    /**
+     * Converts a single packed RGB value to its grey value, in the range [0, 255].
+     * @param rgb The packed RGB value.
+     * @return The grey value.
+     */
+    static float toGrey(int rgb) {
+        return ((rgb >> RED_SHIFT) & CHANNEL_MASK) * RED_TO_GREY_FACTOR +
+               ((rgb >> GREEN_SHIFT) & CHANNEL_MASK) * GREEN_TO_GREY_FACTOR +
+               (rgb & CHANNEL_MASK) * BLUE_TO_GREY_FACTOR;
+    }
+
+    /**
+     * Maps a run of grey values through a lookup table, in place.
+     * @param grey The grey values, in the range [0, 255].
+     * @param length The number of grey values to map, starting at index 0.
+     * @param greyLookupTable The grey value of each grey level.
+     */
+    static void applyLookupTable(float[] grey, int length, float[] greyLookupTable) {
+        for (int i = 0; i < length; i++) {
+            grey[i] = greyLookupTable[LumaFilterChain.toGreyLevel(grey[i])];
+        }
+    }
+
+    /**
+     * Sums a range of grey values.
+     * @param grey The grey values.
+     * @param from The first index to sum (inclusive).
+     * @param to The last index to sum (exclusive).
+     * @return The sum of the grey values in the range.
+     */
+    private static double sumRange(float[] grey, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += grey[i];
         }
-        double brightness = greySum / (imageHeight * imageWidth);
-        return brightness / MAX_RGB_VALUE; // Return the normalized brightness
+        return sum;
     }
 
 }
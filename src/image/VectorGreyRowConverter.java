@@ -0,0 +1,52 @@
+package image;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Converts packed RGB pixels to grey values with the incubating Vector API, a full vector of pixels at a time.
+ * <p>Each lane computes the same <code>float</code> products and sums, in the same order, as
+ * {@link SubImageHandler#toGrey(int)}, and the channels are converted to <code>float</code> exactly, so the
+ * grey values are bit-identical to the scalar loop. The pixels that do not fill a vector are converted by
+ * the scalar loop.</p>
+ * <p>This class is only loaded by {@link SubImageHandler} when the <code>jdk.incubator.vector</code> module
+ * is in the boot layer, so the application still runs without the module.</p>
+ */
+final class VectorGreyRowConverter implements GreyRowConverter {
+
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    // Floats are as wide as ints, so a vector of grey values has as many lanes as a vector of pixels.
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void convert(int[] rgbPixels, int offset, float[] grey, int length) {
+        int vectorLength = INT_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < vectorLength; i += INT_SPECIES.length()) {
+            IntVector rgb = IntVector.fromArray(INT_SPECIES, rgbPixels, offset + i);
+            FloatVector red = toFloat(rgb.lanewise(VectorOperators.ASHR, SubImageHandler.RED_SHIFT));
+            FloatVector green = toFloat(rgb.lanewise(VectorOperators.ASHR, SubImageHandler.GREEN_SHIFT));
+            FloatVector blue = toFloat(rgb);
+            red.mul(SubImageHandler.RED_TO_GREY_FACTOR)
+               .add(green.mul(SubImageHandler.GREEN_TO_GREY_FACTOR))
+               .add(blue.mul(SubImageHandler.BLUE_TO_GREY_FACTOR))
+               .intoArray(grey, i);
+        }
+        for (; i < length; i++) {
+            grey[i] = SubImageHandler.toGrey(rgbPixels[offset + i]);
+        }
+    }
+
+    /**
+     * Converts the lowest channel of each lane to <code>float</code>.
+     * @param channels The packed channels, shifted so the channel to convert is the lowest byte.
+     * @return The channel values.
+     */
+    private static FloatVector toFloat(IntVector channels) {
+        return (FloatVector) channels.and(SubImageHandler.CHANNEL_MASK)
+                                     .convertShape(VectorOperators.I2F, FLOAT_SPECIES, 0);
+    }
+
+}
@@ -2,6 +2,10 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Inspired by, and partly copied from
@@ -10,11 +14,28 @@ import java.awt.image.BufferedImage;
  * <a href="https://dzone.com/articles/ascii-art-generator-java">...</a>
  * Adaptations made by Dan Nirel and again by Rachel Behar.
  * The class converts characters to a binary "image" (2D array of booleans).
+ * <p>Any Unicode character can be converted, including supplementary characters. Characters the font can
+ * not display are drawn with the logical monospaced font, which falls back to fonts that can. Each
+ * character is rendered once, and may be rendered by several threads at the same time.</p>
+ * <p>Characters can also be measured in any {@link GlyphRaster}, whose font, size and antialiasing
+ * are given by the caller.</p>
  */
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
-    private static final String FONT_NAME = "Courier New";
+    private static final int MAX_ALPHA = 0xFF;
+    private static final int ALPHA_SHIFT = 24;
+    private static final String FONT_NAME = GlyphRaster.DEFAULT_FONT_NAME;
+    private static final Font FONT = new Font(FONT_NAME, Font.PLAIN, CharConverter.DEFAULT_PIXEL_RESOLUTION);
+    private static final Set<String> LOGICAL_FONT_NAMES = Set.of(Font.DIALOG, Font.DIALOG_INPUT, Font.MONOSPACED,
+                                                                 Font.SANS_SERIF, Font.SERIF);
+    private static final Font FALLBACK_FONT = new Font(Font.MONOSPACED, Font.PLAIN,
+                                                       CharConverter.DEFAULT_PIXEL_RESOLUTION);
+
+    // The rendered characters, by their code points. The arrays are never modified once they are cached.
+    private static final ConcurrentHashMap<Integer, boolean[][]> renderedChars = new ConcurrentHashMap<>();
+    // The names of the installed font families, in lower case, listed when first needed.
+    private static Set<String> installedFontNames;
 
     /**
      * The default pixel resolution for the conversion.
@@ -31,11 +52,81 @@ public class CharConverter {
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black and white image (2D array of <code>boolean</code>s),
      * whose dimension in pixels is specified.
-     * @param c The character to convert.
+     * @param codePoint The code point of the character to convert.
+     * @return A 2D array of <code>boolean</code>s representing the character.
+     */
+    public static boolean[][] convertToBoolArray(int codePoint) {
+        boolean[][] cachedMatrix = renderedChars.computeIfAbsent(codePoint, CharConverter::renderToBoolArray);
+        // Copy the cached array, so the caller may modify it.
+        boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][];
+        for (int y = 0; y < DEFAULT_PIXEL_RESOLUTION; y++) {
+            matrix[y] = cachedMatrix[y].clone();
+        }
+        return matrix;
+    }
+
+    /**
+     * Measures the fraction of a character's raster that is left black, which is its brightness
+     * before normalization.
+     * <p>With binary pixels, this is the fraction of <code>true</code> cells of
+     * {@link #convertToBoolArray(int)} for the default raster. With antialiased coverage,
+     * each pixel counts by the fraction of it that is not drawn.</p>
+     * @param codePoint The code point of the character to measure.
+     * @param raster The raster to render the character in.
+     * @return The black fraction of the raster, between 0 and 1.
+     */
+    public static double measureBlackFraction(int codePoint, GlyphRaster raster) {
+        int side = raster.getPixelResolution();
+        Font font = new Font(raster.getFontName(), Font.PLAIN, side);
+        if (!font.canDisplay(codePoint)) {
+            font = new Font(Font.MONOSPACED, Font.PLAIN, side);
+        }
+        BufferedImage img = getBufferedImage(codePoint, font, side, raster.isAntialiased());
+        int[] argbPixels = img.getRGB(0, 0, side, side, null, 0, side);
+        if (!raster.isAntialiased()) {
+            int numBlack = 0;
+            for (int argb : argbPixels) {
+                if (argb == 0) { //is the color black
+                    numBlack++;
+                }
+            }
+            return numBlack / (double) (side * side);
+        }
+        long undrawnAlpha = 0;
+        for (int argb : argbPixels) {
+            undrawnAlpha += MAX_ALPHA - (argb >>> ALPHA_SHIFT);
+        }
+        return undrawnAlpha / ((double) MAX_ALPHA * side * side);
+    }
+
+    /**
+     * Checks whether glyphs can be rendered in a font, rather than in the font Java substitutes for
+     * fonts that are not installed.
+     * @param fontName The name of a font family, or of a logical font.
+     * @return <code>true</code> if the font is installed or logical, <code>false</code> otherwise.
+     */
+    public static boolean isFontAvailable(String fontName) {
+        if (LOGICAL_FONT_NAMES.contains(fontName)) {
+            return true;
+        }
+        synchronized (CharConverter.class) {
+            if (installedFontNames == null) {
+                installedFontNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                installedFontNames.addAll(Arrays.asList(
+                        GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()));
+            }
+            return installedFontNames.contains(fontName);
+        }
+    }
+
+    /**
+     * Renders a given character to a square black and white image.
+     * @param codePoint The code point of the character to render.
      * @return A 2D array of <code>boolean</code>s representing the character.
      */
-    public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+    private static boolean[][] renderToBoolArray(int codePoint) {
+        Font font = FONT.canDisplay(codePoint) ? FONT : FALLBACK_FONT;
+        BufferedImage img = getBufferedImage(codePoint, font, DEFAULT_PIXEL_RESOLUTION, false);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for(int y = 0 ; y < DEFAULT_PIXEL_RESOLUTION ; y++) {
             for(int x = 0 ; x < DEFAULT_PIXEL_RESOLUTION ; x++) {
@@ -45,11 +136,15 @@ public class CharConverter {
         return matrix;
     }
 
-    private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
-        String charStr = Character.toString(c);
-        Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
+    private static BufferedImage getBufferedImage(int codePoint, Font font, int pixelsPerRow,
+                                                  boolean antialiased) {
+        String charStr = Character.toString(codePoint);
         BufferedImage img = new BufferedImage(pixelsPerRow, pixelsPerRow, BufferedImage.TYPE_INT_ARGB);
-        Graphics g = img.getGraphics();
+        Graphics2D g = img.createGraphics();
+        if (antialiased) {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        }
         g.setFont(font);
         int xOffset = (int)Math.round(pixelsPerRow * X_OFFSET_FACTOR);
         int yOffset = (int)Math.round(pixelsPerRow * Y_OFFSET_FACTOR);
@@ -0,0 +1,300 @@
+package image_char_matching;
+
+import java.util.Arrays;
+
+/**
+ * A set of characters, stored as a bitset of their Unicode code points in an array of <code>long</code> words.
+ * <p>A set of printable ASCII characters takes two words, so comparing, hashing and copying it takes
+ * a few word operations, and no character is ever boxed. The array only grows up to the largest code point
+ * in the set, so supplementary characters, whose code points do not fit in a <code>char</code>, are stored
+ * like any other character. The characters are always iterated in ascending order.</p>
+ */
+public final class CharSet {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+    private static final int BIT_INDEX_MASK = BITS_PER_WORD - 1;
+    private static final long ALL_BITS = -1L;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final String OPENING_BRACKET = "[";
+    private static final String CLOSING_BRACKET = "]";
+    private static final String SEPARATOR = ", ";
+    private static final String INVALID_CODE_POINT = "%d is not a valid code point.";
+    private static final String SUPPLEMENTARY_CHARACTERS = "The set %s has characters that do not fit in a char.";
+
+    private long[] words;
+
+    /**
+     * Creates an empty set.
+     */
+    public CharSet() {
+        this.words = new long[0];
+    }
+
+    /**
+     * Creates a set of the given characters.
+     * @param chars The characters of the set. Duplicates are ignored.
+     */
+    public CharSet(char... chars) {
+        this();
+        for (char c : chars) {
+            add(c);
+        }
+    }
+
+    /**
+     * Creates a copy of a set.
+     * @param other The set to copy.
+     */
+    public CharSet(CharSet other) {
+        this.words = other.words.clone();
+    }
+
+    /**
+     * Adds a character to the set.
+     * @param codePoint The code point of the character to add.
+     * @throws IllegalArgumentException If the code point is not valid.
+     */
+    public void add(int codePoint) {
+        checkCodePoint(codePoint);
+        ensureCapacity(codePoint);
+        words[codePoint >> ADDRESS_BITS_PER_WORD] |= 1L << codePoint;
+    }
+
+    /**
+     * Removes a character from the set, if it is in the set.
+     * @param codePoint The code point of the character to remove.
+     */
+    public void remove(int codePoint) {
+        int word = codePoint >> ADDRESS_BITS_PER_WORD;
+        if (codePoint >= 0 && word < words.length) {
+            words[word] &= ~(1L << codePoint);
+        }
+    }
+
+    /**
+     * Adds all the characters in a range to the set.
+     * @param fromCodePoint The code point of the first character of the range (inclusive).
+     * @param toCodePoint The code point of the last character of the range (inclusive).
+     * @throws IllegalArgumentException If a code point is not valid.
+     */
+    public void addRange(int fromCodePoint, int toCodePoint) {
+        checkCodePoint(fromCodePoint);
+        checkCodePoint(toCodePoint);
+        if (fromCodePoint > toCodePoint) {
+            return;
+        }
+        ensureCapacity(toCodePoint);
+        applyRange(fromCodePoint, toCodePoint, true);
+    }
+
+    /**
+     * Removes all the characters in a range from the set.
+     * @param fromCodePoint The code point of the first character of the range (inclusive).
+     * @param toCodePoint The code point of the last character of the range (inclusive).
+     */
+    public void removeRange(int fromCodePoint, int toCodePoint) {
+        int firstCodePoint = Math.max(fromCodePoint, 0);
+        if (firstCodePoint > toCodePoint || firstCodePoint >> ADDRESS_BITS_PER_WORD >= words.length) {
+            return;
+        }
+        applyRange(firstCodePoint, Math.min(toCodePoint, words.length * BITS_PER_WORD - 1), false);
+    }
+
+    /**
+     * Checks whether a character is in the set.
+     * @param codePoint The code point of the character to check.
+     * @return <code>true</code> if the character is in the set, <code>false</code> otherwise.
+     */
+    public boolean contains(int codePoint) {
+        int word = codePoint >> ADDRESS_BITS_PER_WORD;
+        return codePoint >= 0 && word < words.length && (words[word] & (1L << codePoint)) != 0;
+    }
+
+    /**
+     * Checks whether all the characters in the set fit in a single <code>char</code>.
+     * @return <code>true</code> if the set has no supplementary characters, <code>false</code> otherwise.
+     */
+    public boolean isBmpOnly() {
+        return nextCodePoint(Character.MIN_SUPPLEMENTARY_CODE_POINT) < 0;
+    }
+
+    /**
+     * Returns the number of characters in the set.
+     * @return The number of characters.
+     */
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the smallest code point in the set that is not smaller than a given value. Iterate over the set
+     * with <code>for (int c = set.nextCodePoint(0); c >= 0; c = set.nextCodePoint(c + 1))</code>.
+     * @param from The value to start searching from.
+     * @return The code point, or -1 if there is no such character.
+     */
+    public int nextCodePoint(int from) {
+        int word = from >> ADDRESS_BITS_PER_WORD;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (ALL_BITS << from);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return word * BITS_PER_WORD + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Returns the characters of the set that are not in another set.
+     * Applied in both directions, this gives the characters added to and removed from a set.
+     * @param other The other set.
+     * @return The code points in this set and not in the other set, in ascending order.
+     */
+    public int[] codePointsNotIn(CharSet other) {
+        CharSet difference = new CharSet(this);
+        for (int word = 0; word < Math.min(words.length, other.words.length); word++) {
+            difference.words[word] &= ~other.words[word];
+        }
+        return difference.toCodePointArray();
+    }
+
+    /**
+     * Returns the code points of the characters of the set.
+     * @return The code points, in ascending order.
+     */
+    public int[] toCodePointArray() {
+        int[] codePoints = new int[size()];
+        int i = 0;
+        for (int c = nextCodePoint(0); c >= 0; c = nextCodePoint(c + 1)) {
+            codePoints[i++] = c;
+        }
+        return codePoints;
+    }
+
+    /**
+     * Returns the characters of a set with no supplementary characters.
+     * @return The characters, in ascending order.
+     * @throws IllegalStateException If the set has supplementary characters, which do not fit in a
+     *                               <code>char</code>.
+     * @see #isBmpOnly()
+     */
+    public char[] toCharArray() {
+        if (!isBmpOnly()) {
+            throw new IllegalStateException(String.format(SUPPLEMENTARY_CHARACTERS, this));
+        }
+        char[] chars = new char[size()];
+        int i = 0;
+        for (int c = nextCodePoint(0); c >= 0; c = nextCodePoint(c + 1)) {
+            chars[i++] = (char) c;
+        }
+        return chars;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CharSet)) {
+            return false;
+        }
+        long[] otherWords = ((CharSet) other).words;
+        // Trailing empty words do not change the set.
+        int commonLength = Math.min(words.length, otherWords.length);
+        for (int word = 0; word < commonLength; word++) {
+            if (words[word] != otherWords[word]) {
+                return false;
+            }
+        }
+        long[] longerWords = (words.length > otherWords.length) ? words : otherWords;
+        for (int word = commonLength; word < longerWords.length; word++) {
+            if (longerWords[word] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Trailing empty words do not change the hash, so equal sets of different capacities hash alike.
+        int hash = 0;
+        int lastWord = words.length - 1;
+        while (lastWord >= 0 && words[lastWord] == 0) {
+            lastWord--;
+        }
+        for (int word = 0; word <= lastWord; word++) {
+            hash = hash * HASH_MULTIPLIER + Long.hashCode(words[word]);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the characters of the set in ascending order, separated by commas and spaces,
+     * in the same format as the standard collections.
+     * @return The string representation of the set.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(OPENING_BRACKET);
+        for (int c = nextCodePoint(0); c >= 0; c = nextCodePoint(c + 1)) {
+            if (builder.length() > OPENING_BRACKET.length()) {
+                builder.append(SEPARATOR);
+            }
+            builder.appendCodePoint(c);
+        }
+        return builder.append(CLOSING_BRACKET).toString();
+    }
+
+    /**
+     * Sets or clears the bits of a range of characters, a word at a time.
+     * @param fromCodePoint The first code point of the range (inclusive).
+     * @param toCodePoint The last code point of the range (inclusive). Must be within the capacity of the set.
+     * @param set Whether to set the bits, or to clear them.
+     */
+    private void applyRange(int fromCodePoint, int toCodePoint, boolean set) {
+        int firstWord = fromCodePoint >> ADDRESS_BITS_PER_WORD;
+        int lastWord = toCodePoint >> ADDRESS_BITS_PER_WORD;
+        for (int word = firstWord; word <= lastWord; word++) {
+            long mask = ALL_BITS;
+            if (word == firstWord) {
+                mask &= ALL_BITS << fromCodePoint;
+            }
+            if (word == lastWord) {
+                mask &= ALL_BITS >>> (BIT_INDEX_MASK - (toCodePoint & BIT_INDEX_MASK));
+            }
+            words[word] = set ? (words[word] | mask) : (words[word] & ~mask);
+        }
+    }
+
+    /**
+     * Grows the words array so it can hold a given code point.
+     * @param codePoint The code point.
+     */
+    private void ensureCapacity(int codePoint) {
+        int requiredWords = (codePoint >> ADDRESS_BITS_PER_WORD) + 1;
+        if (requiredWords > words.length) {
+            words = Arrays.copyOf(words, requiredWords);
+        }
+    }
+
+    /**
+     * Checks that a value is a valid Unicode code point.
+     * @param codePoint The value to check.
+     * @throws IllegalArgumentException If the value is not a valid code point.
+     */
+    private static void checkCodePoint(int codePoint) {
+        if (!Character.isValidCodePoint(codePoint)) {
+            throw new IllegalArgumentException(String.format(INVALID_CODE_POINT, codePoint));
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package image_char_matching;
+
+import java.util.Objects;
+
+/**
+ * The settings glyphs are rasterised with: the font, the side of the square raster in pixels, and whether
+ * the brightness of a glyph is measured by its antialiased coverage or by its binary pixels.
+ * <p>Binary pixels count every pixel the glyph touches as fully drawn, so the brightness of thin strokes
+ * depends on the raster resolution. Antialiased coverage counts the drawn fraction of each pixel, which
+ * is closer to how the glyph looks at any size.</p>
+ * <p>Rasters are immutable values, so rendered glyphs and matchers are cached by them.</p>
+ */
+public final class GlyphRaster {
+
+    /**
+     * The font glyphs are rasterised with by default.
+     */
+    public static final String DEFAULT_FONT_NAME = "Courier New";
+
+    /**
+     * The default raster, of binary pixels.
+     */
+    public static final GlyphRaster DEFAULT = new GlyphRaster(DEFAULT_FONT_NAME,
+                                                              CharConverter.DEFAULT_PIXEL_RESOLUTION, false);
+
+    private static final int MIN_PIXEL_RESOLUTION = 4;
+    private static final int MAX_PIXEL_RESOLUTION = 256;
+    private static final String INVALID_PIXEL_RESOLUTION = "The raster side must be between %d and %d " +
+                                                           "pixels, but was %d.";
+    private static final String FORMAT = "%s %dpx %s";
+    private static final String ANTIALIASED_NAME = "antialiased";
+    private static final String BINARY_NAME = "binary";
+
+    private final String fontName;
+    private final int pixelResolution;
+    private final boolean antialiased;
+
+    /**
+     * Creates a raster.
+     * @param fontName The name of the font family, or of a logical font such as <code>Monospaced</code>.
+     * @param pixelResolution The side of the square raster in pixels, which is also the font size.
+     * @param antialiased Whether to measure the brightness by antialiased coverage.
+     * @throws IllegalArgumentException If the raster side is out of bounds.
+     */
+    public GlyphRaster(String fontName, int pixelResolution, boolean antialiased) {
+        if (pixelResolution < MIN_PIXEL_RESOLUTION || pixelResolution > MAX_PIXEL_RESOLUTION) {
+            throw new IllegalArgumentException(String.format(INVALID_PIXEL_RESOLUTION, MIN_PIXEL_RESOLUTION,
+                                                             MAX_PIXEL_RESOLUTION, pixelResolution));
+        }
+        this.fontName = Objects.requireNonNull(fontName);
+        this.pixelResolution = pixelResolution;
+        this.antialiased = antialiased;
+    }
+
+    /**
+     * Returns the name of the font.
+     * @return The name of the font.
+     */
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * Returns the side of the square raster in pixels.
+     * @return The side of the raster.
+     */
+    public int getPixelResolution() {
+        return pixelResolution;
+    }
+
+    /**
+     * Returns whether the brightness is measured by antialiased coverage.
+     * @return <code>true</code> for antialiased coverage, <code>false</code> for binary pixels.
+     */
+    public boolean isAntialiased() {
+        return antialiased;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof GlyphRaster)) {
+            return false;
+        }
+        GlyphRaster raster = (GlyphRaster) other;
+        return pixelResolution == raster.pixelResolution && antialiased == raster.antialiased &&
+               fontName.equals(raster.fontName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fontName, pixelResolution, antialiased);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT, fontName, pixelResolution, antialiased ? ANTIALIASED_NAME : BINARY_NAME);
+    }
+
+}
@@ -0,0 +1,144 @@
+package image_char_matching;
+
+import image.BrightnessGrid;
+
+/**
+ * Responsible for matching an ASCII character to a sub-image by both its brightness and its shape.
+ * <p>Each character is described by an 8x8 bitmap of its rendered glyph, packed into a single
+ * <code>long</code>, and each sub-image is described by an 8x8 bitmap of its darker-than-average areas.
+ * The distance between the shapes is the number of differing bits, so characters such as
+ * <code>/</code>, <code>|</code> and <code>-</code> follow the edges in the image.</p>
+ * <p>All the descriptors are kept in flat primitive arrays, which are small enough to stay in the cache
+ * while they are searched.</p>
+ */
+public class ShapeCharMatcher {
+
+    /**
+     * The number of sub-image cells in a row of a shape descriptor.
+     */
+    public static final int DESCRIPTOR_SIDE = 8;
+
+    private static final int GLYPH_CELL_SIDE = CharConverter.DEFAULT_PIXEL_RESOLUTION / DESCRIPTOR_SIDE;
+    private static final int NUM_OF_DESCRIPTOR_CELLS = DESCRIPTOR_SIDE * DESCRIPTOR_SIDE;
+    private static final int NUM_OF_PIXELS_IN_CONVERTED_CHARACTER = CharConverter.DEFAULT_PIXEL_RESOLUTION *
+                                                                    CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    /*
+     The weight of the shape distance relative to the brightness distance, for a sub-image of full contrast.
+     The shape distance is scaled by the sub-image's contrast, so flat sub-images are matched by brightness.
+     */
+    private static final double SHAPE_WEIGHT = 4;
+
+    private final char[] chars;
+    private final long[] glyphDescriptors;
+    private final double[] glyphBrightness;
+
+    /**
+     * Constructor for the ShapeCharMatcher class.
+     * @param charSet The set of characters to be matched with sub-images.
+     */
+    public ShapeCharMatcher(char[] charSet) {
+        this.chars = charSet.clone();
+        this.glyphDescriptors = new long[charSet.length];
+        this.glyphBrightness = new double[charSet.length];
+        double minBrightness = Double.MAX_VALUE;
+        double maxBrightness = -Double.MAX_VALUE;
+        for (int i = 0; i < charSet.length; i++) {
+            boolean[][] convertedChar = CharConverter.convertToBoolArray(charSet[i]);
+            glyphDescriptors[i] = describeGlyph(convertedChar);
+            glyphBrightness[i] = countTrue(convertedChar) / (double) NUM_OF_PIXELS_IN_CONVERTED_CHARACTER;
+            minBrightness = Math.min(minBrightness, glyphBrightness[i]);
+            maxBrightness = Math.max(maxBrightness, glyphBrightness[i]);
+        }
+        // Normalize the brightness values, like SubImgCharMatcher does.
+        for (int i = 0; i < charSet.length; i++) {
+            glyphBrightness[i] = (glyphBrightness[i] - minBrightness) / (maxBrightness - minBrightness);
+        }
+    }
+
+    /**
+     * Returns the character whose brightness and shape are the closest to a sub-image.
+     * If there are multiple such characters, the character with the smallest value is returned.
+     * @param cellBrightness A brightness grid with {@link #DESCRIPTOR_SIDE} cells in each row and column
+     *                       of every sub-image.
+     * @param firstRow The row of the sub-image's top-left cell in the grid.
+     * @param firstCol The column of the sub-image's top-left cell in the grid.
+     * @return The closest character to the sub-image.
+     */
+    public char getCharBySubImageCells(BrightnessGrid cellBrightness, int firstRow, int firstCol) {
+        double[] cells = cellBrightness.getValues();
+        int numCols = cellBrightness.getNumCols();
+        double brightness = 0;
+        double minCell = Double.MAX_VALUE;
+        double maxCell = -Double.MAX_VALUE;
+        for (int y = 0; y < DESCRIPTOR_SIDE; y++) {
+            int cellRow = (firstRow + y) * numCols + firstCol;
+            for (int x = 0; x < DESCRIPTOR_SIDE; x++) {
+                double cell = cells[cellRow + x];
+                brightness += cell;
+                minCell = Math.min(minCell, cell);
+                maxCell = Math.max(maxCell, cell);
+            }
+        }
+        brightness /= NUM_OF_DESCRIPTOR_CELLS;
+
+        // Dark areas are where characters are drawn, just like darker characters have more drawn pixels.
+        long descriptor = 0;
+        for (int y = 0; y < DESCRIPTOR_SIDE; y++) {
+            int cellRow = (firstRow + y) * numCols + firstCol;
+            for (int x = 0; x < DESCRIPTOR_SIDE; x++) {
+                if (cells[cellRow + x] < brightness) {
+                    descriptor |= 1L << (y * DESCRIPTOR_SIDE + x);
+                }
+            }
+        }
+
+        double shapeFactor = SHAPE_WEIGHT * (maxCell - minCell) / NUM_OF_DESCRIPTOR_CELLS;
+        char closestChar = ' ';
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < chars.length; i++) {
+            double distance = Math.abs(glyphBrightness[i] - brightness) +
+                              shapeFactor * Long.bitCount(glyphDescriptors[i] ^ descriptor);
+            if (distance < minDistance || (distance == minDistance && chars[i] < closestChar)) {
+                minDistance = distance;
+                closestChar = chars[i];
+            }
+        }
+        return closestChar;
+    }
+
+    /**
+     * Packs a rendered glyph into an 8x8 bitmap, where a cell is set if any of its pixels is drawn.
+     * Drawn pixels are the <code>false</code> cells of the converted character.
+     * @param convertedChar The rendered glyph.
+     * @return The glyph's shape descriptor.
+     */
+    private static long describeGlyph(boolean[][] convertedChar) {
+        long descriptor = 0;
+        for (int y = 0; y < CharConverter.DEFAULT_PIXEL_RESOLUTION; y++) {
+            for (int x = 0; x < CharConverter.DEFAULT_PIXEL_RESOLUTION; x++) {
+                if (!convertedChar[y][x]) {
+                    descriptor |= 1L << ((y / GLYPH_CELL_SIDE) * DESCRIPTOR_SIDE + x / GLYPH_CELL_SIDE);
+                }
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Count the number of true cells in a given boolean matrix.
+     * @param boolArray The 2D array to count cells in.
+     * @return The number of true cells.
+     */
+    private static int countTrue(boolean[][] boolArray) {
+        int count = 0;
+        for (boolean[] booleans : boolArray) {
+            for (boolean aBoolean : booleans) {
+                if (aBoolean) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+}
@@ -1,59 +1,284 @@
 package image_char_matching;
 
 import ascii_art.RoundMethod;
+import image.BrightnessGrid;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
- * Responsible for matching an ASCII character to a sub-image with a given brightness.
+ * Responsible for matching a character to a sub-image with a given brightness.
  * <p>Will be used for the ASCII-Art algorithm to replace sub-images with characters.</p>
+ * <p>Any character that fits in a <code>char</code> can be matched, such as block elements, box drawing
+ * and braille characters. The distinct brightness values of the characters are kept in ascending order,
+ * so a sub-image is matched with a binary search, whose cost grows with the logarithm of the number of
+ * characters. The glyphs of a large character set, or of a fine raster, are rendered in parallel.</p>
+ * <p>The glyphs are rendered in a {@link GlyphRaster}, whose font, resolution and antialiasing can be
+ * chosen for each matcher, so the brightness ranking does not depend on the fonts a host happens to
+ * substitute.</p>
+ * <p>A matcher is an immutable snapshot of a character set, so it can be shared by any number of threads.
+ * The brightness of each glyph is computed once per raster and shared by all the matchers, and matchers are
+ * interned by their {@link CharSet} and raster, so every request with the same character set and raster
+ * shares a single matcher.
+ * Matchers of a character set with a few more or fewer characters are derived with
+ * {@link #withChars(char...)} and {@link #withoutChars(char...)}.</p>
+ * <p>Quantized brightness values, such as those of a {@link BrightnessGrid} of <code>short</code> values, are
+ * matched with a lookup table of a character per quantized value, created once per rounding method.
+ * The few quantized values whose range of brightness values matches more than one character are reported
+ * as ambiguous, so their exact brightness is matched instead.</p>
  */
 public class SubImgCharMatcher {
 
-    private static final int NUM_OF_PIXELS_IN_CONVERTED_CHARACTER = CharConverter.DEFAULT_PIXEL_RESOLUTION *
-                                                                    CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    // Glyphs with fewer pixels than this in total are rendered on the calling thread.
+    private static final int MIN_PARALLEL_GLYPH_PIXELS = 64 * CharConverter.DEFAULT_PIXEL_RESOLUTION *
+                                                         CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    /**
+     * Returned by {@link #getCharByQuantizedBrightness(int, RoundMethod)} when the exact brightness is needed.
+     */
+    public static final int AMBIGUOUS_MATCH = -1;
+
+    private static final char NO_MATCH = ' ';
+    private static final int NUM_OF_QUANTIZED_VALUES = BrightnessGrid.MAX_QUANTIZED + 1;
+    /*
+     The range of brightness values of a quantized value is widened by this margin on both sides, so it also
+     covers the rounding of float values and the rounding errors of the brightness computations.
+     */
+    private static final double QUANTIZATION_MARGIN = 1e-6;
+    private static final String SUPPLEMENTARY_CHARACTERS = "Only characters that fit in a char can be matched, " +
+                                                           "but the set %s has other characters.";
+
+    // The brightness of each glyph before normalization, by raster, shared by all the matchers.
+    private static final ConcurrentHashMap<GlyphRaster, ConcurrentHashMap<Character, Double>> glyphBrightness =
+            new ConcurrentHashMap<>();
+    // The matchers of all the character sets used so far, by raster and by the set of their characters.
+    private static final ConcurrentHashMap<GlyphRaster, ConcurrentHashMap<CharSet, SubImgCharMatcher>>
+            internedMatchers = new ConcurrentHashMap<>();
+
+    // The characters in ascending order, and the normalized brightness of each of them.
+    private final char[] chars;
+    private final double[] charBrightness;
+    private final CharSet charBits;
+    private final GlyphRaster raster;
+
+    /*
+     The distinct brightness values in ascending order, the smallest character of each of them,
+     and the smallest character of each value and all the values below it.
+     */
+    private final double[] levels;
+    private final char[] levelChars;
+    private final char[] levelPrefixMinChars;
 
-    private final HashMap<Character, Double> charSet;
+    /**
+     * The lookup table of the quantized brightness values for a rounding method.
+     * @param chars The character of each quantized value.
+     * @param ambiguousValues A bit for each quantized value, set if the value is ambiguous.
+     */
+    private record QuantizedTable(char[] chars, long[] ambiguousValues) {
+    }
 
-    private double maxBrightness;
-    private double minBrightness;
+    /*
+     The lookup table of each rounding method, created on first use. A table is only read through its final
+     fields, so a thread that sees another thread's table sees all of it, and at worst creates its own.
+     */
+    private final QuantizedTable[] quantizedTables = new QuantizedTable[RoundMethod.values().length];
 
     /**
      * Constructor for the SubImgCharMatcher class.
+     * Prefer {@link #of(char[])}, which shares the matcher with every other user of the same character set.
      * @param charSet The set of characters to be matched with sub-images.
      */
     public SubImgCharMatcher(char[] charSet) {
-        this.charSet = new HashMap<>();
-        for (char ch : charSet) {
-            // Initialize the character set with null brightness values.
-            this.charSet.put(ch, matchBrightness(ch));
+        this(new CharSet(charSet));
+    }
+
+    /**
+     * Constructor for the SubImgCharMatcher class.
+     * Prefer {@link #of(CharSet)}, which shares the matcher with every other user of the same character set.
+     * @param charSet The set of characters to be matched with sub-images. Copied, so it can be modified later.
+     * @throws IllegalArgumentException If the set has characters that do not fit in a <code>char</code>.
+     */
+    public SubImgCharMatcher(CharSet charSet) {
+        this(charSet, GlyphRaster.DEFAULT);
+    }
+
+    /**
+     * Constructor for the SubImgCharMatcher class.
+     * Prefer {@link #of(CharSet, GlyphRaster)}, which shares the matcher with every other user of the same
+     * character set and raster.
+     * @param charSet The set of characters to be matched with sub-images. Copied, so it can be modified later.
+     * @param raster The raster to render the glyphs in.
+     * @throws IllegalArgumentException If the set has characters that do not fit in a <code>char</code>.
+     */
+    public SubImgCharMatcher(CharSet charSet, GlyphRaster raster) {
+        if (!charSet.isBmpOnly()) {
+            throw new IllegalArgumentException(String.format(SUPPLEMENTARY_CHARACTERS, charSet));
+        }
+        this.charBits = new CharSet(charSet);
+        this.raster = raster;
+        this.chars = charSet.toCharArray();
+        this.charBrightness = new double[chars.length];
+        Map<Character, Double> rasterBrightness = renderMissingGlyphs(chars, raster);
+        for (int i = 0; i < chars.length; i++) {
+            charBrightness[i] = rasterBrightness.get(chars[i]);
         }
         this.normalizeBrightness();
+
+        // Sort the characters by brightness, and then by their value.
+        Integer[] order = new Integer[chars.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> (charBrightness[i] != charBrightness[j]) ?
+                Double.compare(charBrightness[i], charBrightness[j]) : Character.compare(chars[i], chars[j]));
+        double[] sortedLevels = new double[chars.length];
+        char[] sortedLevelChars = new char[chars.length];
+        int numOfLevels = 0;
+        for (int i : order) {
+            // A set whose characters are all equally bright has no valid normalized values, and matches none.
+            if (Double.isNaN(charBrightness[i])) {
+                continue;
+            }
+            if (numOfLevels == 0 || sortedLevels[numOfLevels - 1] != charBrightness[i]) {
+                sortedLevels[numOfLevels] = charBrightness[i];
+                sortedLevelChars[numOfLevels] = chars[i];
+                numOfLevels++;
+            }
+        }
+        this.levels = Arrays.copyOf(sortedLevels, numOfLevels);
+        this.levelChars = Arrays.copyOf(sortedLevelChars, numOfLevels);
+        this.levelPrefixMinChars = new char[numOfLevels];
+        for (int level = 0; level < numOfLevels; level++) {
+            levelPrefixMinChars[level] = (level == 0) ? levelChars[0] :
+                                         (char) Math.min(levelPrefixMinChars[level - 1], levelChars[level]);
+        }
+    }
+
+    /**
+     * Returns the shared matcher of a character set, creating it if no matcher of that set was created yet.
+     * @param charSet The set of characters to be matched with sub-images.
+     * @return The matcher of the character set.
+     */
+    public static SubImgCharMatcher of(char[] charSet) {
+        return of(new CharSet(charSet));
+    }
+
+    /**
+     * Returns the shared matcher of a character set, creating it if no matcher of that set was created yet.
+     * @param charSet The set of characters to be matched with sub-images. Not kept, so it can be modified later.
+     * @return The matcher of the character set.
+     */
+    public static SubImgCharMatcher of(CharSet charSet) {
+        return of(charSet, GlyphRaster.DEFAULT);
+    }
+
+    /**
+     * Returns the shared matcher of a character set in a raster, creating it if no matcher of that set and
+     * raster was created yet.
+     * @param charSet The set of characters to be matched with sub-images. Not kept, so it can be modified later.
+     * @param raster The raster to render the glyphs in.
+     * @return The matcher of the character set.
+     */
+    public static SubImgCharMatcher of(CharSet charSet, GlyphRaster raster) {
+        ConcurrentHashMap<CharSet, SubImgCharMatcher> rasterMatchers =
+                internedMatchers.computeIfAbsent(raster, key -> new ConcurrentHashMap<>());
+        SubImgCharMatcher matcher = rasterMatchers.get(charSet);
+        if (matcher != null) {
+            return matcher;
+        }
+        // The key is copied, since the given set may be modified after the matcher is interned.
+        return rasterMatchers.computeIfAbsent(new CharSet(charSet), key -> new SubImgCharMatcher(key, raster));
+    }
+
+    /**
+     * Returns the characters of the matcher.
+     * @return A copy of the characters, in ascending order.
+     */
+    public char[] getChars() {
+        return chars.clone();
+    }
+
+    /**
+     * Returns the raster the glyphs of the matcher were rendered in.
+     * @return The raster.
+     */
+    public GlyphRaster getRaster() {
+        return raster;
+    }
+
+    /**
+     * Returns the set of characters of the matcher.
+     * @return A copy of the character set.
+     */
+    public CharSet getCharSet() {
+        return new CharSet(charBits);
+    }
+
+    /**
+     * Returns the shared matcher of this character set with some more characters.
+     * This matcher is not changed.
+     * @param added The characters to add. Characters already in the set are ignored.
+     * @return The matcher of the larger character set.
+     */
+    public SubImgCharMatcher withChars(char... added) {
+        CharSet derivedBits = new CharSet(charBits);
+        for (char c : added) {
+            derivedBits.add(c);
+        }
+        return derivedBits.equals(charBits) ? this : of(derivedBits, raster);
+    }
+
+    /**
+     * Returns the shared matcher of this character set without some of its characters.
+     * This matcher is not changed.
+     * @param removed The characters to remove. Characters not in the set are ignored.
+     * @return The matcher of the smaller character set.
+     */
+    public SubImgCharMatcher withoutChars(char... removed) {
+        CharSet derivedBits = new CharSet(charBits);
+        for (char c : removed) {
+            derivedBits.remove(c);
+        }
+        return derivedBits.equals(charBits) ? this : of(derivedBits, raster);
     }
 
     /**
      * Returns the character with the closest brightness value (in absolute value) to the given brightness.
      * If there are multiple characters with the same brightness,
-     * the character with the smallest ASCII value is returned.
+     * the character with the smallest value is returned.
      * @param brightness The brightness value to be matched with a character.
      * @return The character with the closest brightness value to the given brightness.
      */
     public char getCharByImageBrightness(double brightness) {
-        char closestChar = ' ';
-        // Set up variable to check the difference between two brightness values.
+        char closestChar = NO_MATCH;
+        if (Double.isNaN(brightness)) {
+            return closestChar;
+        }
         double minDiff = Double.MAX_VALUE;
-        // For each char in the set, check its difference from the desired brightness value.
-        for (char ch : this.charSet.keySet()) {
-            double diff = Math.abs(this.charSet.get(ch) - brightness);
-            if (diff < minDiff) {
+        /*
+         The difference grows as the values get farther from the given brightness on either side,
+         so only the values next to it are checked, until the difference grows beyond the smallest one.
+         */
+        int firstAbove = findFirstLevelAtLeast(brightness);
+        for (int level = firstAbove - 1; level >= 0; level--) {
+            double diff = Math.abs(levels[level] - brightness);
+            if (diff > minDiff) {
+                break;
+            }
+            if (diff < minDiff || levelChars[level] < closestChar) {
                 minDiff = diff;
-                closestChar = ch;
-            } else if (diff == minDiff) {
-                /*
-                 If there are multiple characters with the same brightness,
-                 the character with the smallest ASCII value is returned.
-                 */
-                closestChar = (ch < closestChar) ? ch : closestChar;
+                closestChar = levelChars[level];
+            }
+        }
+        for (int level = firstAbove; level < levels.length; level++) {
+            double diff = Math.abs(levels[level] - brightness);
+            if (diff > minDiff) {
+                break;
+            }
+            if (diff < minDiff || levelChars[level] < closestChar) {
+                minDiff = diff;
+                closestChar = levelChars[level];
             }
         }
         return closestChar;
@@ -62,7 +287,7 @@ public class SubImgCharMatcher {
     /**
      * Returns the character with the closest brightness value (in ceiling or floor) to the given brightness.
      * <p>If there are multiple characters with the same brightness,
-     * the character with the smallest ASCII value is returned.</p>
+     * the character with the smallest value is returned.</p>
      * @param brightness The brightness value to be matched with a character.
      * @param roundMethod The rounding method to be used.
      * @return The character with the closest brightness value to the given brightness.
@@ -71,109 +296,243 @@ public class SubImgCharMatcher {
         if (roundMethod == RoundMethod.ABSOLUTE) {
             return getCharByImageBrightness(brightness);
         }
-        char closestChar = ' ';
-        // Set up variable to check the difference between two brightness values.
-        double minDiff = Double.MAX_VALUE;
-        // For each char in the set, check its difference from the desired brightness value.
-        for (char ch : this.charSet.keySet()) {
-            double diff;
-            if (roundMethod == RoundMethod.UP) {
-                diff = Math.ceil(this.charSet.get(ch) - brightness);
+        if (levels.length == 0) {
+            return NO_MATCH;
+        }
+        /*
+         The rounded difference never decreases as the values grow, so it is smallest for the darkest
+         characters, and the characters with the smallest difference are the levels up to the last one
+         with the same rounded difference as the first.
+         */
+        double minDiff = roundDiff(levels[0], brightness, roundMethod);
+        if (!(minDiff < Double.MAX_VALUE)) { // No difference is small enough, or the brightness is NaN.
+            return NO_MATCH;
+        }
+        int low = 0;
+        int high = levels.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (roundDiff(levels[middle], brightness, roundMethod) <= minDiff) {
+                low = middle;
             } else {
-                diff = Math.floor(this.charSet.get(ch) - brightness);
+                high = middle - 1;
             }
-            if (diff < minDiff) {
-                minDiff = diff;
-                closestChar = ch;
-            } else if (diff == minDiff) {
-                /*
-                 If there are multiple characters with the same brightness,
-                 the character with the smallest ASCII value is returned.
-                 */
-                closestChar = (ch < closestChar) ? ch : closestChar;
+        }
+        return levelPrefixMinChars[low];
+    }
+
+    /**
+     * Returns the character of a quantized brightness value, as {@link #getCharByImageBrightness(double,
+     * RoundMethod)} matches every brightness value that quantizes to it, with a single table lookup.
+     * @param quantizedBrightness The brightness value quantized by {@link BrightnessGrid#quantize(double)}.
+     * @param roundMethod The rounding method to be used.
+     * @return The character, or {@link #AMBIGUOUS_MATCH} if the brightness values that quantize to the given
+     * value do not all match the same character, or if the value is out of range.
+     */
+    public int getCharByQuantizedBrightness(int quantizedBrightness, RoundMethod roundMethod) {
+        if (quantizedBrightness < 0 || quantizedBrightness > BrightnessGrid.MAX_QUANTIZED) {
+            return AMBIGUOUS_MATCH;
+        }
+        QuantizedTable table = quantizedTables[roundMethod.ordinal()];
+        if (table == null) {
+            table = createQuantizedTable(roundMethod);
+            quantizedTables[roundMethod.ordinal()] = table;
+        }
+        if ((table.ambiguousValues()[quantizedBrightness / Long.SIZE] & (1L << quantizedBrightness)) != 0) {
+            return AMBIGUOUS_MATCH;
+        }
+        return table.chars()[quantizedBrightness];
+    }
+
+    /**
+     * Returns the normalized brightness value of a character in the character set.
+     * @param c A character in the character set.
+     * @return The normalized brightness value of the character.
+     */
+    public double getCharBrightness(char c) {
+        return charBrightness[Arrays.binarySearch(chars, c)];
+    }
+
+    /**
+     * Returns the number of characters in the character set.
+     * @return The number of characters.
+     */
+    public int getCharCount() {
+        return chars.length;
+    }
+
+    /**
+     * Finds the first distinct brightness value that is not smaller than the given brightness.
+     * @param brightness The brightness value.
+     * @return The index of the value, or the number of values if all of them are smaller.
+     */
+    private int findFirstLevelAtLeast(double brightness) {
+        int low = 0;
+        int high = levels.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (levels[middle] < brightness) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
-        return closestChar;
+        return low;
     }
 
     /**
-     * Adds a character to the character set.
-     * @param c The character to add.
+     * Creates the lookup table of the quantized brightness values for a rounding method.
+     * <p>The character of a brightness value only changes at a few breakpoints: the midpoints between
+     * adjacent levels when rounding by absolute value, and the points whose difference from a level is an
+     * integer when rounding up or down. Each quantized value is matched by its center, and is ambiguous if
+     * a breakpoint falls inside its widened range of brightness values, or an end of the range that
+     * quantizes to it matches another character.</p>
+     * @param roundMethod The rounding method.
+     * @return The lookup table.
      */
-    public void addChar(char c) {
-        double brightness = matchBrightness(c);
-        /*
-         If the brightness is larger/smaller than the current min/max brightness,
-         we need to normalize each character's brightness value in the set.
-         */
-        if (brightness < this.minBrightness || brightness > this.maxBrightness) {
-            this.charSet.put(c, brightness);
-            this.normalizeBrightness();
-        } else {
-            double normalizedBrightness = (brightness - this.minBrightness) /
-                                          (this.maxBrightness - this.minBrightness);
-            this.charSet.put(c, normalizedBrightness);
+    private QuantizedTable createQuantizedTable(RoundMethod roundMethod) {
+        double[] breakpoints = findBreakpoints(roundMethod);
+        char[] tableChars = new char[NUM_OF_QUANTIZED_VALUES];
+        long[] ambiguousValues = new long[NUM_OF_QUANTIZED_VALUES / Long.SIZE];
+        tableChars[BrightnessGrid.QUANTIZED_ONE] = getCharByImageBrightness(1, roundMethod);
+        for (int value = 0; value < NUM_OF_QUANTIZED_VALUES; value++) {
+            if (value == BrightnessGrid.QUANTIZED_ONE) { // Only 1 itself.
+                continue;
+            }
+            /*
+             The values next to 0 and 1 also hold the values rounded towards them, up to the excluded 0 or 1,
+             0 holds the values below 0 and the last value holds the values above 1, both through rounding
+             errors.
+             */
+            double low = (value - 0.5) / BrightnessGrid.QUANTIZED_ONE - QUANTIZATION_MARGIN;
+            double high = (value + 0.5) / BrightnessGrid.QUANTIZED_ONE + QUANTIZATION_MARGIN;
+            boolean lowIncluded = value != 1 && value != BrightnessGrid.MAX_QUANTIZED;
+            boolean highIncluded = value != BrightnessGrid.QUANTIZED_ONE - 1;
+            if (value == 0) {
+                low = -BrightnessGrid.MAX_OVERSHOOT - QUANTIZATION_MARGIN;
+                high = 0;
+            } else if (value == 1) {
+                low = 0;
+            } else if (value == BrightnessGrid.QUANTIZED_ONE - 1) {
+                high = 1;
+            } else if (value == BrightnessGrid.MAX_QUANTIZED) {
+                low = 1;
+                high = 1 + BrightnessGrid.MAX_OVERSHOOT + QUANTIZATION_MARGIN;
+            }
+            char center = getCharByImageBrightness((low + high) / 2, roundMethod);
+            tableChars[value] = center;
+            if (findFirstAbove(breakpoints, low) < findFirstAbove(breakpoints, Math.nextDown(high)) ||
+                (lowIncluded && getCharByImageBrightness(low, roundMethod) != center) ||
+                (highIncluded && getCharByImageBrightness(high, roundMethod) != center)) {
+                ambiguousValues[value / Long.SIZE] |= 1L << value;
+            }
         }
+        return new QuantizedTable(tableChars, ambiguousValues);
     }
 
     /**
-     * Removes a character from the character set if it is in the set.
-     * @param c The character to remove.
+     * Finds the brightness values at which the matched character may change.
+     * @param roundMethod The rounding method.
+     * @return The breakpoints, in ascending order.
      */
-    public void removeChar(char c) {
-        double brightness = charSet.get(c);
-        this.charSet.remove(c);
+    private double[] findBreakpoints(RoundMethod roundMethod) {
+        if (roundMethod == RoundMethod.ABSOLUTE) {
+            double[] midpoints = new double[Math.max(0, levels.length - 1)];
+            for (int level = 0; level < midpoints.length; level++) {
+                midpoints[level] = (levels[level] + levels[level + 1]) / 2;
+            }
+            return midpoints;
+        }
         /*
-         If the brightness is larger/smaller than the current min/max brightness,
-         we need to normalize each character's brightness value in the set.
+         The rounded difference from a level changes where the difference is an integer, and both the levels
+         and the brightness values are in [0, 1], so only the integers from -1 to 1 matter.
          */
-        if (brightness < this.minBrightness || brightness > this.maxBrightness) {
-            this.normalizeBrightness();
+        double[] breakpoints = new double[levels.length * 3];
+        for (int level = 0; level < levels.length; level++) {
+            breakpoints[level * 3] = levels[level] - 1;
+            breakpoints[level * 3 + 1] = levels[level];
+            breakpoints[level * 3 + 2] = levels[level] + 1;
         }
+        Arrays.sort(breakpoints);
+        return breakpoints;
     }
 
     /**
-     * Count the number of true cells in a given boolean matrix.
-     * @param boolArray The 2D array to count cells in.
-     * @return The number of true cells.
+     * Finds the first value in a sorted array that is greater than the given value.
+     * @param sortedValues The values, in ascending order.
+     * @param value The value.
+     * @return The index of the first greater value, or the number of values if none of them is greater.
      */
-    private static int countTrue(boolean[][] boolArray) {
-        int count = 0;
-        for (boolean[] booleans : boolArray) {
-            for (boolean aBoolean : booleans) {
-                if (aBoolean) {
-                    count++;
-                }
+    private static int findFirstAbove(double[] sortedValues, double value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
-        return count;
+        return low;
+    }
+
+    /**
+     * Rounds the difference between a character's brightness and a sub-image's brightness.
+     * @param charBrightness The normalized brightness of the character.
+     * @param brightness The brightness of the sub-image.
+     * @param roundMethod The rounding method, up or down.
+     * @return The rounded difference.
+     */
+    private static double roundDiff(double charBrightness, double brightness, RoundMethod roundMethod) {
+        return (roundMethod == RoundMethod.UP) ? Math.ceil(charBrightness - brightness) :
+               Math.floor(charBrightness - brightness);
+    }
+
+    /**
+     * Renders the glyphs whose brightness in a raster was not computed yet, in parallel if there are many
+     * pixels to render.
+     * @param chars The characters whose glyphs are needed.
+     * @param raster The raster to render the glyphs in.
+     * @return The brightness of each glyph rendered in the raster so far, including all the given ones.
+     */
+    private static Map<Character, Double> renderMissingGlyphs(char[] chars, GlyphRaster raster) {
+        ConcurrentHashMap<Character, Double> rasterBrightness =
+                glyphBrightness.computeIfAbsent(raster, key -> new ConcurrentHashMap<>());
+        int[] missingChars = IntStream.range(0, chars.length).map(i -> chars[i])
+                                      .filter(c -> !rasterBrightness.containsKey((char) c)).toArray();
+        IntStream glyphs = Arrays.stream(missingChars);
+        long numOfPixels = (long) missingChars.length * raster.getPixelResolution() * raster.getPixelResolution();
+        if (numOfPixels >= MIN_PARALLEL_GLYPH_PIXELS) {
+            glyphs = glyphs.parallel();
+        }
+        glyphs.forEach(c -> rasterBrightness.computeIfAbsent((char) c, key -> matchBrightness(key, raster)));
+        return rasterBrightness;
     }
 
     /**
      * Calculates the given character's brightness value.
      * @param c The character to match brightness to.
+     * @param raster The raster to render the character in.
      * @return The brightness value of the character.
      */
-    private static double matchBrightness(char c) {
-        boolean[][] convertedChar = CharConverter.convertToBoolArray(c);
-        int numTrue = countTrue(convertedChar);
+    private static double matchBrightness(char c, GlyphRaster raster) {
         /*
-        The brightness value for each character is the number of true cells in its matrix representation
-        divided by the total number of pixels in its matrix representation.
+        The brightness value for each character is the black fraction of its raster: the number of black
+        pixels divided by the total number of pixels, where antialiased pixels count by their coverage.
         */
-        return numTrue / (double) NUM_OF_PIXELS_IN_CONVERTED_CHARACTER;
+        return CharConverter.measureBlackFraction(c, raster);
     }
 
     /**
-     * Normalizes the brightness values in a given character set.
+     * Normalizes the brightness values of the characters, so the darkest is 0 and the brightest is 1.
      * Called only when all the characters in the set have an assigned brightness value.
      */
     private void normalizeBrightness() {
         // Calculate the min and max brightness values in the given set.
         double maxBrightness = Double.MIN_VALUE;
         double minBrightness = Double.MAX_VALUE;
-        for (char c : charSet.keySet()) {
-            double currentBrightness = charSet.get(c);
+        for (double currentBrightness : charBrightness) {
             if (currentBrightness > maxBrightness) {
                 maxBrightness = currentBrightness;
             }
@@ -182,14 +541,9 @@ public class SubImgCharMatcher {
             }
         }
 
-        this.maxBrightness = maxBrightness;
-        this.minBrightness = minBrightness;
-
         // Normalize each character according to the min and max brightness.
-        for (char c : charSet.keySet()) {
-            double newBrightness = (charSet.get(c) - minBrightness) / (maxBrightness - minBrightness);
-            // Because c is already a key in charSet, this will update its value
-            charSet.put(c, newBrightness);
+        for (int i = 0; i < charBrightness.length; i++) {
+            charBrightness[i] = (charBrightness[i] - minBrightness) / (maxBrightness - minBrightness);
         }
     }
 
@@ -0,0 +1,175 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A pool of flat primitive arrays, keyed by their length, so the large grids of a render are leased from
+ * the previous renders instead of being allocated for every render.
+ * <p>Renders of the same resolution lease arrays of the same lengths over and over, so a few arrays of each
+ * length are kept once they are released. The pool keeps at most {@link #MAX_POOLED_BYTES} bytes of
+ * released arrays, and any array released over that limit is left to the garbage collector.</p>
+ * <p>All the methods are thread-safe, so arrays can be leased and released by different threads.
+ * An array must be released at most once, and must not be used by its releaser anymore.</p>
+ */
+public final class BufferPool {
+
+    /**
+     * The maximal total size of the released arrays kept by the pool.
+     */
+    public static final long MAX_POOLED_BYTES = 64L << 20;
+
+    private static final int MAX_POOLED_ARRAYS_PER_LENGTH = 4;
+
+    private static final HashMap<Integer, ArrayDeque<char[]>> pooledChars = new HashMap<>();
+    private static final HashMap<Integer, ArrayDeque<double[]>> pooledDoubles = new HashMap<>();
+    private static final HashMap<Integer, ArrayDeque<float[]>> pooledFloats = new HashMap<>();
+    private static final HashMap<Integer, ArrayDeque<short[]>> pooledShorts = new HashMap<>();
+    private static long pooledBytes;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BufferPool() {}
+
+    /**
+     * Leases a <code>char</code> array. Its contents are unspecified, so it must be filled before it is read.
+     * @param length The length of the array.
+     * @return An array of the given length.
+     */
+    public static char[] leaseChars(int length) {
+        synchronized (BufferPool.class) {
+            char[] chars = poll(pooledChars, length);
+            if (chars != null) {
+                pooledBytes -= (long) length * Character.BYTES;
+                return chars;
+            }
+        }
+        return new char[length];
+    }
+
+    /**
+     * Leases a <code>double</code> array filled with zeros.
+     * @param length The length of the array.
+     * @return An array of the given length.
+     */
+    public static double[] leaseDoubles(int length) {
+        double[] doubles;
+        synchronized (BufferPool.class) {
+            doubles = poll(pooledDoubles, length);
+            if (doubles == null) {
+                return new double[length];
+            }
+            pooledBytes -= (long) length * Double.BYTES;
+        }
+        Arrays.fill(doubles, 0); // Outside the lock, so other threads do not wait for it.
+        return doubles;
+    }
+
+    /**
+     * Leases a <code>float</code> array. Its contents are unspecified, so it must be filled before it is read.
+     * @param length The length of the array.
+     * @return An array of the given length.
+     */
+    public static float[] leaseFloats(int length) {
+        synchronized (BufferPool.class) {
+            float[] floats = poll(pooledFloats, length);
+            if (floats != null) {
+                pooledBytes -= (long) length * Float.BYTES;
+                return floats;
+            }
+        }
+        return new float[length];
+    }
+
+    /**
+     * Leases a <code>short</code> array. Its contents are unspecified, so it must be filled before it is read.
+     * @param length The length of the array.
+     * @return An array of the given length.
+     */
+    public static short[] leaseShorts(int length) {
+        synchronized (BufferPool.class) {
+            short[] shorts = poll(pooledShorts, length);
+            if (shorts != null) {
+                pooledBytes -= (long) length * Short.BYTES;
+                return shorts;
+            }
+        }
+        return new short[length];
+    }
+
+    /**
+     * Returns a leased <code>char</code> array to the pool.
+     * @param chars The array, which is not used by the caller anymore.
+     */
+    public static synchronized void release(char[] chars) {
+        if (offer(pooledChars, chars.length, chars, (long) chars.length * Character.BYTES)) {
+            pooledBytes += (long) chars.length * Character.BYTES;
+        }
+    }
+
+    /**
+     * Returns a leased <code>double</code> array to the pool.
+     * @param doubles The array, which is not used by the caller anymore.
+     */
+    public static synchronized void release(double[] doubles) {
+        if (offer(pooledDoubles, doubles.length, doubles, (long) doubles.length * Double.BYTES)) {
+            pooledBytes += (long) doubles.length * Double.BYTES;
+        }
+    }
+
+    /**
+     * Returns a leased <code>float</code> array to the pool.
+     * @param floats The array, which is not used by the caller anymore.
+     */
+    public static synchronized void release(float[] floats) {
+        if (offer(pooledFloats, floats.length, floats, (long) floats.length * Float.BYTES)) {
+            pooledBytes += (long) floats.length * Float.BYTES;
+        }
+    }
+
+    /**
+     * Returns a leased <code>short</code> array to the pool.
+     * @param shorts The array, which is not used by the caller anymore.
+     */
+    public static synchronized void release(short[] shorts) {
+        if (offer(pooledShorts, shorts.length, shorts, (long) shorts.length * Short.BYTES)) {
+            pooledBytes += (long) shorts.length * Short.BYTES;
+        }
+    }
+
+    /**
+     * Takes a released array of the given length, if there is one.
+     * @param pool The released arrays of the array type, by length.
+     * @param length The length of the array.
+     * @return The array, or <code>null</code> if no array of that length was released.
+     * @param <T> The array type.
+     */
+    private static <T> T poll(HashMap<Integer, ArrayDeque<T>> pool, int length) {
+        ArrayDeque<T> arrays = pool.get(length);
+        return (arrays == null) ? null : arrays.pollLast();
+    }
+
+    /**
+     * Keeps a released array, unless the pool is full.
+     * @param pool The released arrays of the array type, by length.
+     * @param length The length of the array.
+     * @param array The array.
+     * @param bytes The size of the array.
+     * @return <code>true</code> if the array was kept, <code>false</code> otherwise.
+     * @param <T> The array type.
+     */
+    private static <T> boolean offer(HashMap<Integer, ArrayDeque<T>> pool, int length, T array, long bytes) {
+        if (pooledBytes + bytes > MAX_POOLED_BYTES) {
+            return false;
+        }
+        ArrayDeque<T> arrays = pool.computeIfAbsent(length, key -> new ArrayDeque<>());
+        if (arrays.size() >= MAX_POOLED_ARRAYS_PER_LENGTH) {
+            return false;
+        }
+        arrays.addLast(array);
+        return true;
+    }
+
+}
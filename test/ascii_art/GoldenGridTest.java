@@ -0,0 +1,410 @@
+package ascii_art;
+
+import ascii_output.AsciiRowOutput;
+import image.BrightnessPrecision;
+import image_char_matching.CharSet;
+import image_char_matching.GlyphRaster;
+
+import javax.imageio.ImageIO;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regression test of the characters {@link AsciiArtAlgorithm#run()} matches, against golden grids stored in
+ * <code>test/resources/golden</code>.
+ * <p>A colored gradient and a checkerboard are rendered at every resolution from 1 to their width, and the
+ * bundled <code>cat.jpeg</code> at every power-of-two resolution up to 128 and at a resolution of exact tiles,
+ * with every {@link RoundMethod} and with the digits, lowercase and printable ASCII character sets. The
+ * checkerboard has tiles of equal brightness, so the tie-break of equally bright characters is covered too.</p>
+ * <p>Every path that must match exactly the same characters as the reference run is compared with the same
+ * golden grids: streamed rows, narrowed brightness precisions, the brightness pyramid and the speculative
+ * computation of adjacent resolutions.</p>
+ * <p>Run from the project root, where the shell also runs from:</p>
+ * <pre>
+ * javac -encoding UTF-8 --add-modules jdk.incubator.vector -d bin $(find src test -name "*.java")
+ * java -cp bin ascii_art.GoldenGridTest [--update]
+ * </pre>
+ * <p>Run it with <code>java --add-modules jdk.incubator.vector</code> as well, to compare the grids of the
+ * Vector API grey conversion.</p>
+ * <p>With <code>--update</code>, the golden grids are rendered again by the reference run instead of compared.
+ * The brightness of the glyphs depends on the font they are rendered in, so each golden file records the font
+ * face of the default glyph raster, and files rendered in another face are skipped.</p>
+ */
+public class GoldenGridTest {
+
+    private static final String GOLDEN_DIR = "test/resources/golden";
+    private static final String GOLDEN_FILE_FORMAT = "%s_%s.txt";
+    private static final String CAT_IMAGE_PATH = "Example Image/cat.jpeg";
+    private static final String UPDATE_FLAG = "--update";
+    private static final String RASTER_HEADER_FORMAT = "# glyphs: %s rendered with %s";
+    private static final String GRID_HEADER_FORMAT = "round %s res %d";
+    private static final String ROW_DELIMITER = "|";
+    private static final String IMAGE_FORMAT = "png";
+
+    private static final int SYNTHETIC_WIDTH = 32;
+    private static final int SYNTHETIC_HEIGHT = 24;
+    private static final int CHECKER_SIDE = 4;
+    private static final int MAX_COLOR_VALUE = 255;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int BLACK = 0x000000;
+    private static final int WHITE = 0xFFFFFF;
+    private static final int MAX_CAT_RESOLUTION = 128;
+    private static final int CAT_EXACT_RESOLUTION = 100;
+
+    /**
+     * An image the grids are rendered from.
+     * @param name The name of the image, which names its golden files.
+     * @param path The path of the image file.
+     * @param resolutions The resolutions to render, in increasing order.
+     */
+    private record TestImage(String name, String path, int[] resolutions) {
+    }
+
+    /**
+     * A character set the grids are rendered with.
+     * @param name The name of the set, which names its golden files.
+     * @param charSet The characters.
+     */
+    private record CharsetPreset(String name, CharSet charSet) {
+    }
+
+    /**
+     * A way to run the algorithm that must match exactly the same characters as the reference run.
+     * @param name The name of the variant, as reported.
+     * @param settings The settings of the variant, apart from the rounding method.
+     * @param streamed Whether the rows are streamed to an output instead of returned.
+     */
+    private record Variant(String name, RenderSettings settings, boolean streamed) {
+    }
+
+    /**
+     * The grids of a golden file.
+     * @param rasterHeader The header naming the glyph raster and font face the grids were rendered with.
+     * @param grids The grids by their headers.
+     */
+    private record GoldenFile(String rasterHeader, Map<String, char[][]> grids) {
+    }
+
+    /**
+     * Collects streamed rows into a grid.
+     */
+    private static class GridCollector implements AsciiRowOutput {
+
+        private char[][] grid;
+
+        @Override
+        public void begin(int rows, int cols) {
+            grid = new char[rows][];
+        }
+
+        @Override
+        public void row(int index, char[] buffer, int len) {
+            grid[index] = Arrays.copyOf(buffer, len);
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private static final Variant REFERENCE = new Variant("reference", RenderSettings.DEFAULT, false);
+    private static final Variant[] VARIANTS = {
+            REFERENCE,
+            new Variant("streamed", RenderSettings.DEFAULT, true),
+            new Variant("float", RenderSettings.DEFAULT.withBrightnessPrecision(BrightnessPrecision.FLOAT),
+                        false),
+            new Variant("short-streamed",
+                        RenderSettings.DEFAULT.withBrightnessPrecision(BrightnessPrecision.SHORT), true),
+            new Variant("pyramid", RenderSettings.DEFAULT.withPyramidEnabled(true), false),
+            new Variant("prefetch", RenderSettings.DEFAULT.withSpeculationEnabled(true), false)
+    };
+
+    /**
+     * Private constructor, since this class only has a main method.
+     */
+    private GoldenGridTest() {
+    }
+
+    /**
+     * Compares the grids of every image, character set, rounding method, resolution and variant with their
+     * golden grids, or renders the golden grids again.
+     * @param args <code>--update</code> to render the golden grids again, or nothing to compare with them.
+     * @throws IOException If an image or a golden file can not be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean update = args.length > 0 && args[0].equals(UPDATE_FLAG);
+        Path imageDir = Files.createTempDirectory("golden-images");
+        imageDir.toFile().deleteOnExit(); // Deleted after the images, which are registered later.
+        List<TestImage> images = List.of(
+                new TestImage("gradient", writeImage(imageDir, "gradient", createGradient()),
+                              resolutionsUpTo(SYNTHETIC_WIDTH)),
+                new TestImage("checkerboard", writeImage(imageDir, "checkerboard", createCheckerboard()),
+                              resolutionsUpTo(SYNTHETIC_WIDTH)),
+                new TestImage("cat", CAT_IMAGE_PATH, catResolutions()));
+        List<CharsetPreset> charsets = List.of(
+                new CharsetPreset("digits", charRange('0', '9')),
+                new CharsetPreset("lowercase", charRange('a', 'z')),
+                new CharsetPreset("ascii", charRange(' ', '~')));
+        String rasterHeader = String.format(RASTER_HEADER_FORMAT, GlyphRaster.DEFAULT, getDefaultFontFace());
+
+        int compared = 0;
+        int failures = 0;
+        for (TestImage image : images) {
+            for (CharsetPreset charset : charsets) {
+                Path goldenPath = Path.of(GOLDEN_DIR, String.format(GOLDEN_FILE_FORMAT, image.name(),
+                                                                    charset.name()));
+                if (update) {
+                    writeGoldenFile(goldenPath, rasterHeader, image, charset);
+                    System.out.println("Updated " + goldenPath);
+                    continue;
+                }
+                GoldenFile golden = readGoldenFile(goldenPath);
+                if (!golden.rasterHeader().equals(rasterHeader)) {
+                    System.out.println("SKIP " + goldenPath + ": " + golden.rasterHeader());
+                    continue;
+                }
+                for (Variant variant : VARIANTS) {
+                    for (RoundMethod roundMethod : RoundMethod.values()) {
+                        for (int resolution : image.resolutions()) {
+                            String gridHeader = gridHeader(roundMethod, resolution);
+                            char[][] grid = render(image, charset.charSet(), resolution,
+                                                   variant.settings().withRoundMethod(roundMethod),
+                                                   variant.streamed());
+                            String mismatch = describeMismatch(golden.grids().get(gridHeader), grid);
+                            compared++;
+                            if (mismatch != null) {
+                                failures++;
+                                System.out.printf("FAIL %s %s %s %s: %s%n", image.name(), charset.name(),
+                                                  variant.name(), gridHeader, mismatch);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (!update) {
+            System.out.printf("%d grids compared, %d failed.%n", compared, failures);
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Renders a grid, the same way the shell does.
+     * @param image The image.
+     * @param charSet The characters.
+     * @param resolution The resolution.
+     * @param settings The settings.
+     * @param streamed Whether to stream the rows to an output instead of returning them.
+     * @return The grid.
+     * @throws IOException If the image can not be read.
+     */
+    private static char[][] render(TestImage image, CharSet charSet, int resolution, RenderSettings settings,
+                                   boolean streamed) throws IOException {
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image.path(), charSet, resolution, settings);
+        char[][] grid;
+        if (streamed) {
+            GridCollector collector = new GridCollector();
+            algorithm.run(collector);
+            grid = collector.grid;
+        } else {
+            grid = algorithm.run();
+        }
+        int[] resolutions = image.resolutions();
+        algorithm.speculateAdjacentResolutions(resolutions[0], resolutions[resolutions.length - 1]);
+        return grid;
+    }
+
+    /**
+     * Describes the first difference between a golden grid and a rendered grid.
+     * @param golden The golden grid, or <code>null</code> if there is none.
+     * @param grid The rendered grid.
+     * @return A description of the first difference, or <code>null</code> if the grids are equal.
+     */
+    private static String describeMismatch(char[][] golden, char[][] grid) {
+        if (golden == null) {
+            return "no golden grid";
+        }
+        if (golden.length != grid.length || golden[0].length != grid[0].length) {
+            return String.format("size %dx%d, expected %dx%d", grid[0].length, grid.length, golden[0].length,
+                                 golden.length);
+        }
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < grid[row].length; col++) {
+                if (grid[row][col] != golden[row][col]) {
+                    return String.format("'%c' at row %d, column %d, expected '%c'", grid[row][col], row, col,
+                                         golden[row][col]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renders the golden grids of an image and a character set with the reference run, and writes them.
+     * @param goldenPath The path of the golden file.
+     * @param rasterHeader The header naming the glyph raster and font face.
+     * @param image The image.
+     * @param charset The character set.
+     * @throws IOException If the image can not be read or the file can not be written.
+     */
+    private static void writeGoldenFile(Path goldenPath, String rasterHeader, TestImage image,
+                                        CharsetPreset charset) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(rasterHeader);
+        for (RoundMethod roundMethod : RoundMethod.values()) {
+            for (int resolution : image.resolutions()) {
+                lines.add(gridHeader(roundMethod, resolution));
+                RenderSettings settings = REFERENCE.settings().withRoundMethod(roundMethod);
+                for (char[] row : render(image, charset.charSet(), resolution, settings, REFERENCE.streamed())) {
+                    // Delimited, so rows that end with spaces survive editors that trim them.
+                    lines.add(ROW_DELIMITER + new String(row) + ROW_DELIMITER);
+                }
+                lines.add("");
+            }
+        }
+        Files.createDirectories(goldenPath.getParent());
+        Files.write(goldenPath, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the grids of a golden file.
+     * @param goldenPath The path of the golden file.
+     * @return The grids.
+     * @throws IOException If the file can not be read.
+     */
+    private static GoldenFile readGoldenFile(Path goldenPath) throws IOException {
+        List<String> lines = Files.readAllLines(goldenPath, StandardCharsets.UTF_8);
+        Map<String, char[][]> grids = new HashMap<>();
+        int line = 1;
+        while (line < lines.size()) {
+            String gridHeader = lines.get(line++);
+            List<char[]> rows = new ArrayList<>();
+            while (line < lines.size() && !lines.get(line).isEmpty()) {
+                String row = lines.get(line++);
+                rows.add(row.substring(ROW_DELIMITER.length(), row.length() - ROW_DELIMITER.length())
+                            .toCharArray());
+            }
+            line++; // The empty line after the grid.
+            grids.put(gridHeader, rows.toArray(new char[0][]));
+        }
+        return new GoldenFile(lines.get(0), grids);
+    }
+
+    /**
+     * Returns the header of a grid in a golden file.
+     * @param roundMethod The rounding method of the grid.
+     * @param resolution The resolution of the grid.
+     * @return The header.
+     */
+    private static String gridHeader(RoundMethod roundMethod, int resolution) {
+        return String.format(GRID_HEADER_FORMAT, roundMethod.name().toLowerCase(), resolution);
+    }
+
+    /**
+     * Returns the face the font of the default glyph raster is rendered in, which is a substitute if the font
+     * is not installed.
+     * @return The name of the font face.
+     */
+    private static String getDefaultFontFace() {
+        return new Font(GlyphRaster.DEFAULT.getFontName(), Font.PLAIN, GlyphRaster.DEFAULT.getPixelResolution())
+                .getFontName();
+    }
+
+    /**
+     * Creates a character set of a range of characters.
+     * @param from The first character.
+     * @param to The last character.
+     * @return The character set.
+     */
+    private static CharSet charRange(char from, char to) {
+        CharSet charSet = new CharSet();
+        charSet.addRange(from, to);
+        return charSet;
+    }
+
+    /**
+     * Returns every resolution from 1 to the given one.
+     * @param maxResolution The maximal resolution.
+     * @return The resolutions in increasing order.
+     */
+    private static int[] resolutionsUpTo(int maxResolution) {
+        int[] resolutions = new int[maxResolution];
+        for (int i = 0; i < maxResolution; i++) {
+            resolutions[i] = i + 1;
+        }
+        return resolutions;
+    }
+
+    /**
+     * Returns the resolutions <code>cat.jpeg</code> is rendered at: every power of two up to
+     * {@value #MAX_CAT_RESOLUTION}, and {@value #CAT_EXACT_RESOLUTION}, which divides the image into exact tiles.
+     * @return The resolutions in increasing order.
+     */
+    private static int[] catResolutions() {
+        List<Integer> resolutions = new ArrayList<>();
+        for (int resolution = 1; resolution <= MAX_CAT_RESOLUTION; resolution *= 2) {
+            resolutions.add(resolution);
+        }
+        resolutions.add(CAT_EXACT_RESOLUTION);
+        return resolutions.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    /**
+     * Creates an image whose red, green and blue values ramp along its width, its height and its diagonal.
+     * @return The image.
+     */
+    private static BufferedImage createGradient() {
+        BufferedImage image = new BufferedImage(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < SYNTHETIC_HEIGHT; y++) {
+            for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+                int red = x * MAX_COLOR_VALUE / (SYNTHETIC_WIDTH - 1);
+                int green = y * MAX_COLOR_VALUE / (SYNTHETIC_HEIGHT - 1);
+                int blue = (x + y) * MAX_COLOR_VALUE / (SYNTHETIC_WIDTH + SYNTHETIC_HEIGHT - 2);
+                image.setRGB(x, y, (red << RED_SHIFT) | (green << GREEN_SHIFT) | blue);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Creates a black and white checkerboard of {@value #CHECKER_SIDE} pixel squares.
+     * @return The image.
+     */
+    private static BufferedImage createCheckerboard() {
+        BufferedImage image = new BufferedImage(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < SYNTHETIC_HEIGHT; y++) {
+            for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+                boolean white = (x / CHECKER_SIDE + y / CHECKER_SIDE) % 2 == 0;
+                image.setRGB(x, y, white ? WHITE : BLACK);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes a synthetic image to a lossless file.
+     * @param dir The directory of the file.
+     * @param name The name of the image.
+     * @param image The image.
+     * @return The path of the file.
+     * @throws IOException If the file can not be written.
+     */
+    private static String writeImage(Path dir, String name, BufferedImage image) throws IOException {
+        File file = dir.resolve(name + "." + IMAGE_FORMAT).toFile();
+        ImageIO.write(image, IMAGE_FORMAT, file);
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+}
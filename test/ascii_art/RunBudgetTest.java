@@ -0,0 +1,174 @@
+package ascii_art;
+
+import ascii_output.AsciiRowOutput;
+import image_char_matching.CharSet;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Timing and allocation budgets of {@link AsciiArtAlgorithm#run()}, rendering the bundled
+ * <code>cat.jpeg</code> with the printable ASCII character set.
+ * <p>The budgets are several times above the measured costs, so they only fail when a fast path stops being
+ * taken: when a repeated run recomputes its brightness values, a streamed run creates its whole output, or a
+ * resolution change of the brightness pyramid reads the image again. {@link GoldenGridTest} checks that the
+ * same fast paths match exactly the same characters.</p>
+ * <p>Allocations are counted on the running thread only, which is the thread every run below matches on.
+ * Run from the project root, after compiling as for {@link GoldenGridTest}:</p>
+ * <pre>
+ * java -cp bin ascii_art.RunBudgetTest
+ * </pre>
+ */
+public class RunBudgetTest {
+
+    private static final String CAT_IMAGE_PATH = "Example Image/cat.jpeg";
+    private static final int RESOLUTION = 128;
+    private static final int PYRAMID_RESOLUTION = 64;
+    private static final int WARM_UP_RUNS = 20;
+    private static final int MEASURED_RUNS = 50;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private static final long COLD_RUN_BUDGET_MILLIS = 3000;
+    private static final long CACHED_RUN_BUDGET_MILLIS = 2;
+    private static final long PYRAMID_CHANGE_BUDGET_MILLIS = 2;
+    /*
+     A repeated run only allocates its output, whose rows are chars, and a streamed run only allocates the
+     row buffer of the pool once. The slack covers the small objects of a run, which escape analysis may or
+     may not remove.
+     */
+    private static final long OUTPUT_ALLOCATION_FACTOR = 2;
+    private static final long ALLOCATION_SLACK_BYTES = 16 * 1024;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Discards streamed rows.
+     */
+    private static class DiscardingOutput implements AsciiRowOutput {
+
+        @Override
+        public void begin(int rows, int cols) {
+        }
+
+        @Override
+        public void row(int index, char[] buffer, int len) {
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private static int failures = 0;
+
+    /**
+     * Private constructor, since this class only has a main method.
+     */
+    private RunBudgetTest() {
+    }
+
+    /**
+     * Measures the runs, and compares them with their budgets.
+     * @param args Unused.
+     * @throws IOException If the image can not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        CharSet charSet = new CharSet();
+        charSet.addRange(' ', '~');
+        RenderSettings settings = RenderSettings.DEFAULT;
+
+        long start = System.nanoTime();
+        char[][] grid = new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, RESOLUTION, settings).run();
+        checkTime("cold run", System.nanoTime() - start, COLD_RUN_BUDGET_MILLIS);
+        long outputBytes = (long) grid.length * grid[0].length * Character.BYTES;
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, RESOLUTION, settings).run();
+        }
+        long allocated = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, RESOLUTION, settings).run();
+        }
+        checkTime("cached run", (System.nanoTime() - start) / MEASURED_RUNS, CACHED_RUN_BUDGET_MILLIS);
+        checkAllocation("cached run", (THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocated) / MEASURED_RUNS,
+                        outputBytes * OUTPUT_ALLOCATION_FACTOR + ALLOCATION_SLACK_BYTES);
+
+        DiscardingOutput output = new DiscardingOutput();
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, RESOLUTION, settings).run(output);
+        }
+        allocated = THREAD_BEAN.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, RESOLUTION, settings).run(output);
+        }
+        checkAllocation("streamed run",
+                        (THREAD_BEAN.getCurrentThreadAllocatedBytes() - allocated) / MEASURED_RUNS,
+                        ALLOCATION_SLACK_BYTES);
+
+        RenderSettings pyramidSettings = settings.withPyramidEnabled(true);
+        AsciiArtAlgorithm.warmUpPyramid(CAT_IMAGE_PATH, pyramidSettings);
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            runPyramidChange(charSet, pyramidSettings, i);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            runPyramidChange(charSet, pyramidSettings, i);
+        }
+        checkTime("pyramid resolution change", (System.nanoTime() - start) / MEASURED_RUNS,
+                  PYRAMID_CHANGE_BUDGET_MILLIS);
+
+        System.out.printf("%d budgets exceeded.%n", failures);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs the algorithm with the brightness pyramid, alternating between two resolutions so every run
+     * changes the resolution.
+     * @param charSet The characters.
+     * @param settings The settings, with the pyramid enabled.
+     * @param run The index of the run.
+     * @throws IOException If the image can not be read.
+     */
+    private static void runPyramidChange(CharSet charSet, RenderSettings settings, int run) throws IOException {
+        int resolution = (run % 2 == 0) ? PYRAMID_RESOLUTION : RESOLUTION;
+        new AsciiArtAlgorithm(CAT_IMAGE_PATH, charSet, resolution, settings).run();
+    }
+
+    /**
+     * Reports whether a measured time is within its budget.
+     * @param name The name of the measurement.
+     * @param nanos The measured time, in nanoseconds.
+     * @param budgetMillis The budget, in milliseconds.
+     */
+    private static void checkTime(String name, long nanos, long budgetMillis) {
+        boolean passed = nanos <= budgetMillis * NANOS_PER_MILLI;
+        report(passed, String.format("%s: %.3f ms, budget %d ms", name, (double) nanos / NANOS_PER_MILLI,
+                                     budgetMillis));
+    }
+
+    /**
+     * Reports whether a measured allocation is within its budget.
+     * @param name The name of the measurement.
+     * @param bytes The measured allocation, in bytes.
+     * @param budgetBytes The budget, in bytes.
+     */
+    private static void checkAllocation(String name, long bytes, long budgetBytes) {
+        report(bytes <= budgetBytes, String.format("%s: %d bytes allocated, budget %d bytes", name, bytes,
+                                                   budgetBytes));
+    }
+
+    /**
+     * Reports the result of a measurement.
+     * @param passed Whether the measurement is within its budget.
+     * @param description The description of the measurement.
+     */
+    private static void report(boolean passed, String description) {
+        if (!passed) {
+            failures++;
+        }
+        System.out.println((passed ? "PASS " : "FAIL ") + description);
+    }
+
+}
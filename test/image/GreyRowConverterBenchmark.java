@@ -0,0 +1,103 @@
+package image;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the Vector API grey row kernel with the scalar loop it replaces.
+ * <p>Both converters convert the same rows of random pixels, which must give bit-identical grey values,
+ * and are timed over the same rows. The kernel must not be slower than the scalar loop by more than
+ * {@value #MAX_SLOWDOWN}x, since it is only worth loading when it is at least as fast.</p>
+ * <p>The kernel is only loaded when the <code>jdk.incubator.vector</code> module is added, so run from the
+ * project root, after compiling with the module:</p>
+ * <pre>
+ * javac -encoding UTF-8 --add-modules jdk.incubator.vector -d bin $(find src test -name "*.java")
+ * java --add-modules jdk.incubator.vector -cp bin image.GreyRowConverterBenchmark
+ * </pre>
+ */
+public class GreyRowConverterBenchmark {
+
+    private static final int ROW_WIDTH = 4096;
+    // Runs of pixels start at every offset into the row up to this one.
+    private static final int MAX_RUN_OFFSET = 8;
+    // Odd, so every run of pixels has a tail that does not fill a vector.
+    private static final int RUN_LENGTH = ROW_WIDTH - MAX_RUN_OFFSET - 1;
+    private static final int NUM_OF_ROWS = 256;
+    private static final int WARM_UP_PASSES = 50;
+    private static final int MEASURED_PASSES = 200;
+    private static final long SEED = 46;
+    private static final double MAX_SLOWDOWN = 1.5;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /**
+     * Private constructor, since this class only has a main method.
+     */
+    private GreyRowConverterBenchmark() {
+    }
+
+    /**
+     * Compares the grey values and times of the two converters.
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        GreyRowConverter vectorConverter = SubImageHandler.loadVectorGreyRowConverter();
+        if (vectorConverter == null) {
+            System.out.println("SKIP The Vector API kernel is not loaded: run with " +
+                               "--add-modules jdk.incubator.vector.");
+            return;
+        }
+        int[] rgbPixels = new Random(SEED).ints((long) ROW_WIDTH * NUM_OF_ROWS).toArray();
+        float[] scalarGrey = new float[ROW_WIDTH];
+        float[] vectorGrey = new float[ROW_WIDTH];
+
+        boolean identical = true;
+        for (int row = 0; row < NUM_OF_ROWS && identical; row++) {
+            // Offset by the row, so the runs start at every alignment.
+            int offset = row * ROW_WIDTH + row % MAX_RUN_OFFSET;
+            SubImageHandler.SCALAR_GREY_ROW_CONVERTER.convert(rgbPixels, offset, scalarGrey, RUN_LENGTH);
+            vectorConverter.convert(rgbPixels, offset, vectorGrey, RUN_LENGTH);
+            identical = Arrays.equals(scalarGrey, vectorGrey);
+        }
+        System.out.println((identical ? "PASS " : "FAIL ") + "grey values are bit-identical");
+
+        long scalarNanos = time(SubImageHandler.SCALAR_GREY_ROW_CONVERTER, rgbPixels, scalarGrey);
+        long vectorNanos = time(vectorConverter, rgbPixels, vectorGrey);
+        boolean fastEnough = vectorNanos <= scalarNanos * MAX_SLOWDOWN;
+        System.out.printf("%s scalar %.3f ms, vector %.3f ms per %d rows, %.2fx speedup%n",
+                          fastEnough ? "PASS" : "FAIL", (double) scalarNanos / NANOS_PER_MILLI,
+                          (double) vectorNanos / NANOS_PER_MILLI, NUM_OF_ROWS,
+                          (double) scalarNanos / vectorNanos);
+        System.exit(identical && fastEnough ? 0 : 1);
+    }
+
+    /**
+     * Times a converter over every row, after warming it up.
+     * @param converter The converter.
+     * @param rgbPixels The rows of packed RGB pixels.
+     * @param grey The array to write the grey values of a row to.
+     * @return The mean time of converting every row once, in nanoseconds.
+     */
+    private static long time(GreyRowConverter converter, int[] rgbPixels, float[] grey) {
+        for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+            convertRows(converter, rgbPixels, grey);
+        }
+        long start = System.nanoTime();
+        for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+            convertRows(converter, rgbPixels, grey);
+        }
+        return (System.nanoTime() - start) / MEASURED_PASSES;
+    }
+
+    /**
+     * Converts every row once.
+     * @param converter The converter.
+     * @param rgbPixels The rows of packed RGB pixels.
+     * @param grey The array to write the grey values of a row to.
+     */
+    private static void convertRows(GreyRowConverter converter, int[] rgbPixels, float[] grey) {
+        for (int row = 0; row < NUM_OF_ROWS; row++) {
+            converter.convert(rgbPixels, row * ROW_WIDTH, grey, ROW_WIDTH);
+        }
+    }
+
+}